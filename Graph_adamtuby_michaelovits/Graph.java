@@ -6,7 +6,16 @@ You are allowed to add classes, methods, and members as required.
 
 
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 
 /**
@@ -16,49 +25,320 @@ import java.util.*;
  */
 public class Graph {
     // holds the hashMap of our nodes. the keys of the hashCells are Integers by default, and the generic class (this case: Node) is the value of the cells.
+    // null if the nodes have 64-bit ids, which are found through longIds instead
     private final hashMap<Node> nodesHash;
     // holds the maximum heap of our nodes. the keys of each node node in the heap are the vicinity weights of a node, and the value of a node is the actual Node
-    private final maxHeap<Node> nodesHeap;
+    // (any priorityQueue - the one of the heapKind that the graph was created with)
+    private final priorityQueue<Node> nodesHeap;
+    // the kind of nodesHeap
+    private final heapKind kind;
+    // the index of the 64-bit ids of our nodes, or null if the nodes were created with 32-bit ids (see Node(long, int))
+    private final longIndex longIds;
+    // holds our nodes by their slot: the index of the node in the array that the graph was created with. slots never change, and deleted nodes keep theirs
+    private final Node[] nodesBySlot;
+    // the amount of edges in the graph
+    private int edgesCount = 0;
+    // the amount of mutations the graph went through, used by the forks of the graph to detect that their parent was modified
+    private int modCount = 0;
+    // the amount of half-edges in the graph, while it is a shard of a shardedGraph: edges whose other end is a node of another shard
+    private int halfEdgesCount = 0;
+    // told about every half-edge that deleteNode removes, while the graph is a shard of a shardedGraph
+    private halfEdgeSink halfEdgeSink;
+
+    // the largest neighborhood weight that Graph(Node[], heapKind) sizes the buckets of a bucket queue for at first (the queue grows past it when needed)
+    public static final int DEFAULT_BUCKET_QUEUE_BOUND = 1 << 16;
+    // the memory budget of a graph that has none (see setMemoryBudget)
+    public static final long NO_MEMORY_BUDGET = Long.MAX_VALUE;
+    // the assumed layout of objects on a 64-bit JVM with compressed references (the default below 32 GB of heap): a 12 byte object header, a 16 byte array
+    // header, 4 byte references, and every object aligned to 8 bytes. used by the estimates of memoryStats
+    private static final int OBJECT_HEADER_BYTES = 12;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    // the estimated shallow sizes of the classes (see objectBytes), measured once per class, since the heaps measure their cells on every call to memoryBytes()
+    private static final ClassValue<Long> OBJECT_BYTES = new ClassValue<>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            return measureObjectBytes(type);
+        }
+    };
+    // the estimated bytes of a Neighbors-cell, of the two cells of an edge, and of the entry of an expiring edge on the timing wheel
+    private static final long CELL_BYTES = objectBytes(DoublyLinkedList.DoublyLinkedCell.class);
+    private static final long EDGE_BYTES = 2 * CELL_BYTES;
+    private static final long EXPIRING_EDGE_BYTES = objectBytes(expiringEdge.class);
+    // the estimated bytes of the entry of a node in the hash map of the ids, and of the timing wheel without its entries
+    private static final long HASH_CELL_BYTES = objectBytes(hashMap.hashCell.class);
+    private static final long EXPIRY_WHEEL_BYTES = objectBytes(expiryWheel.class) + arrayBytes(expiryWheel.LEVELS << expiryWheel.SLOT_BITS, REFERENCE_BYTES)
+            + arrayBytes(expiryWheel.LEVELS, 8);
+    // the amount of Neighbors-cells that a single call to addEdge/deleteNode is allowed to compact while the graph is in lazy deletion mode
+    private static final int COMPACTION_BUDGET = 8;
+    // whether deleteNode only marks the deleted node as dead and leaves its cells in its Neighbors' lists to be removed later (see setLazyDeletion)
+    private boolean lazyDeletion = false;
+    // holds the nodes whose Neighbors lists still contain cells of dead nodes. the incremental compactor works through this queue from its head
+    private final DoublyLinkedList<Node> compactionQueue = new DoublyLinkedList<>();
+    // the next cell that the compactor should inspect in the Neighbors list of the node at the head of the compaction queue
+    private DoublyLinkedList<Node>.DoublyLinkedCell compactionCursor;
+    // the amount of cells left for the compactor to inspect in the Neighbors list of the node at the head of the compaction queue
+    private int compactionRemaining;
+    // holds the maximum heap of the 2-hop neighborhood weights of our nodes, or null while the 2-hop index is disabled (see enableTwoHopIndex)
+    private maxHeap<Node> twoHopHeap;
+    // counts the paths of at most two edges between every pair of nodes within distance 2, while the 2-hop index is enabled
+    private pairCounter twoHopPairs;
+    // holds the multiset of the neighborhood weights of our nodes for rank and percentile queries, or null while the rank index is disabled (see enableRankIndex)
+    private orderStatisticTree rankIndex;
+    // the listeners that are told when the root of nodesHeap changes, or null while nobody is subscribed (see addMaxListener)
+    private maxListener[] maxListeners;
+    // the maximal node (and its neighborhood weight) that the listeners were last told about
+    private Node lastMax;
+    private int lastMaxWeight;
+    // the depth of nested beginBatch() calls. the listeners are told about changes only outside of a batch
+    private int batchDepth = 0;
+    // collects the (id, neighborhood weight) changes of the nodes for the downstream consumer, or null while the change feed is disabled (see enableChangeFeed)
+    private changeFeed changes;
+    // the neighborhood weights and the amounts of Neighbors of the nodes by slot, kept in copy-on-write pages for the snapshots of the graph
+    // (see snapshot). both are null until the first snapshot is taken. the amount of Neighbors of a deleted node is -1
+    private pagedColumn vicinityColumn;
+    private pagedColumn degreeColumn;
+    // an immutable index from the ids of the nodes to their slots, shared by all of the snapshots. built with the first snapshot
+    private slotIndex snapshotIndex;
+    // the amount of snapshots that weren't closed yet. snapshots are closed by their readers, so this is shared between threads
+    private final AtomicInteger openSnapshots = new AtomicInteger();
+    // writes every public operation of the graph to a trace, or null while the graph isn't recorded (see startRecording)
+    private traceRecorder recorder;
+    // the timing wheel of the edges that were added with an expiration time, or null until the first one is added (see addEdge(int, int, long))
+    private expiryWheel expiry;
+    // the nodes that lost edges in the current batch of expireEdges, and the weight that each of them lost, by the node's expirySlot
+    private Node[] expiryTouched;
+    private int[] expiryDeltas;
+    // the amount of bytes that the graph may hold before it rejects new edges (see setMemoryBudget)
+    private long memoryBudget = NO_MEMORY_BUDGET;
+    // the running estimate of the bytes that the graph holds, while there's a budget: the total of the last memoryStats of the graph, plus the bytes that
+    // were allocated since and minus the bytes that were freed since (see accountMemory)
+    private long estimatedBytes;
+    // the modCount of the graph when estimatedBytes was last measured by memoryStats
+    private int measuredAtModCount;
+    // the amount of edges that the budget rejected
+    private int rejectedEdges = 0;
 
     /**
      * Initializes the graph on a given set of nodes. The created graph is empty, i.e. it has no edges.
      * You may assume that the ids of distinct nodes are distinct.
+     * the neighborhood weights of the nodes are kept in a Maximum-Heap. the other kinds of heaps are picked by Graph(Node[], heapKind), or by the range of
+     * the weights with Graph(Node[], int).
      * <p>
      * Complexity: O(N), while N is the amount of nodes passed in the @nodes array.
      * </p>
      * @param nodes - an array of node objects
      */
     public Graph(Node [] nodes){
-        nodesHash = new hashMap<>(nodes.length, 0.5f); // initialize the hash map of our nodes to be a new hash map with a load factor of 0.5
-        nodesHeap = new maxHeap<>(nodes.length); // initialize the maximum heap of our nodes. the priority Queue of the heap is set by default to be of length N
+        this(nodes, heapKind.MAX_HEAP);
+    }
+
+    /**
+     * Initializes the graph on a given set of nodes, picking the kind of heap of the neighborhood weights by their range: the neighborhood weight of a node
+     * is at most the sum of the weights of all of the nodes, so if that sum is at most bucketQueueBound (and no weight is negative), the weights are kept
+     * in a bucket queue (heapKind.BUCKET_QUEUE), where every change of a neighborhood weight costs O(1). otherwise they are kept in a Maximum-Heap.
+     * The created graph is empty, i.e. it has no edges.
+     * <p>
+     * Complexity: O(N), while N is the amount of nodes passed in the @nodes array (+ O(the sum of the weights) for the buckets, if a bucket queue is picked).
+     * </p>
+     * @param nodes - an array of node objects
+     * @param bucketQueueBound - the largest neighborhood weight for which a bucket queue is used. 0 never picks a bucket queue
+     */
+    public Graph(Node [] nodes, int bucketQueueBound){
+        this(nodes, bucketQueueBound, maxPossibleVicinityWeight(nodes));
+    }
+
+    private Graph(Node [] nodes, int bucketQueueBound, long maxPossibleWeight){
+        this(nodes, maxPossibleWeight <= bucketQueueBound ? heapKind.BUCKET_QUEUE : heapKind.MAX_HEAP, (int) Math.min(maxPossibleWeight, bucketQueueBound));
+    }
+
+    /**
+     * Initializes the graph on a given set of nodes, keeping the neighborhood weights of the nodes in the given kind of heap.
+     * The created graph is empty, i.e. it has no edges.
+     * You may assume that the ids of distinct nodes are distinct.
+     * <p>
+     * Complexity: O(N), while N is the amount of nodes passed in the @nodes array (+ O(min(the sum of the weights, DEFAULT_BUCKET_QUEUE_BOUND)) for the
+     * buckets of heapKind.BUCKET_QUEUE).
+     * </p>
+     * @param nodes - an array of node objects
+     * @param kind - the kind of heap that holds the neighborhood weights of the nodes (see heapKind)
+     */
+    public Graph(Node [] nodes, heapKind kind){
+        this(nodes, kind, kind == heapKind.BUCKET_QUEUE ? (int) Math.min(maxPossibleVicinityWeight(nodes), DEFAULT_BUCKET_QUEUE_BOUND) : 0);
+    }
+
+    /**
+     * the constructor that all of the others call.
+     * @param maxKey - the largest neighborhood weight that the heap is sized for at first (used only by a bucket queue, which grows past it when needed)
+     */
+    private Graph(Node [] nodes, heapKind kind, int maxKey){
+        boolean longKeyed = nodes.length > 0 && nodes[0].longKeyed;
+        // initialize the hash map of our nodes to be a new hash map with a load factor of 0.5 - or the index of the 64-bit ids, if the nodes have them
+        nodesHash = longKeyed ? null : new hashMap<>(nodes.length, 0.5f);
+        longIds = longKeyed ? new longIndex(nodes.length) : null;
+        // initialize the maximum heap of our nodes. the priority Queue of the heap is set by default to be of length N
+        this.kind = kind;
+        nodesHeap = newQueue(kind, nodes.length, maxKey);
+
+        nodesBySlot = nodes.clone();
 
         // adding all of the nodes to the Hash-Map and to the Maximum-Heap
-        for (Node node : nodes) { // for node:
-            // adding the node to the hash map with its key being its Id, and adding the node to the maximum-heap with its key being its vicinity weight (which is at default its weight at the time of the graph's creation)
-            hashMap<Node>.hashCell<Node> hashForm = nodesHash.addItem(node.getId(), node);
-            maxHeap<Node>.heapNode<Node> heapForm = nodesHeap.addNode(node, node.getVicinityWeight());
+        for (int slot = 0; slot < nodes.length; slot++) { // for node:
+            Node node = nodes[slot];
+            node.slot = slot;
+            if (node.longKeyed != longKeyed) {
+                throw new IllegalArgumentException("the nodes of a graph must all have 32-bit ids, or all have 64-bit ids");
+            }
+            // adding the node to the hash map with its key being its Id (or to the index of the 64-bit ids, by its slot), and adding the node to the maximum-heap with its key being its vicinity weight (which is at default its weight at the time of the graph's creation)
+            if (longKeyed) {
+                longIds.put(node.longId, slot);
+            } else {
+                // set a pointer from the node.hashForm field to the node in the hash map, so we can access later the node's form in the hash map from within the node
+                node.setHashForm(nodesHash.addItem(node.getId(), node));
+            }
+            queueCell<Node> heapForm = nodesHeap.insert(node, node.getVicinityWeight());
 
-            // set a pointer from the node.hashForm and node.heapForm fields to the node in the hash map and in the maximum-heap, so we can access later the node's form in the hash map from within the node
-            node.setHashForm(hashForm);
+            // set a pointer from the node.heapForm field to the node in the maximum-heap
             node.setHeapForm(heapForm);
         }
     }
 
+    /**
+     * this method returns the largest neighborhood weight that any of the given nodes may ever have: the sum of the weights of all of them.
+     * <p>
+     * Time Complexity: O(N)
+     * </p>
+     * @return that weight, or Long.MAX_VALUE if some node has a negative weight (which a bucket queue can't hold)
+     */
+    private static long maxPossibleVicinityWeight(Node[] nodes) {
+        long sum = 0;
+        for (Node node : nodes) {
+            if (node.getWeight() < 0) {
+                return Long.MAX_VALUE;
+            }
+            sum += node.getWeight();
+        }
+        return sum;
+    }
+
+    /**
+     * creates an empty priority queue of the given kind, for the given amount of nodes and (for a bucket queue) the given largest key.
+     */
+    private static priorityQueue<Node> newQueue(heapKind kind, int nodesAmount, int maxKey) {
+        switch (kind) {
+            case MIN_MAX_HEAP:
+                return new minMaxHeap<>(nodesAmount);
+            case PAIRING_HEAP:
+                return new pairingHeap<>();
+            case WINNER_TREE:
+                return new winnerTree<>(nodesAmount);
+            case BUCKET_QUEUE:
+                return new bucketQueue<>(maxKey);
+            default:
+                return new maxHeap<>(nodesAmount);
+        }
+    }
+
     /**
      * This method returns the node in the graph with the maximum neighborhood weight.
      * Note: nodes that have been removed from the graph using deleteNode are no longer in the graph.
      * <p>
-     * this method takes O(1), since extracting the Maximum-node (the top node) of a Maximum Heap costs O(1)
+     * this method takes O(1), since extracting the Maximum-node (the top node) of a Maximum Heap costs O(1).
+     * with heapKind.BUCKET_QUEUE it takes O(1) amortized instead: the call lowers the top of the queue past the buckets that were emptied since the previous
+     * call (see bucketQueue.getMax), so a single call may cost as much as the drop of the maximum since then.
      * </p>
      * @return a Node object representing the correct node. If there is no node in the graph, returns 'null'.
      */
     public Node maxNeighborhoodWeight(){
+        if (recorder != null) {
+            recorder.record(traceRecorder.MAX_NEIGHBORHOOD_WEIGHT);
+        }
+        return heapMax();
+    }
+
+    /**
+     * the node at the root of nodesHeap, for the methods of the graph that need the maximum without it being recorded as a call to maxNeighborhoodWeight.
+     * @return the node with the maximum neighborhood weight, or 'null' if there is no node in the graph
+     */
+    private Node heapMax(){
         if (this.isEmpty()) { // if the graph is empty return null
             return null;
         }
         return nodesHeap.getMax().getValue();
     }
 
+    /**
+     * This method returns the node in the graph with the minimum neighborhood weight.
+     * Note: nodes that have been removed from the graph using deleteNode are no longer in the graph.
+     * <p>
+     * this method takes O(1), since the minimum of a Min-Max Heap is one of the two children of its root
+     * </p>
+     * @pre the graph was created with heapKind.MIN_MAX_HEAP
+     * @return a Node object representing the correct node. If there is no node in the graph, returns 'null'.
+     */
+    public Node minNeighborhoodWeight(){
+        if (!(nodesHeap instanceof minMaxHeap)) {
+            throw new IllegalStateException("the graph keeps only the maximum, create it with heapKind.MIN_MAX_HEAP");
+        }
+        if (this.isEmpty()) { // if the graph is empty return null
+            return null;
+        }
+        return ((minMaxHeap<Node>) nodesHeap).getMin().getValue();
+    }
+
+    /**
+     * this method passes the id of every node whose neighborhood weight is at least 'threshold' to the given sink, in no particular order.
+     * it walks the heap from its root (see priorityQueue.walk), and cuts off every subtree whose root holds a key below the threshold - since on a Maximum-Heap
+     * (and on a pairing heap) that root is the largest node of its subtree. on a Min-Max Heap only the nodes of the max levels cut their subtrees off.
+     * either way, every visited node that doesn't pass the threshold is a child of one that does (or the root) - so on the binary heaps the walk visits
+     * at most 2 * output + 1 nodes, and on a pairing heap it visits the reported nodes and their children. a winner tree cuts off its subtrees the same way,
+     * and a bucket queue walks its buckets from the maximum down to the threshold.
+     * <p>
+     * Time Complexity: O(output) on the binary heaps, while output is the amount of nodes passed to the sink
+     * </p>
+     * @pre the sink must not modify the graph
+     * @param threshold the minimal neighborhood weight of the nodes to report
+     * @param sink the action to perform on the id of each such node
+     * @return the amount of nodes that were passed to the sink
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
+     */
+    public int nodesAbove(int threshold, IntConsumer sink){
+        checkIntIds();
+        thresholdWalk walk = new thresholdWalk(threshold);
+        walk.sink = sink;
+        nodesHeap.walk(walk);
+        return walk.total;
+    }
+
+    /**
+     * this method is the streaming variant of nodesAbove(int, IntConsumer): it writes the ids (and the neighborhood weights) of the nodes whose neighborhood weight
+     * is at least 'threshold' into the given buffers. whenever the buffers are full, and once more at the end of the walk if they're partially full,
+     * onBatch is called with the amount of valid entries at the beginning of the buffers, after which the buffers are refilled from index 0.
+     * <p>
+     * Time Complexity: O(output)
+     * </p>
+     * @pre ids.length > 0, weights is either null or at least as long as ids, and onBatch must not modify the graph
+     * @param threshold the minimal neighborhood weight of the nodes to report
+     * @param ids the buffer for the ids of the nodes
+     * @param weights the buffer for the neighborhood weights of the nodes, or null if they aren't needed
+     * @param onBatch called with the amount of valid entries each time the buffers should be consumed
+     * @return the amount of nodes that were reported
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
+     */
+    public int nodesAbove(int threshold, int[] ids, int[] weights, IntConsumer onBatch){
+        checkIntIds();
+        thresholdWalk walk = new thresholdWalk(threshold);
+        walk.ids = ids;
+        walk.weights = weights;
+        walk.onBatch = onBatch;
+        nodesHeap.walk(walk);
+        if (walk.filled > 0) { // handing over the last, partially full, batch
+            onBatch.accept(walk.filled);
+        }
+        return walk.total;
+    }
+
+
     /**
      * given a node id of a node in the graph, this method returns the neighborhood weight of that node.
      * <p>
@@ -67,8 +347,13 @@ public class Graph {
      * @param node_id - an id of a node.
      * @return the neighborhood weight of the node of id 'node_id' if such a node exists in the graph.
      * Otherwise, the function returns -1.
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
      */
     public int getNeighborhoodWeight(int node_id){
+        checkIntIds();
+        if (recorder != null) {
+            recorder.record(traceRecorder.GET_NEIGHBORHOOD_WEIGHT, node_id);
+        }
         Node node = nodesHash.get(node_id);
         if (node != null) { // if the node with the given node_id wasn't found in the graph
             return node.getVicinityWeight();
@@ -76,6 +361,45 @@ public class Graph {
         return -1;
     }
 
+    /**
+     * the 64-bit id variant of getNeighborhoodWeight(int). on a graph of nodes with 32-bit ids, the id is looked up as a 32-bit one.
+     * <p>
+     * Complexity: O(1)
+     * </p>
+     * @param node_id - a 64-bit id of a node.
+     * @return the neighborhood weight of the node of id 'node_id' if such a node exists in the graph. Otherwise, the function returns -1.
+     */
+    public int getNeighborhoodWeight(long node_id){
+        if (longIds == null) { // the nodes have 32-bit ids
+            return node_id == (int) node_id ? getNeighborhoodWeight((int) node_id) : -1;
+        }
+        Node node = nodeOf(node_id);
+        return node == null ? -1 : node.getVicinityWeight();
+    }
+
+    /**
+     * this method finds the node of the given 64-bit id in the index of the 64-bit ids.
+     * <p>
+     * Time Complexity: O(1) on average
+     * </p>
+     * @pre the nodes of the graph have 64-bit ids
+     * @return the node, or null if there is no such node in the graph
+     */
+    private Node nodeOf(long node_id) {
+        int slot = longIds.get(node_id);
+        return slot < 0 ? null : nodesBySlot[slot];
+    }
+
+    /**
+     * the methods that take or report 32-bit ids call this first: on a graph of 64-bit ids those ids don't exist.
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids
+     */
+    private void checkIntIds() {
+        if (longIds != null) {
+            throw new IllegalStateException("the nodes of this graph have 64-bit ids, use the methods that take a long id");
+        }
+    }
+
 
     /**
      * This function adds an edge between the two nodes whose ids are specified.
@@ -88,63 +412,331 @@ public class Graph {
      * @param node1_id - the id of the first node.
      * @param node2_id - the id of the second node.
      * @return returns 'true' if the function added an edge, otherwise returns 'false'.
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
      */
     public boolean addEdge(int node1_id, int node2_id){
-        // accessing the nodes from the hash map with their Id-s
-        Node node1 = nodesHash.get(node1_id);
-        Node node2 = nodesHash.get(node2_id);
+        checkIntIds();
+        if (recorder != null) {
+            recorder.record(traceRecorder.ADD_EDGE, node1_id, node2_id);
+        }
+        return linkEdge(nodesHash.get(node1_id), nodesHash.get(node2_id), EDGE_BYTES);
+    }
 
+    /**
+     * the body of addEdge(int, int), for the methods that add an edge without it being recorded as a call to addEdge(int, int).
+     * <p>
+     * The time complexity of this method is: O(log n), or O(n) when the memory budget has to measure the graph (see reserveMemory).
+     * </p>
+     * @param node1 - the first node, as found by its id (in the hash map, or in the index of the 64-bit ids), or null if there is no such node.
+     * @param node2 - the second node, or null if there is no such node.
+     * @param bytes - the estimated amount of bytes that the edge adds to the graph, for the memory budget
+     * @return returns 'true' if the function added an edge, otherwise returns 'false'.
+     */
+    private boolean linkEdge(Node node1, Node node2, long bytes){
         // if the nodes of the edge we want to add are one of the following two, we would return false by default:
         if (node1 == null || node2 == null) { // if one of the nodes of the edge aren't presnet in the graph
             return false;
-        } else if (node1_id == node2_id) { // if the two nodes of the edge are the same node
+        } else if (node1 == node2) { // if the two nodes of the edge are the same node
+            return false;
+        } else if (memoryBudget != NO_MEMORY_BUDGET && !reserveMemory(bytes)) { // the edge doesn't fit in the memory budget
             return false;
         }
 
+        // the 2-hop index has to see the Neighbors of both nodes as they were before the edge was added
+        if (twoHopHeap != null) {
+            twoHopEdgeAdded(node1, node2);
+        }
+
         // adding each node to the other's Neighbors list:
         // this process will be changing the nodes' vicinity weight due to their addition of a new Neighbor as a result of an addition of a new edge to the graph
         // this process will also cause a heapifying process in the Maximum-Heap of the Graph - since their keys in the Heap (their vicinity weight) have been change
+        int previousWeight1 = node1.getVicinityWeight();
+        int previousWeight2 = node2.getVicinityWeight();
+        long heapBytes = memoryBudget == NO_MEMORY_BUDGET ? 0 : nodesHeap.memoryBytes(); // a bucket queue may grow for the new neighborhood weights
         node1.addNeighbor(node2);
         node2.addNeighbor(node1);
+        vicinityChanged(node1, previousWeight1);
+        vicinityChanged(node2, previousWeight2);
+        if (memoryBudget != NO_MEMORY_BUDGET) {
+            accountMemory(nodesHeap.memoryBytes() - heapBytes);
+        }
 
 
         // adding the 'parallel' field of each DoublyLinkedList cell representing the freshly added edge as the parallel form of the edge in the Neighbor's DoublyLinkedList
         node1.Neighbors.tail.setParallel(node2.Neighbors.tail);
         node2.Neighbors.tail.setParallel(node1.Neighbors.tail);
+        edgesCount++;
+
+        // while in lazy deletion mode, every mutation pays for a bit of the deferred adjacency cleanup
+        if (lazyDeletion) {
+            compact(COMPACTION_BUDGET);
+        }
+
+        afterMutation();
 
         // the edge was added succesfuly, return true now
         return true;
     }
 
+    /**
+     * This function adds an edge between the two nodes whose ids are specified, like addEdge(int, int), which is removed from the graph by the first call to
+     * expireEdges(now) with now >= expiresAt (unless one of its nodes is deleted first, which removes it right away). the times are in whatever unit the caller
+     * keeps its clock in (milliseconds, for example), and only the order between them matters. an edge whose expiration time already passed - one that isn't
+     * later than the time of the last call to expireEdges - expires on the next call.
+     * <p>
+     * The time complexity of this method is: O(log n), and O(1) for scheduling the expiration of the edge on the timing wheel (see expiryWheel).
+     * </p>
+     * @param node1_id - the id of the first node.
+     * @param node2_id - the id of the second node.
+     * @param expiresAt - the time at which the edge expires. negative times are treated as 0
+     * @return returns 'true' if the function added an edge, otherwise returns 'false'.
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
+     */
+    public boolean addEdge(int node1_id, int node2_id, long expiresAt){
+        checkIntIds();
+        if (recorder != null) {
+            recorder.record(traceRecorder.ADD_EXPIRING_EDGE, node1_id, node2_id, expiresAt);
+        }
+        Node node1 = nodesHash.get(node1_id);
+        // the first expiring edge brings the timing wheel along with it
+        if (!linkEdge(node1, nodesHash.get(node2_id), EDGE_BYTES + EXPIRING_EDGE_BYTES + (expiry == null ? EXPIRY_WHEEL_BYTES : 0))) {
+            return false;
+        }
+        if (expiry == null) {
+            expiry = new expiryWheel();
+        }
+        // the cell that linkEdge appended to the Neighbors list of the first node. its parallel cell is the one in the Neighbors list of the second node
+        expiry.add(new expiringEdge(node1.Neighbors.tail, Math.max(0, expiresAt)));
+        return true;
+    }
+
+    /**
+     * this method removes every edge whose expiration time (see addEdge(int, int, long)) is at most 'now', as a single batch: the cells of the edges are
+     * unlinked from the Neighbors lists right away, but the weight that every node lost is summed up, and the heap is fixed once per node that lost edges -
+     * or rebuilt from scratch (see priorityQueue.rebuild), when the batch touched so many nodes that fixing each of them would cost more.
+     * so a node that lost k edges costs a single heap update instead of k of them, the indices and the change feed see every node once, and the max listeners
+     * are told about the maximum once, at the end of the batch.
+     * the time of the graph's clock only moves forward: a call with an earlier 'now' than a previous one only expires the edges that are already due.
+     * <p>
+     * Time Complexity: O(1) amortized per expired edge on the timing wheel (see expiryWheel), plus O(log n) per node that lost edges, or O(n) if the heap is rebuilt
+     * </p>
+     * @param now - the current time, in the unit of the expiration times
+     * @return the amount of edges that were removed
+     */
+    public int expireEdges(long now){
+        if (recorder != null) {
+            recorder.record(traceRecorder.EXPIRE_EDGES, now);
+        }
+        if (expiry == null) {
+            return 0;
+        }
+        int expired = 0;
+        int entries = 0;
+        int touchedCount = 0;
+        for (expiringEdge edge = expiry.advance(now); edge != null; edge = edge.next) {
+            entries++;
+            DoublyLinkedList<Node>.DoublyLinkedCell cell1 = edge.cell;
+            DoublyLinkedList<Node>.DoublyLinkedCell cell2 = cell1.getParallel();
+            Node node1 = cell2.getItem();
+            Node node2 = cell1.getItem();
+            if (node1.deleted || node2.deleted) { // the edge was already removed along with one of its nodes
+                continue;
+            }
+            unlinkCell(node1, cell1);
+            unlinkCell(node2, cell2);
+            touchedCount = addExpiryDelta(node1, -node2.getWeight(), touchedCount);
+            touchedCount = addExpiryDelta(node2, -node1.getWeight(), touchedCount);
+            edgesCount--;
+            expired++;
+            if (twoHopHeap != null) {
+                twoHopEdgeRemoved(node1, node2);
+            }
+        }
+        accountMemory(-(entries * EXPIRING_EDGE_BYTES + expired * EDGE_BYTES));
+        if (expired == 0) {
+            return 0;
+        }
+
+        // merging the heap fix-ups: a single update per touched node, or a rebuild of the heap if the updates would cost more than O(n)
+        int size = nodesHeap.getSize();
+        boolean rebuild = touchedCount > size / (32 - Integer.numberOfLeadingZeros(size));
+        for (int i = 0; i < touchedCount; i++) {
+            Node node = expiryTouched[i];
+            if (rebuild) {
+                node.vicinityWeight += expiryDeltas[i];
+                node.getHeapForm().setKey(node.vicinityWeight);
+            } else {
+                node.UpdateVicinityWeight(expiryDeltas[i]);
+            }
+        }
+        if (rebuild) {
+            nodesHeap.rebuild();
+        }
+        for (int i = 0; i < touchedCount; i++) {
+            Node node = expiryTouched[i];
+            vicinityChanged(node, node.getVicinityWeight() - expiryDeltas[i]);
+            node.expirySlot = -1;
+            expiryTouched[i] = null;
+        }
+        afterMutation();
+        return expired;
+    }
+
+    /**
+     * @return the amount of edges that were added with an expiration time, and weren't expired by expireEdges yet (including the ones that were already
+     * removed along with one of their nodes, whose entries on the timing wheel are dropped when they expire)
+     */
+    public int pendingExpirations(){
+        return expiry == null ? 0 : expiry.size;
+    }
+
+    /**
+     * this method unlinks the given cell from the Neighbors list of the given node. if the compactor is in the middle of a pass over that list, its cursor
+     * might be the unlinked cell (or its count of the cells left might include it), so the pass is restarted from the head of the list on its next call.
+     * <p>
+     * Time Complexity: O(1)
+     * </p>
+     */
+    private void unlinkCell(Node node, DoublyLinkedList<Node>.DoublyLinkedCell cell) {
+        if (compactionCursor != null && compactionQueue.head.getItem() == node) {
+            compactionCursor = null;
+        }
+        node.Neighbors.deleteCell(cell);
+    }
+
+    /**
+     * this method adds the given amount to the weight that the given node lost in the current batch of expireEdges, touching the node if it wasn't yet.
+     * <p>
+     * Time Complexity: O(1) amortized
+     * </p>
+     * @return the amount of touched nodes after the call
+     */
+    private int addExpiryDelta(Node node, int delta, int touchedCount) {
+        if (node.expirySlot < 0) {
+            if (expiryTouched == null || touchedCount == expiryTouched.length) {
+                int capacity = expiryTouched == null ? 16 : 2 * expiryTouched.length;
+                if (expiryTouched != null) {
+                    accountMemory(-(arrayBytes(expiryTouched.length, REFERENCE_BYTES) + arrayBytes(expiryDeltas.length, 4)));
+                }
+                expiryTouched = expiryTouched == null ? new Node[capacity] : Arrays.copyOf(expiryTouched, capacity);
+                expiryDeltas = expiryDeltas == null ? new int[capacity] : Arrays.copyOf(expiryDeltas, capacity);
+                accountMemory(arrayBytes(capacity, REFERENCE_BYTES) + arrayBytes(capacity, 4));
+            }
+            node.expirySlot = touchedCount;
+            expiryTouched[touchedCount] = node;
+            expiryDeltas[touchedCount] = 0;
+            touchedCount++;
+        }
+        expiryDeltas[node.expirySlot] += delta;
+        return touchedCount;
+    }
+
+    /**
+     * the 64-bit id variant of addEdge(int, int): the nodes are found by their 64-bit ids. on a graph of nodes with 32-bit ids, the ids are looked up as
+     * 32-bit ones.
+     * <p>
+     * The time complexity of this method is: O(log n).
+     * </p>
+     * @param node1_id - the 64-bit id of the first node.
+     * @param node2_id - the 64-bit id of the second node.
+     * @return returns 'true' if the function added an edge, otherwise returns 'false'.
+     */
+    public boolean addEdge(long node1_id, long node2_id){
+        if (longIds == null) { // the nodes have 32-bit ids
+            return node1_id == (int) node1_id && node2_id == (int) node2_id && addEdge((int) node1_id, (int) node2_id);
+        }
+        return linkEdge(nodeOf(node1_id), nodeOf(node2_id), EDGE_BYTES);
+    }
+
     /**
      * Given the id of a node in the graph, deletes the node of that id from the graph, if it exists.
+     * in lazy deletion mode (see setLazyDeletion) the cells of the node are not unlinked from its Neighbors' lists. the node is only marked as dead,
+     * and its cells are skipped by every iteration over the Neighbors lists until the compactor removes them.
      * <p>
      * Time Complexity: O(log n)
      * </p>
      * @param node_id the id of the node to delete.
      * @return returns 'true' if the function deleted a node, otherwise returns 'false'
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
      */
     public boolean deleteNode(int node_id){
-        Node node = nodesHash.get(node_id);
+        checkIntIds();
+        if (recorder != null) {
+            recorder.record(traceRecorder.DELETE_NODE, node_id);
+        }
+        return unlinkNode(nodesHash.get(node_id));
+    }
 
+    /**
+     * the body of deleteNode(int), for both of the variants of deleteNode.
+     * <p>
+     * Time Complexity: O(log n)
+     * </p>
+     * @param node the node to delete, as found by its id (in the hash map, or in the index of the 64-bit ids), or null if there is no such node.
+     * @return returns 'true' if the function deleted a node, otherwise returns 'false'
+     */
+    private boolean unlinkNode(Node node){
         if (node == null) { // if the node wasn't found in the Graph
             return false;
         } else { // the node was found in the Graph
-            nodesHash.removeNode(node_id);
-            nodesHeap.deleteNode(node.getHeapForm());
+            long heapBytes = memoryBudget == NO_MEMORY_BUDGET ? 0 : nodesHeap.memoryBytes();
+            if (longIds == null) {
+                nodesHash.removeNode(node.getId());
+                accountMemory(-HASH_CELL_BYTES);
+            } else {
+                longIds.remove(node.longId);
+            }
+            nodesHeap.delete(node.getHeapForm());
+            if (memoryBudget != NO_MEMORY_BUDGET) {
+                accountMemory(nodesHeap.memoryBytes() - heapBytes);
+            }
+            if (rankIndex != null) {
+                rankIndex.remove(node.getVicinityWeight());
+            }
+            if (changes != null) { // a deleted node is reported with the neighborhood weight of a missing node: -1
+                changes.record(node, -1);
+            }
+            if (twoHopHeap != null) { // the 2-hop index has to see the Neighbors of the node's Neighbors before any cell gets unlinked
+                twoHopHeap.deleteNode(node.twoHopForm);
+                twoHopNodeDeleted(node);
+            }
+            node.deleted = true;
+            if (degreeColumn != null) {
+                degreeColumn.set(node.slot, -1);
+            }
             DoublyLinkedList<Node>.DoublyLinkedCell currCell = node.Neighbors.head;
 
-            // get the amount of neighbours of the node we want to delete
-            int NeighborsCount = node.getNeighborsAmount();
+            // get the amount of cells in the Neighbors list of the node we want to delete (in lazy deletion mode some of them may belong to dead nodes)
+            int cellsCount = node.Neighbors.length();
 
-            for (int i=0; i<NeighborsCount; i++) { // iterating between all of the edges 'node' was connected with, using the Neighbors of 'node'
-                DoublyLinkedList<Node>.DoublyLinkedCell linkedCell = currCell.getParallel(); // getting the parallel form of the edge in order to remove it from the other end of the edge (which is not 'node')
-                linkedCell.getRepresentativeList().deleteCell(linkedCell); // deleting the edge and removing 'node' from the Neighbors list of its Neighbor
+            for (int i=0; i<cellsCount; i++) { // iterating between all of the edges 'node' was connected with, using the Neighbors of 'node'
                 Node currNode = currCell.getItem(); // getting the Neighbor's form as a Node
-                currNode.UpdateVicinityWeight(-node.getWeight()); // removing the 'node'`s weight from the vicinity weight of its Neighbor, and therefore, possibly Heapifying the Neighbor in the Maximum-Heap of the Graph
+                if (currCell.getParallel() == null) { // a half-edge to a node of another shard of a shardedGraph. the other half is removed by the shard that owns it
+                    halfEdgesCount--;
+                    halfEdgeSink.halfEdgeRemoved(node, currNode);
+                } else if (!currNode.deleted) { // cells of dead Neighbors are leftovers of lazy deletions, and there is no edge to remove for them
+                    edgesCount--;
+                    if (lazyDeletion) { // only mark the parallel cell as stale, and let the compactor unlink it later
+                        currNode.staleNeighbors++;
+                        enqueueForCompaction(currNode);
+                    } else {
+                        DoublyLinkedList<Node>.DoublyLinkedCell linkedCell = currCell.getParallel(); // getting the parallel form of the edge in order to remove it from the other end of the edge (which is not 'node')
+                        linkedCell.getRepresentativeList().deleteCell(linkedCell); // deleting the edge and removing 'node' from the Neighbors list of its Neighbor
+                        accountMemory(-CELL_BYTES); // the cells in the Neighbors list of 'node' stay with it
+                    }
+                    currNode.UpdateVicinityWeight(-node.getWeight()); // removing the 'node'`s weight from the vicinity weight of its Neighbor, and therefore, possibly Heapifying the Neighbor in the Maximum-Heap of the Graph
+                    vicinityChanged(currNode, currNode.getVicinityWeight() + node.getWeight());
+                }
                 currCell = currCell.next; // continuing on to the next Neighbor
             }
 
+            // while in lazy deletion mode, every mutation pays for a bit of the deferred adjacency cleanup
+            if (lazyDeletion) {
+                compact(COMPACTION_BUDGET);
+            }
+
+            afterMutation();
+
             // the node was allegdly deleted, thus return true
             return true;
         }
@@ -152,277 +744,4728 @@ public class Graph {
 
 
     /**
-     * this method is used to determine the amount of nodes in the Graph
+     * the 64-bit id variant of deleteNode(int). on a graph of nodes with 32-bit ids, the id is looked up as a 32-bit one.
      * <p>
-     * The time complexity of this method is O(1)
+     * Time Complexity: O(log n)
      * </p>
-     * @return the amount of nodes in the Maximum-Heap representing the Graph
+     * @param node_id the 64-bit id of the node to delete.
+     * @return returns 'true' if the function deleted a node, otherwise returns 'false'
      */
-    public int getNumNodes(){
-        return nodesHeap.getSize();
+    public boolean deleteNode(long node_id){
+        if (longIds == null) { // the nodes have 32-bit ids
+            return node_id == (int) node_id && deleteNode((int) node_id);
+        }
+        return unlinkNode(nodeOf(node_id));
     }
 
 
     /**
-     * this method is used to determine the amount of edges that there are in the Graph.
-     * it does that by counting every edge twice and then deviding everything by two.
-     * well, if we sum up the amount of neighbor each node has, we will basically get that we counted each edge twice, so all we need to do is devide everything by two.
+     * this method is used to switch the lazy deletion mode of the graph on and off.
+     * in lazy deletion mode, deleteNode only updates the vicinity weights of the deleted node's Neighbors and marks the node as dead, instead of
+     * unlinking every parallel cell from its Neighbors' lists. the dead cells are removed later on by the compactor - a few of them on every call to
+     * addEdge/deleteNode, or all of them when calling compact() directly (for example, from a maintenance thread that holds the graph's lock).
+     * switching the mode off compacts all of the dead cells that are left, so the eager deleteNode never meets them.
      * <p>
-     * The time complexity of this method is O(n) while n is the amount of vertices in the Graph.
+     * Time Complexity: O(1) when switching the mode on, O(the amount of cells in the compaction queue's lists) when switching it off.
      * </p>
-     * @return the amount of edges in the graph
+     * @param lazyDeletion 'true' to defer the adjacency cleanup of deleteNode, 'false' to unlink the cells eagerly (the default)
      */
-    public int getNumEdges(){
-        // initializing a counting variable.
-        int sum = 0;
-        for (maxHeap<Node>.heapNode<Node> node : nodesHeap.Heap) { // for every node in the graph
-            if (node == null) { // the heap's priority Queue is designed to hold at most N nodes at a time, and therefore while it isn't full, it will have its right part of the array be a sequence of 'null'. so when we reach that point of the heap's array, we know we iterated through all of the nodes in the graph
-                break;
-            }
-            // add to the counting varibale the amount of neighbours it has
-            sum += node.getValue().getNeighborsAmount();
+    public void setLazyDeletion(boolean lazyDeletion) {
+        if (!lazyDeletion) {
+            compact();
         }
+        this.lazyDeletion = lazyDeletion;
+    }
 
-        // return our counting variable devided by 2. while is it always even? well, sum is basically counting each edge twice (one time at each one of its nodes)
-        return sum/2;
+
+    /**
+     * this method removes all of the cells of dead nodes that are left in the Neighbors lists of the graph.
+     * <p>
+     * Time Complexity: O(the length of the Neighbors lists of the nodes in the compaction queue)
+     * </p>
+     * @return the amount of dead cells that were removed
+     */
+    public int compact() {
+        return compact(Integer.MAX_VALUE);
     }
 
 
+    /**
+     * this method is the incremental compactor of the lazy deletion mode.
+     * it walks the Neighbors lists of the nodes in the compaction queue (starting where the last call stopped), and unlinks the cells whose item is a dead node.
+     * a node leaves the queue once its list holds no more dead cells. if new dead cells were created behind the compactor's cursor, the node is queued again.
+     * <p>
+     * Time Complexity: O(budget)
+     * </p>
+     * @param budget the maximal amount of cells to inspect
+     * @return the amount of dead cells that were removed
+     */
+    public int compact(int budget) {
+        int removed = 0;
+
+        while (budget > 0 && !compactionQueue.isEmpty()) {
+            Node node = compactionQueue.head.getItem();
+
+            if (!node.deleted && node.staleNeighbors > 0) { // there's still work to be done on the node at the head of the queue
+                if (compactionCursor == null) { // starting a new pass over the node's Neighbors list
+                    compactionCursor = node.Neighbors.head;
+                    compactionRemaining = node.Neighbors.length();
+                }
+
+                while (budget > 0 && compactionRemaining > 0 && node.staleNeighbors > 0) {
+                    DoublyLinkedList<Node>.DoublyLinkedCell cell = compactionCursor;
+                    compactionCursor = cell.next; // advancing the cursor before the cell might get unlinked
+                    compactionRemaining--;
+                    budget--;
+                    if (cell.getItem().deleted) { // a leftover of a lazily deleted Neighbor, unlink it
+                        node.Neighbors.deleteCell(cell);
+                        node.staleNeighbors--;
+                        removed++;
+                        accountMemory(-CELL_BYTES);
+                    }
+                }
+
+                if (node.staleNeighbors > 0 && compactionRemaining > 0) { // the budget ran out in the middle of the node's list, the next call continues from the cursor
+                    break;
+                }
+            }
+
+            // the pass over the node's list is over, so remove it from the head of the queue
+            compactionQueue.deleteCell(compactionQueue.head);
+            accountMemory(-CELL_BYTES);
+            compactionCursor = null;
+            node.queuedForCompaction = false;
+
+            if (!node.deleted && node.staleNeighbors > 0) { // dead cells were created behind the cursor during the pass, so the node needs another one
+                enqueueForCompaction(node);
+            }
+        }
+
+        return removed;
+    }
 
 
     /**
-     * this method is used to check if the Graph is empty or not
-     * @return True if the amount of nodes in the Graph (Nodes.length) is 0.
+     * this method adds the given node to the tail of the compaction queue, unless it is already there.
+     * <p>
+     * Time Complexity: O(1)
+     * </p>
+     * @param node a node whose Neighbors list holds cells of dead nodes
      */
-    public boolean isEmpty(){
-        return this.nodesHeap.getSize() == 0;
+    private void enqueueForCompaction(Node node) {
+        if (!node.queuedForCompaction) {
+            node.queuedForCompaction = true;
+            compactionQueue.addItem(node);
+            accountMemory(CELL_BYTES);
+        }
     }
 
 
+    /**
+     * this method passes the id of every Neighbor of the node of id 'node_id' to the given action, walking the node's Neighbors list directly.
+     * no iterator is created and no id is boxed. cells of dead nodes that are yet to be compacted are skipped.
+     * <p>
+     * Time Complexity: O(the length of the node's Neighbors list)
+     * </p>
+     * @pre the action must not modify the graph
+     * @param node_id the id of the node whose Neighbors we want to visit
+     * @param action the action to perform on the id of each Neighbor
+     * @return the amount of Neighbors that were visited, or -1 if there's no node of id 'node_id' in the graph
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
+     */
+    public int forEachNeighbor(int node_id, IntConsumer action) {
+        checkIntIds();
+        Node node = nodesHash.get(node_id);
+        if (node == null) { // if the node wasn't found in the Graph
+            return -1;
+        }
+
+        int visited = 0;
+        DoublyLinkedList<Node>.DoublyLinkedCell currCell = node.Neighbors.head;
+        int cellsCount = node.Neighbors.length();
+        for (int i=0; i<cellsCount; i++) { // iterating through the cells of the Neighbors list, skipping the ones of dead nodes
+            Node neighbor = currCell.getItem();
+            if (!neighbor.deleted) {
+                action.accept(neighbor.getId());
+                visited++;
+            }
+            currCell = currCell.next;
+        }
+        return visited;
+    }
+
 
     /**
-     * This class represents a node in the graph.
+     * this method copies the ids of the Neighbors of the node of id 'node_id' into the given buffer, walking the node's Neighbors list directly.
+     * if the buffer is too short, only its first buf.length Neighbors are copied - the returned value tells the caller how large the buffer should have been.
+     * <p>
+     * Time Complexity: O(the length of the node's Neighbors list)
+     * </p>
+     * @param node_id the id of the node whose Neighbors we want
+     * @param buf the buffer to fill with the ids of the Neighbors, starting at index 0
+     * @return the amount of Neighbors the node has, or -1 if there's no node of id 'node_id' in the graph
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
      */
-    public static class Node{
-        private final int id;
-        private final int weight;
-        private int vicinityWeight;
-        private final DoublyLinkedList<Node> Neighbors;
-        private maxHeap<Node>.heapNode<Node> heapForm;
-        private hashMap<Node>.hashCell<Node> hashForm;
+    public int neighbors(int node_id, int[] buf) {
+        checkIntIds();
+        Node node = nodesHash.get(node_id);
+        if (node == null) { // if the node wasn't found in the Graph
+            return -1;
+        }
+
+        int count = 0;
+        DoublyLinkedList<Node>.DoublyLinkedCell currCell = node.Neighbors.head;
+        int cellsCount = node.Neighbors.length();
+        for (int i=0; i<cellsCount; i++) { // iterating through the cells of the Neighbors list, skipping the ones of dead nodes
+            Node neighbor = currCell.getItem();
+            if (!neighbor.deleted) {
+                if (count < buf.length) {
+                    buf[count] = neighbor.getId();
+                }
+                count++;
+            }
+            currCell = currCell.next;
+        }
+        return count;
+    }
+
+
+    /**
+     * this method enables the 2-hop index of the graph. the index keeps, for every node, its 2-hop neighborhood weight up to date as addEdge, deleteNode and
+     * expireEdges run, together with a second Maximum-Heap of these weights. the 2-hop neighborhood weight of a node v is the total weight of the nodes within
+     * distance 2 of v: w(v) + the sum of w(x) over the nodes x != v that are Neighbors of v or Neighbors of a Neighbor of v, each of them counted once.
+     * to know when a node enters or leaves the distance 2 of another, the index counts the paths of at most two edges between every pair of nodes within
+     * distance 2 (the edge between them, plus a path through every common Neighbor of theirs), in a pairCounter. x is added to the 2-hop neighborhood weight
+     * of v when the count of the pair rises from 0, and removed from it when the count drops back to 0.
+     * the weights are summed in longs. the keys of the 2-hop Maximum-Heap are ints, so a weight beyond the range of an int is held in the heap as the nearest
+     * int, and maxTwoHopNeighborhoodWeight breaks the ties at Integer.MAX_VALUE by the weights themselves.
+     * update costs while the index is enabled:
+     * addEdge(u, v) - O((deg(u) + deg(v)) * log n), for the paths through the new edge: u - v, a - u - v for every Neighbor a of u, and u - v - b for every Neighbor b of v.
+     * an edge removed by expireEdges - the same as adding it, in reverse.
+     * deleteNode(x) - O((deg(x)^2 + the sum of deg(u) over the Neighbors u of x) * log n), since every pair of Neighbors of x loses the path through x, and
+     * every node within distance 2 of x loses w(x).
+     * memory cost: an entry of the pairCounter for every pair of nodes within distance 2 of each other, which is at most the sum of deg(u)^2 over the nodes u.
+     * <p>
+     * Time Complexity: O(n log n + the sum of deg(u)^2 over the nodes u of the graph) to build the index
+     * </p>
+     */
+    public void enableTwoHopIndex() {
+        if (twoHopHeap != null) { // the index is already enabled
+            return;
+        }
+        twoHopPairs = new pairCounter(nodesBySlot.length);
+        for (Node node : nodesBySlot) { // every node starts with its own weight, and without a form in the heap until its weight is summed up
+            node.twoHopWeight = node.getWeight();
+            node.twoHopForm = null;
+        }
+
+        for (Node node : nodesBySlot) { // counting the paths of a single edge (once per edge, from its end with the smaller slot) and of two edges (through their middle node)
+            if (node.deleted) {
+                continue;
+            }
+            DoublyLinkedList<Node>.DoublyLinkedCell currCell = node.Neighbors.head;
+            int cellsCount = node.Neighbors.length();
+            for (int i=0; i<cellsCount; i++) {
+                Node neighbor = currCell.getItem();
+                if (!neighbor.deleted) {
+                    if (neighbor.slot > node.slot) {
+                        addTwoHopPaths(node, neighbor, 1);
+                    }
+                    addTwoHopPathsToNeighbors(neighbor, node, currCell.next, cellsCount - i - 1, 1);
+                }
+                currCell = currCell.next;
+            }
+        }
+
+        twoHopHeap = new maxHeap<>(nodesBySlot.length);
+        for (Node node : nodesBySlot) {
+            if (!node.deleted) {
+                node.twoHopForm = twoHopHeap.addNode(node, twoHopKey(node.twoHopWeight));
+            }
+        }
+    }
+
+
+    /**
+     * this method disables the 2-hop index of the graph, and releases its Maximum-Heap and its counts of paths.
+     * <p>
+     * Time Complexity: O(1)
+     * </p>
+     */
+    public void disableTwoHopIndex() {
+        twoHopHeap = null;
+        twoHopPairs = null;
+    }
+
+
+    /**
+     * This method returns the node in the graph with the maximum 2-hop neighborhood weight (as defined at enableTwoHopIndex).
+     * <p>
+     * Time Complexity: O(1), or O(k) when k nodes have a 2-hop neighborhood weight of at least Integer.MAX_VALUE
+     * </p>
+     * @pre the 2-hop index is enabled
+     * @return a Node object representing the correct node. If there is no node in the graph, returns 'null'.
+     */
+    public Node maxTwoHopNeighborhoodWeight() {
+        if (twoHopHeap == null) {
+            throw new IllegalStateException("the 2-hop index is disabled, call enableTwoHopIndex() first");
+        }
+        if (this.isEmpty()) { // if the graph is empty return null
+            return null;
+        }
+        maxHeap<Node>.heapNode<Node> max = twoHopHeap.getMax();
+        if (max.key < Integer.MAX_VALUE) {
+            return max.getValue();
+        }
+        // the weights that don't fit in an int share the key Integer.MAX_VALUE, so the heaviest of them is found among the cells of that key
+        saturatedMaxWalk walk = new saturatedMaxWalk();
+        twoHopHeap.walk(walk);
+        return walk.best;
+    }
+
+
+    /**
+     * given a node id of a node in the graph, this method returns the 2-hop neighborhood weight of that node (as defined at enableTwoHopIndex).
+     * <p>
+     * Time Complexity: O(1)
+     * </p>
+     * @pre the 2-hop index is enabled
+     * @param node_id - an id of a node.
+     * @return the 2-hop neighborhood weight of the node of id 'node_id' if such a node exists in the graph. Otherwise, the function returns -1.
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
+     */
+    public long getTwoHopNeighborhoodWeight(int node_id) {
+        checkIntIds();
+        if (twoHopHeap == null) {
+            throw new IllegalStateException("the 2-hop index is disabled, call enableTwoHopIndex() first");
+        }
+        Node node = nodesHash.get(node_id);
+        if (node != null) {
+            return node.twoHopWeight;
+        }
+        return -1;
+    }
+
+
+    /**
+     * this method updates the 2-hop index for an edge that is about to be added between node1 and node2: the edge itself is a path between them, every old
+     * Neighbor of node1 gets a path to node2 through node1, and every old Neighbor of node2 gets a path to node1 through node2.
+     * <p>
+     * Time Complexity: O((deg(node1) + deg(node2)) * log n)
+     * </p>
+     * @pre the edge isn't in the Neighbors lists of its nodes yet
+     */
+    private void twoHopEdgeAdded(Node node1, Node node2) {
+        addTwoHopPaths(node1, node2, 1);
+        addTwoHopPathsToNeighbors(node2, node1, node1.Neighbors.head, node1.Neighbors.length(), 1);
+        addTwoHopPathsToNeighbors(node1, node2, node2.Neighbors.head, node2.Neighbors.length(), 1);
+    }
+
+
+    /**
+     * this method updates the 2-hop index for an edge between node1 and node2 that was just removed by expireEdges - the reverse of twoHopEdgeAdded.
+     * <p>
+     * Time Complexity: O((deg(node1) + deg(node2)) * log n)
+     * </p>
+     * @pre the cells of the edge were unlinked from the Neighbors lists of its nodes
+     */
+    private void twoHopEdgeRemoved(Node node1, Node node2) {
+        addTwoHopPaths(node1, node2, -1);
+        addTwoHopPathsToNeighbors(node2, node1, node1.Neighbors.head, node1.Neighbors.length(), -1);
+        addTwoHopPathsToNeighbors(node1, node2, node2.Neighbors.head, node2.Neighbors.length(), -1);
+    }
+
+
+    /**
+     * this method updates the 2-hop index for the given node, which is being deleted. every node within distance 2 of the node loses its weight (the
+     * counts of these pairs are dropped altogether), and every pair of Neighbors of the node loses the path through it.
+     * <p>
+     * Time Complexity: O((deg(node)^2 + the sum of deg(u) over the Neighbors u of the node) * log n)
+     * </p>
+     * @pre the node's Neighbors lists weren't touched yet by the deletion, and the node was removed from the 2-hop Maximum-Heap
+     */
+    private void twoHopNodeDeleted(Node node) {
+        DoublyLinkedList<Node>.DoublyLinkedCell currCell = node.Neighbors.head;
+        int cellsCount = node.Neighbors.length();
+        for (int i=0; i<cellsCount; i++) {
+            Node neighbor = currCell.getItem();
+            if (!neighbor.deleted) {
+                dropTwoHopPair(node, neighbor);
+                DoublyLinkedList<Node>.DoublyLinkedCell farCell = neighbor.Neighbors.head;
+                int farCount = neighbor.Neighbors.length();
+                for (int j=0; j<farCount; j++) {
+                    if (!farCell.getItem().deleted) {
+                        dropTwoHopPair(node, farCell.getItem());
+                    }
+                    farCell = farCell.next;
+                }
+                addTwoHopPathsToNeighbors(neighbor, node, currCell.next, cellsCount - i - 1, -1);
+            }
+            currCell = currCell.next;
+        }
+    }
+
+
+    /**
+     * this method adds the given amount of paths through 'middle' between 'node' and each of the live nodes held by 'count' cells of a Neighbors list of
+     * 'middle', starting from 'cell'. the cells that hold 'node' itself are skipped.
+     * <p>
+     * Time Complexity: O(count * log n)
+     * </p>
+     */
+    private void addTwoHopPathsToNeighbors(Node node, Node middle, DoublyLinkedList<Node>.DoublyLinkedCell cell, int count, int paths) {
+        for (int i=0; i<count; i++) {
+            Node neighbor = cell.getItem();
+            if (!neighbor.deleted && neighbor != node && neighbor != middle) {
+                addTwoHopPaths(node, neighbor, paths);
+            }
+            cell = cell.next;
+        }
+    }
+
+
+    /**
+     * this method adds the given amount of paths (which may be negative) to the count of the pair of node1 and node2. when the pair comes within distance
+     * 2 of each other, each of the nodes gains the weight of the other, and when it leaves that distance, each of them loses it.
+     * <p>
+     * Time Complexity: O(log n)
+     * </p>
+     * @pre node1 != node2
+     */
+    private void addTwoHopPaths(Node node1, Node node2, int paths) {
+        int previous = twoHopPairs.add(twoHopPair(node1, node2), paths);
+        if (previous == 0) {
+            updateTwoHopWeight(node1, node2.getWeight());
+            updateTwoHopWeight(node2, node1.getWeight());
+        } else if (previous + paths == 0) {
+            updateTwoHopWeight(node1, -node2.getWeight());
+            updateTwoHopWeight(node2, -node1.getWeight());
+        }
+    }
+
+
+    /**
+     * this method removes the pair of the given deleted node and another node from the counts of paths, and takes the weight of the deleted node off the
+     * other node if the two were within distance 2 of each other.
+     * <p>
+     * Time Complexity: O(log n)
+     * </p>
+     */
+    private void dropTwoHopPair(Node deleted, Node node) {
+        if (node != deleted && twoHopPairs.remove(twoHopPair(deleted, node)) > 0) {
+            updateTwoHopWeight(node, -deleted.getWeight());
+        }
+    }
+
+
+    /**
+     * @return the key of the pair of the given nodes in the counts of paths: the smaller slot of the two in the high half, and the larger one in the low half
+     */
+    private static long twoHopPair(Node node1, Node node2) {
+        return node1.slot < node2.slot ? (long) node1.slot << 32 | node2.slot : (long) node2.slot << 32 | node1.slot;
+    }
+
+
+    /**
+     * this method adds the given amount to the 2-hop neighborhood weight of the given node, and fixes its position in the 2-hop Maximum-Heap (once it's
+     * in the heap).
+     * <p>
+     * Time Complexity: O(log n)
+     * </p>
+     */
+    private void updateTwoHopWeight(Node node, long additionalWeight) {
+        node.twoHopWeight += additionalWeight;
+        if (node.twoHopForm != null) {
+            node.twoHopForm.changeKey(twoHopKey(node.twoHopWeight));
+        }
+    }
+
+
+    /**
+     * @return the key of the given 2-hop neighborhood weight in the 2-hop Maximum-Heap: the weight itself, or the nearest int if it doesn't fit in one
+     */
+    private static int twoHopKey(long twoHopWeight) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, twoHopWeight));
+    }
+
+
+    /**
+     * the walk of maxTwoHopNeighborhoodWeight over the cells of the 2-hop Maximum-Heap whose key is Integer.MAX_VALUE, which keeps the node with the
+     * largest 2-hop neighborhood weight among them.
+     */
+    private static class saturatedMaxWalk implements queueVisitor<Node>{
+        private Node best = null;
+
+        @Override
+        public int bound() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void visit(queueCell<Node> cell) {
+            if (cell.key == Integer.MAX_VALUE && (best == null || cell.getValue().twoHopWeight > best.twoHopWeight)) {
+                best = cell.getValue();
+            }
+        }
+    }
+
+
+    /**
+     * this method is called at the end of every mutation of the graph. while nobody is subscribed to the maximum it costs a counter increment and a single comparison.
+     * <p>
+     * Time Complexity: O(1) + the cost of the notified listeners
+     * </p>
+     */
+    private void afterMutation() {
+        modCount++;
+        if (maxListeners != null && batchDepth == 0) {
+            notifyMaxListeners();
+        }
+    }
+
+
+    /**
+     * this method compares the current root of nodesHeap with the one the listeners were last told about, and tells them about it if its identity or key changed.
+     * <p>
+     * Time Complexity: O(1) + the cost of the notified listeners
+     * </p>
+     */
+    private void notifyMaxListeners() {
+        Node currentMax = heapMax();
+        int currentMaxWeight = currentMax == null ? -1 : currentMax.getVicinityWeight();
+        if (currentMax == lastMax && currentMaxWeight == lastMaxWeight) { // the root didn't change
+            return;
+        }
+        Node previousMax = lastMax;
+        int previousMaxWeight = lastMaxWeight;
+        lastMax = currentMax;
+        lastMaxWeight = currentMaxWeight;
+        for (maxListener listener : maxListeners) {
+            listener.maxChanged(previousMax, previousMaxWeight, currentMax);
+        }
+    }
+
+
+    /**
+     * this method subscribes the given listener to changes of the node with the maximum neighborhood weight: after every mutation (or at the end of every batch,
+     * see beginBatch), the listener is told if the root of nodesHeap is a different node than before, or the same node with a different neighborhood weight.
+     * <p>
+     * Time Complexity: O(the amount of listeners)
+     * </p>
+     * @param listener the listener to subscribe
+     */
+    public void addMaxListener(maxListener listener) {
+        if (maxListeners == null) { // the first subscriber - start tracking the maximum from its current state
+            maxListeners = new maxListener[] {listener};
+            lastMax = heapMax();
+            lastMaxWeight = lastMax == null ? -1 : lastMax.getVicinityWeight();
+            return;
+        }
+        maxListeners = Arrays.copyOf(maxListeners, maxListeners.length + 1);
+        maxListeners[maxListeners.length - 1] = listener;
+    }
+
+
+    /**
+     * this method unsubscribes the given listener. when the last listener is removed, the graph stops tracking the maximum altogether.
+     * <p>
+     * Time Complexity: O(the amount of listeners)
+     * </p>
+     * @param listener the listener to unsubscribe
+     * @return 'true' if the listener was subscribed, otherwise 'false'
+     */
+    public boolean removeMaxListener(maxListener listener) {
+        if (maxListeners == null) {
+            return false;
+        }
+        for (int i = 0; i < maxListeners.length; i++) {
+            if (maxListeners[i] == listener) {
+                if (maxListeners.length == 1) {
+                    maxListeners = null;
+                    lastMax = null;
+                } else {
+                    maxListener[] remaining = new maxListener[maxListeners.length - 1];
+                    System.arraycopy(maxListeners, 0, remaining, 0, i);
+                    System.arraycopy(maxListeners, i + 1, remaining, i, remaining.length - i);
+                    maxListeners = remaining;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * this method opens a batch of mutations. until the matching endBatch(), the listeners aren't told about changes of the maximum, and at the end of the batch
+     * they are told at most once - about the difference between the maximum before the batch and the maximum after it. batches may be nested.
+     * <p>
+     * Time Complexity: O(1)
+     * </p>
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+
+    /**
+     * this method closes the batch opened by the matching beginBatch(), and tells the listeners about the change of the maximum, if there was one.
+     * <p>
+     * Time Complexity: O(1) + the cost of the notified listeners
+     * </p>
+     * @pre a batch is open
+     */
+    public void endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("endBatch() without a matching beginBatch()");
+        }
+        batchDepth--;
+        if (batchDepth == 0 && changes != null) { // the end of a batch is the end of a batch of the change feed as well
+            flushChanges();
+        }
+        // the mutations of the batch already counted themselves in modCount, so the end of the batch only tells the listeners about them
+        if (batchDepth == 0 && maxListeners != null) {
+            notifyMaxListeners();
+        }
+    }
+
+
+    /**
+     * this method enables the change feed of the graph. from now on, every change of a node's neighborhood weight is recorded as an (id, new neighborhood weight)
+     * pair in a primitive buffer, where repeated changes of the same node are merged into a single pair holding its latest neighborhood weight.
+     * a deleted node is recorded with the neighborhood weight -1 (just like getNeighborhoodWeight reports it).
+     * the buffer is handed to the consumer when it holds batchCapacity distinct nodes, at the end of every batch (see beginBatch), and on flushChanges().
+     * so the downstream traffic is O(changed nodes) per batch, instead of O(N) for a full snapshot.
+     * <p>
+     * Time Complexity: O(batchCapacity)
+     * </p>
+     * @pre batchCapacity > 0, and the consumer must not modify the graph
+     * @param batchCapacity the maximal amount of distinct nodes in a single batch
+     * @param consumer the consumer of the batches
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
+     */
+    public void enableChangeFeed(int batchCapacity, changeConsumer consumer) {
+        checkIntIds();
+        if (changes != null) { // handing over whatever the previous feed collected
+            flushChanges();
+        }
+        changes = new changeFeed(batchCapacity, consumer);
+    }
+
+
+    /**
+     * this method hands over the changes collected so far, and disables the change feed.
+     * <p>
+     * Time Complexity: O(the amount of pending changes)
+     * </p>
+     */
+    public void disableChangeFeed() {
+        if (changes != null) {
+            flushChanges();
+            changes = null;
+        }
+    }
+
+
+    /**
+     * this method hands the changes collected so far to the consumer of the change feed, and starts a new batch.
+     * <p>
+     * Time Complexity: O(the amount of pending changes) + the cost of the consumer
+     * </p>
+     * @pre the change feed is enabled
+     * @return the amount of (id, neighborhood weight) pairs that were handed over
+     */
+    public int flushChanges() {
+        int count = changes.count;
+        if (count > 0) {
+            changes.consumer.accept(changes.ids, changes.weights, count);
+            changes.clear();
+        }
+        return count;
+    }
+
+
+    /**
+     * this method writes the changes collected so far into the given buffer instead of handing them to the consumer, and starts a new batch.
+     * the format is: the amount of pairs (an int), followed by the pairs themselves (an int id followed by an int neighborhood weight), in the byte order of the buffer.
+     * <p>
+     * Time Complexity: O(the amount of pending changes)
+     * </p>
+     * @pre the change feed is enabled, and out.remaining() >= 4 + 8 * pendingChanges()
+     * @param out the buffer to write the changes to
+     * @return the amount of (id, neighborhood weight) pairs that were written
+     */
+    public int flushChanges(ByteBuffer out) {
+        int count = changes.count;
+        out.putInt(count);
+        for (int i = 0; i < count; i++) {
+            out.putInt(changes.ids[i]);
+            out.putInt(changes.weights[i]);
+        }
+        changes.clear();
+        return count;
+    }
+
+
+    /**
+     * this method returns the amount of distinct nodes whose changes were collected since the last batch was handed over.
+     * <p>
+     * Time Complexity: O(1)
+     * </p>
+     * @pre the change feed is enabled
+     */
+    public int pendingChanges() {
+        return changes.count;
+    }
+
+
+    /**
+     * this method is called by the graph after every change of a node's vicinity weight, in order to keep the optional indices of the graph up to date.
+     * <p>
+     * Time Complexity: O(log n) per enabled index
+     * </p>
+     * @param node the node whose vicinity weight was changed
+     * @param previousWeight the vicinity weight of the node before the change
+     */
+    private void vicinityChanged(Node node, int previousWeight) {
+        if (rankIndex != null) {
+            rankIndex.remove(previousWeight);
+            rankIndex.add(node.getVicinityWeight());
+        }
+        if (changes != null) {
+            changes.record(node, node.getVicinityWeight());
+        }
+        if (vicinityColumn != null) { // every change of the amount of Neighbors of a node comes with a change of its vicinity weight
+            vicinityColumn.set(node.slot, node.getVicinityWeight());
+            degreeColumn.set(node.slot, node.getNeighborsAmount());
+        }
+    }
+
+
+    /**
+     * this method enables the rank index of the graph: an order-statistic tree over the neighborhood weights of the nodes, which is kept up to date on every
+     * change of a vicinity weight (a removal and an insertion of O(log d) each, while d is the amount of distinct neighborhood weights in the graph).
+     * <p>
+     * Time Complexity: O(n log n) to build the index
+     * </p>
+     */
+    public void enableRankIndex() {
+        if (rankIndex != null) { // the index is already enabled
+            return;
+        }
+        rankIndex = new orderStatisticTree();
+        for (Node node : nodesBySlot) { // for every node in the graph
+            if (!node.deleted) {
+                rankIndex.add(node.getVicinityWeight());
+            }
+        }
+    }
+
+
+    /**
+     * this method disables the rank index of the graph, and releases its tree.
+     * <p>
+     * Time Complexity: O(1)
+     * </p>
+     */
+    public void disableRankIndex() {
+        rankIndex = null;
+    }
+
+
+    /**
+     * given a node id of a node in the graph, this method returns the rank of that node by neighborhood weight: 1 + the amount of nodes whose neighborhood weight
+     * is strictly greater than its own. so the heaviest node has rank 1, and nodes of equal neighborhood weight share their rank.
+     * <p>
+     * Time Complexity: O(log n)
+     * </p>
+     * @pre the rank index is enabled
+     * @param node_id - an id of a node.
+     * @return the rank of the node of id 'node_id' if such a node exists in the graph. Otherwise, the function returns -1.
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
+     */
+    public int rankOf(int node_id) {
+        checkIntIds();
+        if (rankIndex == null) {
+            throw new IllegalStateException("the rank index is disabled, call enableRankIndex() first");
+        }
+        Node node = nodesHash.get(node_id);
+        if (node == null) { // if the node wasn't found in the Graph
+            return -1;
+        }
+        return 1 + rankIndex.countGreater(node.getVicinityWeight());
+    }
+
+
+    /**
+     * this method returns the neighborhood weight at the given percentile of the graph, using the nearest-rank method:
+     * the smallest neighborhood weight w such that at least a fraction q of the nodes have a neighborhood weight of at most w.
+     * for example weightAtPercentile(0.99) is the p99 neighborhood weight, and weightAtPercentile(1) is the maximal one.
+     * <p>
+     * Time Complexity: O(log n)
+     * </p>
+     * @pre the rank index is enabled, and 0 <= q <= 1
+     * @param q the percentile, as a fraction
+     * @return the neighborhood weight at the given percentile. If there is no node in the graph, returns -1.
+     */
+    public int weightAtPercentile(double q) {
+        if (rankIndex == null) {
+            throw new IllegalStateException("the rank index is disabled, call enableRankIndex() first");
+        }
+        if (this.isEmpty()) { // if the graph is empty return -1
+            return -1;
+        }
+        int k = (int) Math.ceil(q * getNumNodes());
+        return rankIndex.select(Math.max(1, Math.min(k, nodesHeap.getSize())));
+    }
+
+
+    /**
+     * this method is used to determine the amount of nodes in the Graph
+     * <p>
+     * The time complexity of this method is O(1)
+     * </p>
+     * @return the amount of nodes in the Maximum-Heap representing the Graph
+     */
+    public int getNumNodes(){
+        if (recorder != null) {
+            recorder.record(traceRecorder.GET_NUM_NODES);
+        }
+        return nodesHeap.getSize();
+    }
+
+
+    /**
+     * this method is used to determine the amount of edges that there are in the Graph.
+     * the graph counts its edges as they are added (one per addEdge) and deleted (the amount of Neighbors of the deleted node, per deleteNode).
+     * <p>
+     * The time complexity of this method is O(1)
+     * </p>
+     * @return the amount of edges in the graph
+     */
+    public int getNumEdges(){
+        if (recorder != null) {
+            recorder.record(traceRecorder.GET_NUM_EDGES);
+        }
+        return edgesCount;
+    }
+
+
+    /**
+     * this method returns a read-only, point-in-time view of the neighborhood weights and the amounts of Neighbors of the nodes of the graph.
+     * the graph keeps accepting addEdge and deleteNode while snapshots are open: the per-node values are kept in pages of primitive arrays, which a snapshot
+     * shares with the graph until the graph writes to them - the first write to a shared page copies it. so taking a snapshot costs O(1), the first write after it
+     * costs O(N / PAGE_SIZE) for the table of pages, and every other write costs at most one copy of a page. once a snapshot is closed it drops its pages,
+     * and once all of the snapshots are closed the graph writes in place again.
+     * the returned snapshot may be read by any thread (after being safely handed to it), while the graph itself keeps being used by its own thread.
+     * <p>
+     * Time Complexity: O(1), apart from the first call which builds the pages and the index of the snapshots in O(N)
+     * </p>
+     * @pre the method is called by the thread that modifies the graph
+     * @return the snapshot of the graph. it should be closed once it isn't needed anymore
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
+     */
+    public graphSnapshot snapshot() {
+        checkIntIds();
+        if (vicinityColumn == null) { // the first snapshot - building the pages from the nodes, and the immutable index of the ids
+            vicinityColumn = new pagedColumn(nodesBySlot.length);
+            degreeColumn = new pagedColumn(nodesBySlot.length);
+            for (Node node : nodesBySlot) {
+                vicinityColumn.set(node.slot, node.getVicinityWeight());
+                degreeColumn.set(node.slot, node.deleted ? -1 : node.getNeighborsAmount());
+            }
+            snapshotIndex = new slotIndex(nodesBySlot);
+        }
+        openSnapshots.incrementAndGet();
+        return new graphSnapshot(vicinityColumn.freeze(), degreeColumn.freeze(), nodesHeap.getSize(), edgesCount);
+    }
+
+
+
+
+    /**
+     * this method returns a fork of the graph: a copy of the graph for what-if simulations, which shares all of its unchanged structure with the graph.
+     * the fork only keeps the nodes that it touched (an overlay of their neighborhood weights, amounts of Neighbors and added edges, with a Maximum-Heap of their own),
+     * and reads everything else from the graph. so a simulation that touches k nodes costs O(k log k) time and O(k) memory, whatever the size of the graph is.
+     * the graph must not be modified while its forks are in use (a fork throws a ConcurrentModificationException if it was), but any amount of forks can be
+     * used at the same time, each one by its own thread.
+     * <p>
+     * Time Complexity: O(1)
+     * </p>
+     * @return the fork of the graph
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
+     */
+    public graphFork fork() {
+        checkIntIds();
+        return new graphFork();
+    }
+
+
+    /**
+     * this method starts recording the graph: the current state of the graph (its nodes and its edges) is written to the given channel as the header of a trace,
+     * followed by a compact binary record of every call to maxNeighborhoodWeight, getNeighborhoodWeight, addEdge, deleteNode, getNumNodes, getNumEdges and
+     * expireEdges, until stopRecording(). the records are buffered, so the channel is written in large blocks. a trace can be replayed against a fresh graph
+     * by graphReplay. the edges of the header are written without their expiration times, so they don't expire when the trace is replayed.
+     * <p>
+     * Time Complexity: O(n + m) for the header, and O(1) per recorded call afterwards
+     * </p>
+     * @pre the graph isn't being recorded already
+     * @param out the channel that the trace is written to. it is not closed by the graph
+     * @throws UncheckedIOException if writing to the channel fails
+     * @throws IllegalStateException if the nodes of the graph have 64-bit ids (see Node(long, int))
+     */
+    public void startRecording(WritableByteChannel out) {
+        checkIntIds();
+        if (recorder != null) {
+            throw new IllegalStateException("the graph is already being recorded");
+        }
+        traceRecorder trace = new traceRecorder(out);
+        trace.putHeader(kind, nodesHeap.getSize());
+        for (Node node : nodesBySlot) {
+            if (!node.deleted) {
+                trace.putInt(node.getId());
+                trace.putInt(node.getWeight());
+            }
+        }
+        // every edge is written once, by its end of the smaller slot
+        trace.putInt(edgesCount);
+        for (Node node : nodesBySlot) {
+            if (!node.deleted) {
+                DoublyLinkedList<Node>.DoublyLinkedCell currCell = node.Neighbors.head;
+                int cellsCount = node.Neighbors.length();
+                for (int i = 0; i < cellsCount; i++) {
+                    Node neighbor = currCell.getItem();
+                    if (currCell.getParallel() != null && !neighbor.deleted && node.slot < neighbor.slot) {
+                        trace.putInt(node.getId());
+                        trace.putInt(neighbor.getId());
+                    }
+                    currCell = currCell.next;
+                }
+            }
+        }
+        recorder = trace;
+    }
+
+
+    /**
+     * this method stops recording the graph: it ends the trace with the state checksum of the graph (see stateChecksum), so a replay can verify that it reached
+     * the same state, and writes whatever is still buffered to the channel.
+     * <p>
+     * Time Complexity: O(N)
+     * </p>
+     * @pre the graph is being recorded
+     * @throws UncheckedIOException if writing to the channel fails
+     */
+    public void stopRecording() {
+        if (recorder == null) {
+            throw new IllegalStateException("the graph isn't being recorded");
+        }
+        traceRecorder trace = recorder;
+        recorder = null;
+        trace.end(stateChecksum());
+    }
+
+
+    /**
+     * this method returns a checksum of the state of the graph: the ids and the neighborhood weights of its nodes, and the amount of its edges.
+     * the checksum doesn't depend on the order of the nodes, so two graphs that went through the same operations have the same checksum.
+     * <p>
+     * Time Complexity: O(N)
+     * </p>
+     * @return the checksum of the graph's state
+     */
+    public long stateChecksum() {
+        long checksum = edgesCount;
+        for (Node node : nodesBySlot) {
+            if (!node.deleted) {
+                long id = node.getLongId();
+                long high = id - (int) id; // 0 for an id that fits in 32 bits
+                long mixed = (((long) (int) id << 32 | (node.getVicinityWeight() & 0xFFFFFFFFL)) + high) * 0x9E3779B97F4A7C15L;
+                checksum += mixed ^ (mixed >>> 31);
+            }
+        }
+        return checksum;
+    }
+
+
+    /**
+     * this method checks the invariants of the graph, and describes every one that is broken:
+     * - nodesHeap: every living node's heapForm is held by the heap where it says, with the node's neighborhood weight as its key, in heap order
+     *   (see priorityQueue.checkCell), and the heap holds exactly the living nodes.
+     * - nodesHash: every living node's hashForm holds it, and its id leads to it. a deleted node's id doesn't. if the nodes have 64-bit ids, the same goes for
+     *   the index of the 64-bit ids instead.
+     * - the neighborhood weights: every living node's neighborhood weight is its weight plus the weights of its living Neighbors (and of its half-edges).
+     * - the adjacency: every edge cell has a parallel cell in the Neighbors list of the Neighbor, which points back to it, and the amounts of edge cells,
+     *   half-edges and stale cells (of dead Neighbors, in lazy deletion mode) match the counters of the graph and of the nodes.
+     * the nodes are checked in parallel, in ranges of slots on the common ForkJoinPool, and the counts of the ranges are summed up at the end.
+     * <p>
+     * Time Complexity: O(n + m) work, spread over the threads of the pool
+     * </p>
+     * @pre the graph isn't modified during the check (hold the lock that guards the graph's mutations, if it has one)
+     * @return the descriptions of the broken invariants - at most VERIFY_FAILURES_LIMIT of them, followed by the amount of the rest. empty if the graph is valid
+     */
+    public List<String> verify() {
+        verifyTask task = ForkJoinPool.commonPool().invoke(new verifyTask(0, nodesBySlot.length));
+        List<String> failures = task.failures;
+        if (task.living != nodesHeap.getSize()) {
+            task.fail("the heap holds " + nodesHeap.getSize() + " nodes, but " + task.living + " nodes are alive");
+        }
+        if (nodesHash != null && task.living != nodesHash.size) {
+            task.fail("the hash map holds " + nodesHash.size + " nodes, but " + task.living + " nodes are alive");
+        }
+        if (longIds != null && task.living != longIds.size) {
+            task.fail("the index of the 64-bit ids holds " + longIds.size + " nodes, but " + task.living + " nodes are alive");
+        }
+        if (task.edgeCells != 2L * edgesCount) {
+            task.fail("the Neighbors lists hold " + task.edgeCells + " edge cells, but the graph counts " + edgesCount + " edges");
+        }
+        if (task.halfEdges != halfEdgesCount) {
+            task.fail("the Neighbors lists hold " + task.halfEdges + " half-edges, but the graph counts " + halfEdgesCount);
+        }
+        if (task.dropped > 0) {
+            failures.add("... and " + task.dropped + " more");
+        }
+        return failures;
+    }
+
+
+    // the maximal amount of broken invariants that verify() describes
+    public static final int VERIFY_FAILURES_LIMIT = 100;
+    // the amount of slots that a single verifyTask (or rebuildTask) handles without splitting
+    private static final int VERIFY_RANGE = 4096;
+
+    /**
+     * checks the nodes of the slots [from, to) (see verify), splitting the range in halves while it is longer than VERIFY_RANGE.
+     * the counts and the failures of the halves are merged into the task that split them.
+     */
+    @SuppressWarnings("serial") // a ForkJoinTask is Serializable, but this one is never serialized
+    private class verifyTask extends RecursiveTask<verifyTask>{
+        private final int from;
+        private final int to;
+        private long living = 0;
+        private long edgeCells = 0;
+        private long halfEdges = 0;
+        private final List<String> failures = new ArrayList<>();
+        // the amount of failures that weren't described, beyond VERIFY_FAILURES_LIMIT
+        private long dropped = 0;
+
+        private verifyTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected verifyTask compute() {
+            if (to - from > VERIFY_RANGE) {
+                int middle = (from + to) >>> 1;
+                verifyTask left = new verifyTask(from, middle);
+                verifyTask right = new verifyTask(middle, to);
+                left.fork();
+                right.compute();
+                left.join();
+                for (verifyTask half : new verifyTask[]{left, right}) {
+                    living += half.living;
+                    edgeCells += half.edgeCells;
+                    halfEdges += half.halfEdges;
+                    dropped += half.dropped;
+                    for (String failure : half.failures) {
+                        fail(failure);
+                    }
+                }
+                return this;
+            }
+            for (int slot = from; slot < to; slot++) {
+                checkNode(nodesBySlot[slot]);
+            }
+            return this;
+        }
+
+        private void fail(String failure) {
+            if (failures.size() < VERIFY_FAILURES_LIMIT) {
+                failures.add(failure);
+            } else {
+                dropped++;
+            }
+        }
+
+        /**
+         * checks the indices, the neighborhood weight and the Neighbors list of a single node.
+         * <p>
+         * Time Complexity: O(1 + the amount of cells in the node's Neighbors list), apart from checkCell
+         * </p>
+         */
+        private void checkNode(Node node) {
+            if (node.deleted) {
+                if (nodesHash != null && nodesHash.get(node.getId()) == node) {
+                    fail("the deleted node " + node.getId() + " is still in the hash map");
+                }
+                if (longIds != null && longIds.get(node.longId) == node.slot) {
+                    fail("the deleted node " + node.longId + " is still in the index of the 64-bit ids");
+                }
+                return;
+            }
+            living++;
+            if (nodesHash != null && (node.getHashForm() == null || node.getHashForm().getValue() != node || nodesHash.get(node.getId()) != node)) {
+                fail("the id of node " + node.getId() + " doesn't lead to it in the hash map");
+            }
+            if (longIds != null && longIds.get(node.longId) != node.slot) {
+                fail("the 64-bit id of node " + node.longId + " doesn't lead to its slot " + node.slot);
+            }
+            queueCell<Node> heapForm = node.getHeapForm();
+            if (heapForm == null || heapForm.getValue() != node || heapForm.getKey() != node.getVicinityWeight()) {
+                fail("the heap form of node " + node.getLongId() + " doesn't hold it with its neighborhood weight " + node.getVicinityWeight());
+            } else {
+                String failure = nodesHeap.checkCell(heapForm);
+                if (failure != null) {
+                    fail("node " + node.getLongId() + ": " + failure);
+                }
+            }
+
+            long vicinity = node.getWeight();
+            int stale = 0;
+            DoublyLinkedList<Node>.DoublyLinkedCell currCell = node.Neighbors.head;
+            int cellsCount = node.Neighbors.length();
+            for (int i = 0; i < cellsCount; i++) {
+                Node neighbor = currCell.getItem();
+                DoublyLinkedList<Node>.DoublyLinkedCell parallel = currCell.getParallel();
+                if (parallel == null) { // a half-edge, whose other end is a node of another shard
+                    halfEdges++;
+                    vicinity += neighbor.getWeight();
+                } else if (neighbor.deleted) { // a leftover of a lazy deletion
+                    stale++;
+                } else {
+                    edgeCells++;
+                    vicinity += neighbor.getWeight();
+                    if (parallel.getParallel() != currCell || parallel.getItem() != node || parallel.getRepresentativeList() != neighbor.Neighbors) {
+                        fail("the edge between nodes " + node.getLongId() + " and " + neighbor.getLongId() + " has no matching cell in the Neighbors of " + neighbor.getLongId());
+                    }
+                }
+                currCell = currCell.next;
+            }
+            if (vicinity != node.getVicinityWeight()) {
+                fail("node " + node.getLongId() + " has the neighborhood weight " + node.getVicinityWeight() + ", but its weight and its Neighbors' sum up to " + vicinity);
+            }
+            if (stale != node.staleNeighbors) {
+                fail("node " + node.getLongId() + " counts " + node.staleNeighbors + " stale Neighbors, but its list holds " + stale);
+            }
+        }
+    }
+
+
+    /**
+     * this method recomputes the state of the graph that is derived from its nodes and their Neighbors lists, for when it is found to be corrupt or out of date
+     * (see verify): the neighborhood weight of every node (its weight plus the weights of its living Neighbors and of its half-edges), its amount of stale
+     * Neighbors, and the amounts of edges and half-edges of the graph. the nodes are recomputed in parallel, in ranges of slots on the common ForkJoinPool,
+     * and each changed neighborhood weight is written straight into the node's heap cell. then nodesHeap is rebuilt bottom-up in O(n) (see
+     * priorityQueue.rebuild), and the indices that are enabled - the rank index and the 2-hop index - are rebuilt from scratch.
+     * the changed nodes are reported to the change feed and written to the snapshot columns, and the max listeners are told about the new maximum.
+     * <p>
+     * Time Complexity: O(n + m) work, spread over the threads of the pool, plus O(n log n) for each enabled index
+     * </p>
+     * @pre the graph isn't modified or read by other threads during the rebuild
+     * @return the amount of nodes whose neighborhood weight was changed
+     */
+    public int rebuildDerivedState() {
+        int[] previousWeights = new int[nodesBySlot.length];
+        rebuildTask task = ForkJoinPool.commonPool().invoke(new rebuildTask(previousWeights, 0, nodesBySlot.length));
+        edgesCount = (int) (task.edgeCells / 2);
+        halfEdgesCount = (int) task.halfEdges;
+
+        int changed = 0;
+        for (Node node : nodesBySlot) {
+            if (node.deleted) {
+                continue;
+            }
+            if (node.staleNeighbors > 0) {
+                enqueueForCompaction(node);
+            }
+            if (node.getVicinityWeight() != previousWeights[node.slot]) {
+                changed++;
+                if (changes != null) {
+                    changes.record(node, node.getVicinityWeight());
+                }
+            }
+            if (vicinityColumn != null) {
+                vicinityColumn.set(node.slot, node.getVicinityWeight());
+                degreeColumn.set(node.slot, node.getNeighborsAmount());
+            }
+        }
+        nodesHeap.rebuild();
+        if (rankIndex != null) {
+            rankIndex = null;
+            enableRankIndex();
+        }
+        if (twoHopHeap != null) {
+            disableTwoHopIndex();
+            enableTwoHopIndex();
+        }
+        afterMutation();
+        return changed;
+    }
+
+
+    /**
+     * recomputes the nodes of the slots [from, to) (see rebuildDerivedState), splitting the range in halves while it is longer than VERIFY_RANGE.
+     * every node is written only by the task of its slot, and the results are read only after the tasks were joined.
+     */
+    @SuppressWarnings("serial") // a ForkJoinTask is Serializable, but this one is never serialized
+    private class rebuildTask extends RecursiveTask<rebuildTask>{
+        // the neighborhood weight that every node had before it was recomputed, by slot
+        private final int[] previousWeights;
+        private final int from;
+        private final int to;
+        private long edgeCells = 0;
+        private long halfEdges = 0;
+
+        private rebuildTask(int[] previousWeights, int from, int to) {
+            this.previousWeights = previousWeights;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected rebuildTask compute() {
+            if (to - from > VERIFY_RANGE) {
+                int middle = (from + to) >>> 1;
+                rebuildTask left = new rebuildTask(previousWeights, from, middle);
+                rebuildTask right = new rebuildTask(previousWeights, middle, to);
+                left.fork();
+                right.compute();
+                left.join();
+                edgeCells = left.edgeCells + right.edgeCells;
+                halfEdges = left.halfEdges + right.halfEdges;
+                return this;
+            }
+            for (int slot = from; slot < to; slot++) {
+                Node node = nodesBySlot[slot];
+                if (node.deleted) {
+                    continue;
+                }
+                int vicinity = node.getWeight();
+                int stale = 0;
+                DoublyLinkedList<Node>.DoublyLinkedCell currCell = node.Neighbors.head;
+                int cellsCount = node.Neighbors.length();
+                for (int i = 0; i < cellsCount; i++) {
+                    Node neighbor = currCell.getItem();
+                    if (currCell.getParallel() == null) { // a half-edge, whose other end is a node of another shard
+                        halfEdges++;
+                        vicinity += neighbor.getWeight();
+                    } else if (neighbor.deleted) { // a leftover of a lazy deletion
+                        stale++;
+                    } else {
+                        edgeCells++;
+                        vicinity += neighbor.getWeight();
+                    }
+                    currCell = currCell.next;
+                }
+                previousWeights[slot] = node.getVicinityWeight();
+                node.vicinityWeight = vicinity;
+                node.getHeapForm().setKey(vicinity);
+                node.staleNeighbors = stale;
+            }
+            return this;
+        }
+    }
+
+
+    /**
+     * this method estimates the amount of bytes that the graph holds, by the parts of its representation (see memoryStats). the estimate counts the objects
+     * and the arrays of the graph by their shallow sizes in the layout of a 64-bit JVM with compressed references (a 12 byte header, 4 byte references,
+     * 8 byte alignment), taking the sizes of the fields of every class by reflection - so it follows the classes as they change, and it is what the JVM
+     * actually allocates up to its padding choices. the Neighbors lists of deleted nodes, and the cells of dead nodes that the compactor didn't remove yet,
+     * are counted too, since the graph still holds them.
+     * <p>
+     * Time Complexity: O(n + d), while d is the amount of distinct neighborhood weights (the nodes of the rank index, when it is enabled)
+     * </p>
+     * @return the estimate
+     */
+    public memoryStats memoryStats() {
+        long idIndex;
+        if (longIds == null) {
+            idIndex = objectBytes(hashMap.class) + arrayBytes(nodesHash.table.length, REFERENCE_BYTES) + (long) nodesHash.size * HASH_CELL_BYTES;
+        } else {
+            idIndex = objectBytes(longIndex.class) + arrayBytes(longIds.keys.length, 8) + arrayBytes(longIds.slots.length, 4);
+        }
+        if (snapshotIndex != null) {
+            idIndex += objectBytes(slotIndex.class) + arrayBytes(snapshotIndex.keys.length, 4) + arrayBytes(snapshotIndex.slots.length, 4)
+                    + arrayBytes(snapshotIndex.ids.length, 4);
+        }
+
+        long heap = objectBytes(nodesHeap.getClass()) + nodesHeap.memoryBytes();
+
+        long cells = 0;
+        for (Node node : nodesBySlot) {
+            cells += node.Neighbors.length();
+        }
+        long adjacency = nodesBySlot.length * objectBytes(DoublyLinkedList.class) + cells * CELL_BYTES;
+        if (expiry != null) {
+            adjacency += EXPIRY_WHEEL_BYTES + expiry.size * EXPIRING_EDGE_BYTES;
+        }
+
+        long nodes = arrayBytes(nodesBySlot.length, REFERENCE_BYTES) + nodesBySlot.length * objectBytes(Node.class);
+
+        long indices = compactionQueue.length() * CELL_BYTES;
+        if (twoHopHeap != null) {
+            indices += objectBytes(twoHopHeap.getClass()) + twoHopHeap.memoryBytes() + objectBytes(pairCounter.class)
+                    + arrayBytes(twoHopPairs.keys.length, 8) + arrayBytes(twoHopPairs.counts.length, 4);
+        }
+        if (rankIndex != null) {
+            indices += objectBytes(orderStatisticTree.class) + rankIndex.nodesAmount() * objectBytes(orderStatisticTree.treeNode.class);
+        }
+        if (changes != null) {
+            indices += objectBytes(changeFeed.class) + 2 * arrayBytes(changes.ids.length, 4) + arrayBytes(changes.nodes.length, REFERENCE_BYTES);
+        }
+        if (vicinityColumn != null) { // the pages that open snapshots still share with the graph are counted once, as pages of the graph
+            for (pagedColumn column : new pagedColumn[]{vicinityColumn, degreeColumn}) {
+                indices += objectBytes(pagedColumn.class) + arrayBytes(column.pages.length, REFERENCE_BYTES) + arrayBytes(column.shared.length, 1)
+                        + column.pages.length * arrayBytes(pagedColumn.PAGE_SIZE, 4);
+            }
+        }
+        if (expiryTouched != null) {
+            indices += arrayBytes(expiryTouched.length, REFERENCE_BYTES) + arrayBytes(expiryDeltas.length, 4);
+        }
+        return new memoryStats(idIndex, heap, adjacency, nodes, indices, memoryBudget, memoryBudget == NO_MEMORY_BUDGET ? 0 : estimatedBytes, rejectedEdges);
+    }
+
+
+    /**
+     * this method sets the memory budget of the graph: the amount of bytes (by the estimate of memoryStats) that it may hold. the graph is measured once,
+     * and from then on it keeps a running estimate: the edges, the entries of the timing wheel and the queue of the compactor add their bytes to it as
+     * they're allocated, and subtract them as deleteNode, expireEdges and the compactor free them. an edge that would take the estimate over the budget
+     * makes the graph compact the cells of lazily deleted nodes if there are any. if the edge still doesn't fit, addEdge rejects it and returns 'false',
+     * and counts it in memoryStats().rejectedEdges - instead of letting the graph grow into an OutOfMemoryError. only edges are rejected: they're what the
+     * graph grows by. the nodes are fixed when the graph is created, and the indices (the 2-hop index, the rank index, the snapshot columns and the change
+     * feed) are counted but never rejected. the running estimate doesn't follow the indices, so before rejecting an edge the graph measures itself
+     * again - at most once per n modifications.
+     * <p>
+     * Time Complexity: O(n) to measure the graph. afterwards, the budget costs addEdge O(1) amortized: O(1), plus O(n) once per n modifications of the graph
+     * at most, when an edge reaches the budget
+     * </p>
+     * @param bytes - the budget, or NO_MEMORY_BUDGET to have none (the default)
+     */
+    public void setMemoryBudget(long bytes) {
+        memoryBudget = bytes;
+        estimatedBytes = bytes == NO_MEMORY_BUDGET ? 0 : memoryStats().totalBytes();
+        measuredAtModCount = modCount;
+    }
+
+
+    /**
+     * @return the memory budget of the graph (see setMemoryBudget), or NO_MEMORY_BUDGET if it has none
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+
+    /**
+     * this method reserves the given amount of bytes from the memory budget for a new edge. while the estimate is below the budget, the bytes are
+     * just added to it. otherwise the graph is compacted, if there are cells of lazily deleted nodes to free, and measured again if it went through
+     * at least n modifications since it was last measured (to catch up with the indices, which the running estimate doesn't follow). an edge that
+     * still doesn't fit is rejected.
+     * <p>
+     * Time Complexity: O(1) amortized: O(n) when the graph is compacted or measured, which happens at most once per n modifications each
+     * </p>
+     * @return 'true' if the bytes were reserved, 'false' if the edge has to be rejected
+     */
+    private boolean reserveMemory(long bytes) {
+        if (estimatedBytes + bytes > memoryBudget) {
+            if (!compactionQueue.isEmpty()) {
+                compact();
+            }
+            if (estimatedBytes + bytes > memoryBudget && modCount - measuredAtModCount >= nodesBySlot.length) {
+                estimatedBytes = memoryStats().totalBytes();
+                measuredAtModCount = modCount;
+            }
+            if (estimatedBytes + bytes > memoryBudget) {
+                rejectedEdges++;
+                return false;
+            }
+        }
+        estimatedBytes += bytes;
+        return true;
+    }
+
+
+    /**
+     * this method adds the given amount of bytes to the running estimate of the memory budget (see setMemoryBudget): a positive amount for memory that
+     * was allocated without reserveMemory, and a negative amount for memory that was freed.
+     * <p>
+     * Time Complexity: O(1)
+     * </p>
+     */
+    private void accountMemory(long bytes) {
+        if (memoryBudget != NO_MEMORY_BUDGET) {
+            estimatedBytes += bytes;
+        }
+    }
+
+
+    /**
+     * @return the estimated shallow size of an object of the given class: the header, and the fields of the class and of its superclasses (including
+     * the reference to the enclosing instance of an inner class), aligned to 8 bytes
+     */
+    private static long objectBytes(Class<?> type) {
+        return OBJECT_BYTES.get(type);
+    }
+
+
+    /**
+     * @return the estimated shallow size of an object of the given class, by reflection (see objectBytes)
+     */
+    private static long measureObjectBytes(Class<?> type) {
+        long bytes = OBJECT_HEADER_BYTES;
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (java.lang.reflect.Field field : c.getDeclaredFields()) {
+                if (java.lang.reflect.Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                Class<?> fieldType = field.getType();
+                if (fieldType == long.class || fieldType == double.class) {
+                    bytes += 8;
+                } else if (fieldType == int.class || fieldType == float.class) {
+                    bytes += 4;
+                } else if (fieldType == short.class || fieldType == char.class) {
+                    bytes += 2;
+                } else if (fieldType == byte.class || fieldType == boolean.class) {
+                    bytes += 1;
+                } else {
+                    bytes += REFERENCE_BYTES;
+                }
+            }
+        }
+        return (bytes + 7) & ~7L;
+    }
+
+
+    /**
+     * @return the estimated size of an array of the given length, whose elements take the given amount of bytes, aligned to 8 bytes
+     */
+    private static long arrayBytes(int length, int elementBytes) {
+        return (ARRAY_HEADER_BYTES + (long) length * elementBytes + 7) & ~7L;
+    }
+
+
+    /**
+     * this method adds a half-edge from the given node of this graph to a node of another shard of a shardedGraph: the remote node is added to the Neighbors of
+     * the local one (with no parallel cell - the other half lives in the other shard's graph), and its weight is added to the vicinity weight of the local one.
+     * <p>
+     * Time Complexity: O(log n)
+     * </p>
+     * @pre the local node is in the graph, and there's no half-edge between the two nodes in the graph
+     */
+    private void addHalfEdge(Node local, Node remote) {
+        int previousWeight = local.getVicinityWeight();
+        local.addNeighbor(remote);
+        accountMemory(CELL_BYTES);
+        vicinityChanged(local, previousWeight);
+        halfEdgesCount++;
+        afterMutation();
+    }
+
+
+    /**
+     * this method removes the half-edge from the given node of this graph to the given node of another shard, if there is one.
+     * <p>
+     * Time Complexity: O(deg(local) + log n), since the half-edge is searched for in the Neighbors list of the local node
+     * </p>
+     * @return 'true' if a half-edge was removed, otherwise 'false'
+     */
+    private boolean removeHalfEdge(Node local, Node remote) {
+        DoublyLinkedList<Node>.DoublyLinkedCell currCell = local.Neighbors.head;
+        int cellsCount = local.Neighbors.length();
+        for (int i = 0; i < cellsCount; i++) {
+            if (currCell.getItem() == remote && currCell.getParallel() == null) {
+                local.Neighbors.deleteCell(currCell);
+                accountMemory(-CELL_BYTES);
+                local.UpdateVicinityWeight(-remote.getWeight());
+                vicinityChanged(local, local.getVicinityWeight() + remote.getWeight());
+                halfEdgesCount--;
+                afterMutation();
+                return true;
+            }
+            currCell = currCell.next;
+        }
+        return false;
+    }
+
+
+    /**
+     * this method is used to check if the Graph is empty or not
+     * @return True if the amount of nodes in the Graph (Nodes.length) is 0.
+     */
+    public boolean isEmpty(){
+        return this.nodesHeap.getSize() == 0;
+    }
+
+
+
+    /**
+     * a listener to changes of the node with the maximum neighborhood weight (see addMaxListener).
+     */
+    @FunctionalInterface
+    public interface maxListener{
+        /**
+         * called after a mutation (or a batch of mutations) that changed the root of the graph's heap.
+         * @param previous the node that had the maximum neighborhood weight before, or null if the graph was empty
+         * @param previousWeight the neighborhood weight that the previous node had back then, or -1 if the graph was empty
+         * @param current the node that has the maximum neighborhood weight now, or null if the graph is empty
+         */
+        void maxChanged(Node previous, int previousWeight, Node current);
+    }
+
+
+
+    /**
+     * a consumer of the batches of the change feed (see enableChangeFeed).
+     */
+    @FunctionalInterface
+    public interface changeConsumer{
+        /**
+         * called with a batch of changes. the pair (ids[i], weights[i]) for 0 <= i < count says that the node of id ids[i] now has the neighborhood weight weights[i].
+         * the arrays are reused by the feed once this method returns, so their content must be copied out if it is needed later.
+         */
+        void accept(int[] ids, int[] weights, int count);
+    }
+
+
+
+    /**
+     * the buffer of the change feed: the (id, neighborhood weight) pairs of the current batch, in the order in which the nodes first changed.
+     * each node knows its slot in the current batch (Node.feedSlot), so a repeated change of the same node overwrites its pair in O(1) instead of adding a new one.
+     */
+    private class changeFeed{
+        private final int[] ids;
+        private final int[] weights;
+        // the nodes of the current batch, used to reset their feedSlot when the batch is over
+        private final Node[] nodes;
+        private final changeConsumer consumer;
+        // the amount of pairs in the current batch
+        private int count = 0;
+
+        private changeFeed(int batchCapacity, changeConsumer consumer) {
+            this.ids = new int[batchCapacity];
+            this.weights = new int[batchCapacity];
+            this.nodes = new Node[batchCapacity];
+            this.consumer = consumer;
+        }
+
+        /**
+         * records the new neighborhood weight of the given node, merging it with an earlier change of the node in the current batch.
+         * <p>
+         * Time Complexity: O(1), or O(batchCapacity) + the cost of the consumer when the batch fills up
+         * </p>
+         */
+        private void record(Node node, int weight) {
+            if (node.feedSlot >= 0) { // the node already changed during the current batch
+                weights[node.feedSlot] = weight;
+                return;
+            }
+            if (count == ids.length) { // the batch is full, hand it over first
+                flushChanges();
+            }
+            node.feedSlot = count;
+            nodes[count] = node;
+            ids[count] = node.getId();
+            weights[count] = weight;
+            count++;
+        }
+
+        /**
+         * empties the current batch.
+         * <p>
+         * Time Complexity: O(count)
+         * </p>
+         */
+        private void clear() {
+            for (int i = 0; i < count; i++) {
+                nodes[i].feedSlot = -1;
+                nodes[i] = null;
+            }
+            count = 0;
+        }
+    }
+
+
+
+    /**
+     * a column of int values by node slot, stored in pages of PAGE_SIZE values, which are copied on write while a snapshot may be reading them.
+     * freeze() hands the current table of pages to a snapshot. the first write after it copies the table (the snapshot keeps the old one) and marks every page as
+     * shared, and the first write to a shared page copies the page. while no snapshot is open, the values are written in place.
+     */
+    private class pagedColumn{
+        private static final int PAGE_BITS = 10;
+        private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+        private int[][] pages;
+        // whether each page may be referenced by an open snapshot
+        private boolean[] shared;
+        // whether the table of pages itself was handed to a snapshot
+        private boolean tableShared = false;
+
+        private pagedColumn(int size) {
+            pages = new int[(size + PAGE_SIZE - 1) >> PAGE_BITS][PAGE_SIZE];
+            shared = new boolean[pages.length];
+        }
+
+        /**
+         * writes the value of the given slot, copying the table or the page first if a snapshot might be reading them.
+         * <p>
+         * Time Complexity: O(1), or O(PAGE_SIZE) when the page is copied, or O(N / PAGE_SIZE) when the table is copied
+         * </p>
+         */
+        private void set(int slot, int value) {
+            int page = slot >> PAGE_BITS;
+            if (openSnapshots.get() > 0) {
+                if (tableShared) { // the first write since the last snapshot - the snapshot keeps the old table, and all of the pages are shared with it
+                    pages = pages.clone();
+                    Arrays.fill(shared, true);
+                    tableShared = false;
+                }
+                if (shared[page]) {
+                    pages[page] = pages[page].clone();
+                    shared[page] = false;
+                }
+            }
+            pages[page][slot & (PAGE_SIZE - 1)] = value;
+        }
+
+        /**
+         * hands the current table of pages to a new snapshot.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        private int[][] freeze() {
+            tableShared = true;
+            return pages;
+        }
+    }
+
+
+
+    /**
+     * an immutable open-addressing index from the ids of the nodes to their slots, built once and then shared by all of the snapshots of the graph.
+     */
+    private static class slotIndex{
+        private final int[] keys;
+        private final int[] slots;
+        // the ids of the nodes by slot, for the results of the snapshots
+        private final int[] ids;
+
+        private slotIndex(Node[] nodes) {
+            int capacity = Integer.highestOneBit(Math.max(1, nodes.length) * 2) * 2; // a power of two, at most half full
+            keys = new int[capacity];
+            slots = new int[capacity];
+            Arrays.fill(slots, -1);
+            ids = new int[nodes.length];
+            for (int slot = 0; slot < nodes.length; slot++) {
+                ids[slot] = nodes[slot].getId();
+                int pos = position(ids[slot]);
+                while (slots[pos] >= 0) { // linear probing
+                    pos = (pos + 1) & (capacity - 1);
+                }
+                keys[pos] = ids[slot];
+                slots[pos] = slot;
+            }
+        }
+
+        private int position(int id) {
+            return (id * 0x9E3779B9 >>> 7) & (keys.length - 1);
+        }
+
+        /**
+         * returns the slot of the node of the given id, or -1 if there's no such node.
+         * <p>
+         * Time Complexity: O(1) on average
+         * </p>
+         */
+        private int slotOf(int id) {
+            int pos = position(id);
+            while (slots[pos] >= 0) {
+                if (keys[pos] == id) {
+                    return slots[pos];
+                }
+                pos = (pos + 1) & (keys.length - 1);
+            }
+            return -1;
+        }
+    }
+
+
+
+    /**
+     * an open-addressing index from the 64-bit ids of the nodes to their slots, in primitive arrays: the ids are kept in a long[] and the slots in an int[],
+     * so nothing is boxed. it is sized for all of the nodes of the graph (at most half full) when the graph is created, and never grows - a graph never gets
+     * new nodes. entries are removed with backward shifting (of the entries after the removed one in its probe run), so no tombstones are left behind.
+     */
+    private static class longIndex{
+        private final long[] keys;
+        private final int[] slots;
+        private int size = 0;
+
+        private longIndex(int capacity) {
+            int length = Integer.highestOneBit(Math.max(1, capacity) * 2) * 2; // a power of two, at most half full
+            keys = new long[length];
+            slots = new int[length];
+            Arrays.fill(slots, -1);
+        }
+
+        private int position(long id) {
+            long hash = id * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & (keys.length - 1);
+        }
+
+        /**
+         * adds the given id with its slot.
+         * <p>
+         * Time Complexity: O(1) on average
+         * </p>
+         * @throws IllegalArgumentException if the id is already in the index
+         */
+        private void put(long id, int slot) {
+            int pos = position(id);
+            while (slots[pos] >= 0) { // linear probing
+                if (keys[pos] == id) {
+                    throw new IllegalArgumentException("the id " + id + " belongs to more than a single node");
+                }
+                pos = (pos + 1) & (keys.length - 1);
+            }
+            keys[pos] = id;
+            slots[pos] = slot;
+            size++;
+        }
+
+        /**
+         * returns the slot of the given id, or -1 if it isn't in the index.
+         * <p>
+         * Time Complexity: O(1) on average
+         * </p>
+         */
+        private int get(long id) {
+            int pos = position(id);
+            while (slots[pos] >= 0) {
+                if (keys[pos] == id) {
+                    return slots[pos];
+                }
+                pos = (pos + 1) & (keys.length - 1);
+            }
+            return -1;
+        }
+
+        /**
+         * removes the given id, and shifts back every following entry of the probe run that may no longer be reachable from its home position.
+         * <p>
+         * Time Complexity: O(1) on average
+         * </p>
+         */
+        private void remove(long id) {
+            int mask = keys.length - 1;
+            int pos = position(id);
+            while (slots[pos] >= 0 && keys[pos] != id) {
+                pos = (pos + 1) & mask;
+            }
+            if (slots[pos] < 0) { // the id isn't in the index
+                return;
+            }
+            size--;
+            int hole = pos;
+            for (int next = (hole + 1) & mask; slots[next] >= 0; next = (next + 1) & mask) {
+                int home = position(keys[next]);
+                // the entry at next can fill the hole only if its home isn't cyclically within (hole, next]
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    slots[hole] = slots[next];
+                    hole = next;
+                }
+            }
+            slots[hole] = -1;
+        }
+    }
+
+
+
+    /**
+     * an open-addressing hash table from pairs of nodes (see twoHopPair) to positive counts, for the 2-hop index. a count that drops to 0 removes its pair, so
+     * a count of 0 marks an empty position. the table doubles whenever it gets half full.
+     */
+    private static class pairCounter{
+        private long[] keys;
+        private int[] counts;
+        private int size = 0;
+
+        private pairCounter(int capacity) {
+            int length = Integer.highestOneBit(Math.max(1, capacity) * 2) * 2; // a power of two, at most half full
+            keys = new long[length];
+            counts = new int[length];
+        }
+
+        private int position(long pair) {
+            long hash = pair * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & (keys.length - 1);
+        }
+
+        /**
+         * adds the given amount to the count of the given pair, and removes the pair if its count drops to 0.
+         * <p>
+         * Time Complexity: O(1) on average, amortized over the growths of the table
+         * </p>
+         * @pre the count of the pair doesn't drop below 0
+         * @return the count of the pair before the addition (0 if it wasn't in the table)
+         */
+        private int add(long pair, int amount) {
+            int pos = position(pair);
+            while (counts[pos] > 0) { // linear probing
+                if (keys[pos] == pair) {
+                    int previous = counts[pos];
+                    if (previous + amount == 0) {
+                        remove(pair);
+                    } else {
+                        counts[pos] = previous + amount;
+                    }
+                    return previous;
+                }
+                pos = (pos + 1) & (keys.length - 1);
+            }
+            keys[pos] = pair;
+            counts[pos] = amount;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return 0;
+        }
+
+        /**
+         * removes the given pair, and shifts back every following entry of the probe run that may no longer be reachable from its home position.
+         * <p>
+         * Time Complexity: O(1) on average
+         * </p>
+         * @return the count the pair had, or 0 if it wasn't in the table
+         */
+        private int remove(long pair) {
+            int mask = keys.length - 1;
+            int pos = position(pair);
+            while (counts[pos] > 0 && keys[pos] != pair) {
+                pos = (pos + 1) & mask;
+            }
+            int count = counts[pos];
+            if (count == 0) { // the pair isn't in the table
+                return 0;
+            }
+            size--;
+            int hole = pos;
+            for (int next = (hole + 1) & mask; counts[next] > 0; next = (next + 1) & mask) {
+                int home = position(keys[next]);
+                // the entry at next can fill the hole only if its home isn't cyclically within (hole, next]
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    counts[hole] = counts[next];
+                    hole = next;
+                }
+            }
+            counts[hole] = 0;
+            return count;
+        }
+
+        /**
+         * doubles the table, and puts every pair in its position in the new table.
+         * <p>
+         * Time Complexity: O(the length of the table)
+         * </p>
+         */
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[oldCounts.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] > 0) {
+                    int pos = position(oldKeys[i]);
+                    while (counts[pos] > 0) {
+                        pos = (pos + 1) & (keys.length - 1);
+                    }
+                    keys[pos] = oldKeys[i];
+                    counts[pos] = oldCounts[i];
+                }
+            }
+        }
+    }
+
+
+
+    /**
+     * bulk kernels over columns of primitive per-node values (like the pages of a snapshot, or the arrays of a CSR adjacency), each working on the range
+     * [from, to) of its arrays. the loops are plain counted loops over int arrays without calls or early exits, with the conditions folded into
+     * conditional expressions, so the JIT can unroll them and (for the reductions) vectorize them.
+     * a `mask` is a column of the amounts of Neighbors, where a negative value marks a deleted node, which the kernels skip.
+     * the scans (all but vicinityFromCSR) run on the kernels of the Vector API instead when they can be loaded: the class vectorKernels, of the directory
+     * Graph_adamtuby_michaelovits_Vector, compiled and run with --add-modules jdk.incubator.vector (see there). without that class or that module the loops
+     * below are used, with the same results.
+     */
+    public static final class bulkKernels{
+        // the kernels of the Vector API, or null when they can't be loaded (see loadVectorKernels)
+        private static final kernelSet VECTOR = loadVectorKernels();
+
+        private bulkKernels() {
+        }
+
+        /**
+         * the scans that an implementation of the kernels on the Vector API provides, with the same contracts as the methods of bulkKernels.
+         */
+        public interface kernelSet{
+            long sumNonNegative(int[] values, int from, int to);
+
+            int maxMasked(int[] values, int[] mask, int from, int to);
+
+            int indexOfMasked(int[] values, int[] mask, int value, int from, int to);
+
+            int countAtLeast(int[] values, int[] mask, int threshold, int from, int to);
+        }
+
+        /**
+         * loads the class vectorKernels by its name, so that this class compiles and runs without the jdk.incubator.vector module. the class is missing
+         * if it wasn't compiled (it needs the module to compile), and it fails to link if the module wasn't added to the running JVM.
+         * @return the kernels of the Vector API, or null if they can't be loaded
+         */
+        private static kernelSet loadVectorKernels() {
+            try {
+                return (kernelSet) Class.forName("vectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return true if the scans run on the kernels of the Vector API, false if they run on the loops of this class
+         */
+        public static boolean isVectorized() {
+            return VECTOR != null;
+        }
+
+        /**
+         * <p>
+         * Time Complexity: O(to - from)
+         * </p>
+         * @return the sum of the non-negative values in the range - for a column of amounts of Neighbors, the sum of the degrees of the living nodes
+         */
+        public static long sumNonNegative(int[] values, int from, int to) {
+            if (VECTOR != null) {
+                return VECTOR.sumNonNegative(values, from, to);
+            }
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += Math.max(values[i], 0);
+            }
+            return sum;
+        }
+
+        /**
+         * <p>
+         * Time Complexity: O(to - from)
+         * </p>
+         * @return the largest value in the range among the nodes that the mask doesn't mark as deleted, or Integer.MIN_VALUE if there is none
+         */
+        public static int maxMasked(int[] values, int[] mask, int from, int to) {
+            if (VECTOR != null) {
+                return VECTOR.maxMasked(values, mask, from, to);
+            }
+            int max = Integer.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                max = Math.max(max, mask[i] >= 0 ? values[i] : Integer.MIN_VALUE);
+            }
+            return max;
+        }
+
+        /**
+         * the second pass of an argmax, after maxMasked found the maximal value.
+         * <p>
+         * Time Complexity: O(to - from)
+         * </p>
+         * @return the first index in the range of the given value, among the nodes that the mask doesn't mark as deleted, or -1 if there is none
+         */
+        public static int indexOfMasked(int[] values, int[] mask, int value, int from, int to) {
+            if (VECTOR != null) {
+                return VECTOR.indexOfMasked(values, mask, value, from, to);
+            }
+            for (int i = from; i < to; i++) {
+                if (values[i] == value && mask[i] >= 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * <p>
+         * Time Complexity: O(to - from)
+         * </p>
+         * @return the amount of values in the range that are at least 'threshold', among the nodes that the mask doesn't mark as deleted
+         */
+        public static int countAtLeast(int[] values, int[] mask, int threshold, int from, int to) {
+            if (VECTOR != null) {
+                return VECTOR.countAtLeast(values, mask, threshold, from, to);
+            }
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                count += values[i] >= threshold & mask[i] >= 0 ? 1 : 0;
+            }
+            return count;
+        }
+
+        /**
+         * computes the neighborhood weights of the nodes [from, to) of a graph in CSR form: the Neighbors of the node u are targets[offsets[u]..offsets[u+1]),
+         * so the neighborhood weight of u is weights[u] plus the weights of those targets.
+         * <p>
+         * Time Complexity: O(to - from + the amount of their Neighbors)
+         * </p>
+         * @param out - the array that the neighborhood weight of every node u in the range is written to, at out[u]
+         */
+        public static void vicinityFromCSR(int[] weights, int[] offsets, int[] targets, int[] out, int from, int to) {
+            for (int u = from; u < to; u++) {
+                int sum = weights[u];
+                int end = offsets[u + 1];
+                for (int k = offsets[u]; k < end; k++) {
+                    sum += weights[targets[k]];
+                }
+                out[u] = sum;
+            }
+        }
+    }
+
+
+
+    /**
+     * a read-only, point-in-time view of a graph (see Graph.snapshot). the view holds the neighborhood weight and the amount of Neighbors of every node,
+     * and the amounts of nodes and edges, as they were when the snapshot was taken. it never changes, and never blocks the graph.
+     */
+    public class graphSnapshot implements AutoCloseable{
+        private int[][] vicinityPages;
+        private int[][] degreePages;
+        private final int numNodes;
+        private final int numEdges;
+        private boolean closed = false;
+
+        private graphSnapshot(int[][] vicinityPages, int[][] degreePages, int numNodes, int numEdges) {
+            this.vicinityPages = vicinityPages;
+            this.degreePages = degreePages;
+            this.numNodes = numNodes;
+            this.numEdges = numEdges;
+        }
+
+        /**
+         * returns the value of the given slot in the given pages.
+         */
+        private int read(int[][] pages, int slot) {
+            checkOpen();
+            return pages[slot >> pagedColumn.PAGE_BITS][slot & (pagedColumn.PAGE_SIZE - 1)];
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("the snapshot was closed");
+            }
+        }
+
+        /**
+         * @return the amount of slots of the given page that belong to nodes (the last page may be only partially used)
+         */
+        private int pageLength(int page) {
+            return Math.min(pagedColumn.PAGE_SIZE, snapshotIndex.ids.length - (page << pagedColumn.PAGE_BITS));
+        }
+
+        /**
+         * given a node id, this method returns the neighborhood weight that the node had when the snapshot was taken.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the neighborhood weight of the node of id 'node_id' if such a node existed in the graph. Otherwise, the function returns -1.
+         */
+        public int getNeighborhoodWeight(int node_id) {
+            int slot = snapshotIndex.slotOf(node_id);
+            if (slot < 0 || read(degreePages, slot) < 0) { // there's no such node, or it was already deleted
+                return -1;
+            }
+            return read(vicinityPages, slot);
+        }
+
+        /**
+         * given a node id, this method returns the amount of Neighbors that the node had when the snapshot was taken.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the amount of Neighbors of the node of id 'node_id' if such a node existed in the graph. Otherwise, the function returns -1.
+         */
+        public int getNeighborsAmount(int node_id) {
+            int slot = snapshotIndex.slotOf(node_id);
+            return slot < 0 ? -1 : read(degreePages, slot);
+        }
+
+        /**
+         * this method returns the id of the node that had the maximum neighborhood weight when the snapshot was taken, by scanning the pages of the snapshot
+         * with the bulk kernels: the maximal weight is found page by page, and then the first node that has it.
+         * <p>
+         * Time Complexity: O(N)
+         * </p>
+         * @return the id of that node, or -1 if the graph was empty (note that -1 may be the id of a node as well, so check getNumNodes first)
+         */
+        public int maxNeighborhoodWeight() {
+            checkOpen();
+            int max = Integer.MIN_VALUE;
+            int maxPage = -1;
+            for (int page = 0; page < vicinityPages.length; page++) {
+                int pageMax = bulkKernels.maxMasked(vicinityPages[page], degreePages[page], 0, pageLength(page));
+                if (pageMax > max) {
+                    max = pageMax;
+                    maxPage = page;
+                }
+            }
+            if (maxPage < 0) { // no node was alive (no neighborhood weight is as low as Integer.MIN_VALUE)
+                return -1;
+            }
+            int index = bulkKernels.indexOfMasked(vicinityPages[maxPage], degreePages[maxPage], max, 0, pageLength(maxPage));
+            return snapshotIndex.ids[(maxPage << pagedColumn.PAGE_BITS) + index];
+        }
+
+        /**
+         * this method counts the nodes whose neighborhood weight was at least 'threshold' when the snapshot was taken, with the bulk kernels.
+         * <p>
+         * Time Complexity: O(N)
+         * </p>
+         * @return the amount of such nodes
+         */
+        public int countNodesAbove(int threshold) {
+            checkOpen();
+            int count = 0;
+            for (int page = 0; page < vicinityPages.length; page++) {
+                count += bulkKernels.countAtLeast(vicinityPages[page], degreePages[page], threshold, 0, pageLength(page));
+            }
+            return count;
+        }
+
+        /**
+         * this method sums the amounts of Neighbors of the nodes when the snapshot was taken, with the bulk kernels. every edge is counted by both of its ends,
+         * so the sum is twice the amount of edges (plus the half-edges, for a shard of a shardedGraph).
+         * <p>
+         * Time Complexity: O(N)
+         * </p>
+         * @return the sum of the degrees of the nodes
+         */
+        public long sumOfDegrees() {
+            checkOpen();
+            long sum = 0;
+            for (int page = 0; page < degreePages.length; page++) {
+                sum += bulkKernels.sumNonNegative(degreePages[page], 0, pageLength(page));
+            }
+            return sum;
+        }
+
+        /**
+         * @return the amount of nodes that the graph had when the snapshot was taken
+         */
+        public int getNumNodes() {
+            return numNodes;
+        }
+
+        /**
+         * @return the amount of edges that the graph had when the snapshot was taken
+         */
+        public int getNumEdges() {
+            return numEdges;
+        }
+
+        /**
+         * this method closes the snapshot and drops its pages, so the ones that the graph has already replaced can be reclaimed.
+         * closing a snapshot more than once does nothing. the snapshot can't be read once it is closed.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                vicinityPages = null;
+                degreePages = null;
+                openSnapshots.decrementAndGet();
+            }
+        }
+    }
+
+
+
+    /**
+     * a fork of a graph (see Graph.fork): a graph whose nodes and edges start out as the ones of its parent graph, and which can be modified without affecting it.
+     * the fork keeps a forkEntry for every node it touched - the node's neighborhood weight and amount of Neighbors in the fork, whether the fork deleted it,
+     * and the edges that the fork added to it - in a hash map and in a Maximum-Heap of its own. untouched nodes are read from the parent graph.
+     */
+    public class graphFork{
+        // the touched nodes by id
+        private final hashMap<forkEntry> touched = new hashMap<>(16, 0.5f);
+        // the Maximum-Heap of the touched nodes that weren't deleted, by their neighborhood weight in the fork
+        private final maxHeap<forkEntry> touchedHeap = new maxHeap<>(16);
+        // the differences between the amounts of nodes and edges of the fork and the ones of the parent graph
+        private int nodesDelta = 0;
+        private int edgesDelta = 0;
+        // the modCount of the parent graph when the fork was created
+        private final int expectedModCount = modCount;
+
+        private graphFork() {
+        }
+
+        /**
+         * adds an edge between the two nodes whose ids are specified, in the fork only. If one of these nodes is not in the fork, or if they're the same node,
+         * the function does nothing.
+         * <p>
+         * Time Complexity: O(log k), while k is the amount of nodes that the fork touched
+         * </p>
+         * @pre if the two nodes are in the fork, there exists no edge between them prior to the call
+         * @return returns 'true' if the function added an edge, otherwise returns 'false'.
+         */
+        public boolean addEdge(int node1_id, int node2_id) {
+            checkParent();
+            Node node1 = aliveNode(node1_id);
+            Node node2 = aliveNode(node2_id);
+            if (node1 == null || node2 == null || node1 == node2) {
+                return false;
+            }
+            forkEntry entry1 = touch(node1);
+            forkEntry entry2 = touch(node2);
+            if (entry1.added == null) {
+                entry1.added = new DoublyLinkedList<>();
+            }
+            if (entry2.added == null) {
+                entry2.added = new DoublyLinkedList<>();
+            }
+            entry1.added.addItem(node2);
+            entry2.added.addItem(node1);
+            entry1.update(node2.getWeight(), 1);
+            entry2.update(node1.getWeight(), 1);
+            edgesDelta++;
+            return true;
+        }
+
+        /**
+         * deletes the node of the given id from the fork, if it is in the fork. the Neighbors of the node in the fork are the Neighbors it has in the parent graph
+         * (apart from the ones the fork deleted) and the ones the fork added to it.
+         * <p>
+         * Time Complexity: O(d log k), while d is the amount of Neighbors of the node in the fork
+         * </p>
+         * @return returns 'true' if the function deleted a node, otherwise returns 'false'
+         */
+        public boolean deleteNode(int node_id) {
+            checkParent();
+            Node node = aliveNode(node_id);
+            if (node == null) {
+                return false;
+            }
+            forkEntry entry = touch(node);
+            entry.deleted = true;
+            touchedHeap.deleteNode(entry.heapForm);
+            nodesDelta--;
+            edgesDelta -= entry.degree;
+
+            // the Neighbors of the node in the parent graph
+            DoublyLinkedList<Node>.DoublyLinkedCell currCell = node.Neighbors.head;
+            int cellsCount = node.Neighbors.length();
+            for (int i = 0; i < cellsCount; i++) {
+                removeNeighbor(currCell.getItem(), node);
+                currCell = currCell.next;
+            }
+
+            // the Neighbors that the fork added to the node
+            if (entry.added != null) {
+                currCell = entry.added.head;
+                cellsCount = entry.added.length();
+                for (int i = 0; i < cellsCount; i++) {
+                    removeNeighbor(currCell.getItem(), node);
+                    currCell = currCell.next;
+                }
+                entry.added = null;
+            }
+            return true;
+        }
+
+        /**
+         * removes the weight of the deleted node from the given Neighbor, unless the Neighbor isn't in the fork.
+         */
+        private void removeNeighbor(Node neighbor, Node deleted) {
+            if (neighbor.deleted) { // a leftover of a lazy deletion in the parent graph
+                return;
+            }
+            forkEntry neighborEntry = touched.get(neighbor.getId());
+            if (neighborEntry != null && neighborEntry.deleted) { // the fork already deleted the Neighbor
+                return;
+            }
+            touch(neighbor).update(-deleted.getWeight(), -1);
+        }
+
+        /**
+         * given a node id, returns the neighborhood weight of that node in the fork.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the neighborhood weight of the node of id 'node_id' if such a node exists in the fork. Otherwise, the function returns -1.
+         */
+        public int getNeighborhoodWeight(int node_id) {
+            checkParent();
+            forkEntry entry = touched.get(node_id);
+            if (entry != null) {
+                return entry.deleted ? -1 : entry.vicinity;
+            }
+            Node node = nodesHash.get(node_id);
+            return node == null ? -1 : node.getVicinityWeight();
+        }
+
+        /**
+         * returns the node with the maximum neighborhood weight in the fork. the returned Node is the one of the parent graph, so its neighborhood weight in the
+         * fork should be read with getNeighborhoodWeight(node.getId()) rather than with node.getVicinityWeight().
+         * the best touched node is the root of the fork's heap. the best untouched node is found by walking the parent's heap from its root (see
+         * priorityQueue.walk), cutting off every subtree whose root holds a key that can't beat the best node found so far - and an untouched node is the best
+         * of its subtree, so only touched nodes are expanded, and on the binary heaps the walk visits O(k) nodes.
+         * <p>
+         * Time Complexity: O(k)
+         * </p>
+         * @return a Node object representing the correct node. If there is no node in the fork, returns 'null'.
+         */
+        public Node maxNeighborhoodWeight() {
+            checkParent();
+            forkMaxWalk walk = new forkMaxWalk();
+            if (touchedHeap.getSize() > 0) {
+                walk.best = touchedHeap.getMax().getValue().node;
+                walk.bestWeight = touchedHeap.getMax().key;
+            }
+            nodesHeap.walk(walk);
+            return walk.best;
+        }
+
+        /**
+         * @return the amount of nodes in the fork
+         */
+        public int getNumNodes() {
+            checkParent();
+            return nodesHeap.getSize() + nodesDelta;
+        }
+
+        /**
+         * @return the amount of edges in the fork
+         */
+        public int getNumEdges() {
+            checkParent();
+            return edgesCount + edgesDelta;
+        }
+
+        /**
+         * returns the node of the given id in the parent graph, if the fork didn't delete it, or null otherwise.
+         */
+        private Node aliveNode(int node_id) {
+            Node node = nodesHash.get(node_id);
+            if (node == null) {
+                return null;
+            }
+            forkEntry entry = touched.get(node_id);
+            return entry != null && entry.deleted ? null : node;
+        }
+
+        /**
+         * returns the forkEntry of the given node, creating it from the node's state in the parent graph when the fork touches the node for the first time.
+         * <p>
+         * Time Complexity: O(log k)
+         * </p>
+         */
+        private forkEntry touch(Node node) {
+            forkEntry entry = touched.get(node.getId());
+            if (entry == null) {
+                entry = new forkEntry(node);
+                entry.heapForm = touchedHeap.addNode(entry, entry.vicinity);
+                touched.addItem(node.getId(), entry);
+            }
+            return entry;
+        }
+
+        /**
+         * makes sure that the parent graph wasn't modified since the fork was created.
+         */
+        private void checkParent() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException("the parent graph was modified after the fork was created");
+            }
+        }
+
+        /**
+         * the state of a single search of maxNeighborhoodWeight for the best untouched node, over the parent's heap.
+         */
+        private class forkMaxWalk implements queueVisitor<Node>{
+            private Node best = null;
+            private int bestWeight;
+
+            @Override
+            public int bound() { // only a node heavier than the best node found so far is of interest
+                return best == null ? Integer.MIN_VALUE : bestWeight == Integer.MAX_VALUE ? bestWeight : bestWeight + 1;
+            }
+
+            @Override
+            public void visit(queueCell<Node> cell) {
+                // an untouched node has the same neighborhood weight in the fork
+                if (touched.get(cell.getValue().getId()) == null && (best == null || cell.key > bestWeight)) {
+                    best = cell.getValue();
+                    bestWeight = cell.key;
+                }
+            }
+        }
+    }
+
+
+
+    /**
+     * the state of a single node that a fork touched.
+     */
+    private static class forkEntry{
+        private final Node node;
+        // the neighborhood weight and the amount of Neighbors of the node in the fork
+        private int vicinity;
+        private int degree;
+        // whether the fork deleted the node
+        private boolean deleted = false;
+        // the Neighbors that the fork added to the node, or null if there are none
+        private DoublyLinkedList<Node> added;
+        private maxHeap<forkEntry>.heapNode<forkEntry> heapForm;
+
+        private forkEntry(Node node) {
+            this.node = node;
+            this.vicinity = node.getVicinityWeight();
+            this.degree = node.getNeighborsAmount();
+        }
+
+        /**
+         * changes the neighborhood weight and the amount of Neighbors of the node in the fork, and fixes its position in the fork's heap.
+         */
+        private void update(int additionalWeight, int additionalNeighbors) {
+            vicinity += additionalWeight;
+            degree += additionalNeighbors;
+            heapForm.changeKey(vicinity);
+        }
+    }
+
+
+
+    /**
+     * writes a trace of a graph (see startRecording). a trace is a header and a sequence of records, all of whose ints are zigzag varints (1 byte for small ids):
+     * <p>
+     * header: [int MAGIC (4 bytes)][byte heap kind][N][N x (id, weight)][m][m x (id1, id2)]
+     * record: [byte op][the arguments of the op: 2 ids for ADD_EDGE, 1 id for DELETE_NODE and GET_NEIGHBORHOOD_WEIGHT, 2 ids and a long time (8 bytes) for
+     * ADD_EXPIRING_EDGE, a long time for EXPIRE_EDGES, none for the others]
+     * the last record is [END][long state checksum (8 bytes)].
+     * </p>
+     */
+    public static class traceRecorder{
+        public static final int MAGIC = 0x47545243; // "GTRC"
+        public static final byte END = 0;
+        public static final byte ADD_EDGE = 1;
+        public static final byte DELETE_NODE = 2;
+        public static final byte GET_NEIGHBORHOOD_WEIGHT = 3;
+        public static final byte MAX_NEIGHBORHOOD_WEIGHT = 4;
+        public static final byte GET_NUM_NODES = 5;
+        public static final byte GET_NUM_EDGES = 6;
+        public static final byte ADD_EXPIRING_EDGE = 7;
+        public static final byte EXPIRE_EDGES = 8;
+        // the longest record: an op, two varints of 5 bytes and a long
+        public static final int MAX_RECORD_SIZE = 19;
+
+        private final WritableByteChannel out;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+        private traceRecorder(WritableByteChannel out) {
+            this.out = out;
+        }
+
+        private void putHeader(heapKind kind, int nodesAmount) {
+            buffer.putInt(MAGIC);
+            buffer.put((byte) kind.ordinal());
+            putInt(nodesAmount);
+        }
+
+        private void record(byte op) {
+            ensureRoom();
+            buffer.put(op);
+        }
+
+        private void record(byte op, int id) {
+            ensureRoom();
+            buffer.put(op);
+            putInt(id);
+        }
+
+        private void record(byte op, int id1, int id2) {
+            ensureRoom();
+            buffer.put(op);
+            putInt(id1);
+            putInt(id2);
+        }
+
+        private void record(byte op, int id1, int id2, long time) {
+            ensureRoom();
+            buffer.put(op);
+            putInt(id1);
+            putInt(id2);
+            buffer.putLong(time);
+        }
+
+        private void record(byte op, long time) {
+            ensureRoom();
+            buffer.put(op);
+            buffer.putLong(time);
+        }
+
+        private void end(long checksum) {
+            ensureRoom();
+            buffer.put(END);
+            buffer.putLong(checksum);
+            flush();
+        }
+
+        /**
+         * writes a zigzag varint: the sign is moved to the lowest bit, and the value is written 7 bits per byte, with the highest bit marking that more follow.
+         */
+        private void putInt(int value) {
+            if (buffer.remaining() < 5) {
+                flush();
+            }
+            int zigzag = (value << 1) ^ (value >> 31);
+            while ((zigzag & ~0x7F) != 0) {
+                buffer.put((byte) (zigzag & 0x7F | 0x80));
+                zigzag >>>= 7;
+            }
+            buffer.put((byte) zigzag);
+        }
+
+        private void ensureRoom() {
+            if (buffer.remaining() < MAX_RECORD_SIZE + 8) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * reads a zigzag varint written by a traceRecorder.
+         * @pre the whole varint is in the buffer
+         */
+        public static int getInt(ByteBuffer in) {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in.get();
+                zigzag |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+
+
+
+    /**
+     * an edge that was added with an expiration time, on the timing wheel of its graph (see addEdge(int, int, long)).
+     */
+    private static final class expiringEdge{
+        // the cell of the edge in the Neighbors list of its first node (which holds the second node). its parallel cell holds the first node
+        private final DoublyLinkedList<Node>.DoublyLinkedCell cell;
+        private final long expiresAt;
+        // the next edge in the same slot of the wheel, or in the same batch of expired edges
+        private expiringEdge next;
+
+        private expiringEdge(DoublyLinkedList<Node>.DoublyLinkedCell cell, long expiresAt) {
+            this.cell = cell;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+
+
+    /**
+     * a hierarchical timing wheel of expiring edges: LEVELS wheels of 64 slots each, where level L covers the times that agree with the current time of the wheel
+     * on every bit above the 6 bits of L, and the slot of a time is its 6 bits of L. so an edge is placed on the level of the highest 6-bit digit in which its
+     * expiration time differs from the current time, in the slot of its own digit there - and every slot holds the edges of a range of times in a linked list.
+     * <p>
+     * the entries of a lower level always expire before the ones of a higher level, and within a level, lower slots expire first. so the next slot to expire
+     * is found from a 64-bit occupancy mask per level in O(LEVELS), however far away in time it is. when the wheel reaches the slot, its entries are either due
+     * (and handed out as a batch) or placed again relative to the start of the slot - on a lower level, since they agree with it on one more digit.
+     * so every entry is moved at most LEVELS times: O(1) amortized per edge. the wheel holds only the entries that weren't handed out, so its memory is bounded
+     * by the amount of edges that are inside the window (plus the fixed arrays of the slots).
+     * </p>
+     */
+    private static final class expiryWheel{
+        private static final int SLOT_BITS = 6;
+        // 11 levels of 6 bits cover all of the 63 bits of a non-negative time
+        private static final int LEVELS = 11;
+        // the lists of the slots, by level * 64 + slot
+        private final expiringEdge[] slots = new expiringEdge[LEVELS << SLOT_BITS];
+        // the non-empty slots of every level, one bit per slot
+        private final long[] occupied = new long[LEVELS];
+        // the entries that were added when their time had already passed
+        private expiringEdge due;
+        // the current time of the wheel: every entry on the slots expires after it
+        private long time = 0;
+        private int size = 0;
+
+        /**
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        private void add(expiringEdge edge) {
+            size++;
+            if (edge.expiresAt <= time) {
+                edge.next = due;
+                due = edge;
+            } else {
+                place(edge);
+            }
+        }
+
+        /**
+         * @pre edge.expiresAt > time
+         */
+        private void place(expiringEdge edge) {
+            int level = (63 - Long.numberOfLeadingZeros(edge.expiresAt ^ time)) / SLOT_BITS;
+            int slot = (int) (edge.expiresAt >>> (level * SLOT_BITS)) & 63;
+            int index = level << SLOT_BITS | slot;
+            edge.next = slots[index];
+            slots[index] = edge;
+            occupied[level] |= 1L << slot;
+        }
+
+        /**
+         * moves the wheel forward to the given time.
+         * <p>
+         * Time Complexity: O(LEVELS) per visited slot, plus O(1) amortized per entry
+         * </p>
+         * @return the entries whose time is at most 'now', linked through their next fields (or null if there are none)
+         */
+        private expiringEdge advance(long now) {
+            expiringEdge batch = due;
+            due = null;
+            while (true) {
+                int level = 0;
+                while (level < LEVELS && occupied[level] == 0) {
+                    level++;
+                }
+                if (level == LEVELS) {
+                    break;
+                }
+                int slot = Long.numberOfTrailingZeros(occupied[level]);
+                int shift = level * SLOT_BITS;
+                long above = shift + SLOT_BITS >= 63 ? 0 : time >>> (shift + SLOT_BITS) << (shift + SLOT_BITS);
+                long start = above | (long) slot << shift; // the earliest time of the slot, which is the earliest time of all of the entries
+                if (start > now) {
+                    break;
+                }
+                time = start;
+                int index = level << SLOT_BITS | slot;
+                expiringEdge edge = slots[index];
+                slots[index] = null;
+                occupied[level] &= ~(1L << slot);
+                while (edge != null) {
+                    expiringEdge next = edge.next;
+                    if (edge.expiresAt <= now) {
+                        edge.next = batch;
+                        batch = edge;
+                    } else {
+                        place(edge);
+                    }
+                    edge = next;
+                }
+            }
+            time = Math.max(time, now);
+            for (expiringEdge edge = batch; edge != null; edge = edge.next) {
+                size--;
+            }
+            return batch;
+        }
+    }
+
+
+
+    /**
+     * the estimated amounts of bytes that a graph holds, by the parts of its representation (see Graph.memoryStats).
+     */
+    public static final class memoryStats{
+        // the hash map from the ids of the nodes to the nodes (its table and its cells), the index of the 64-bit ids, and the slot index of the snapshots
+        public final long idIndexBytes;
+        // the heap of the neighborhood weights: its arrays and its cells
+        public final long heapBytes;
+        // the Neighbors lists of the nodes and their cells (two per edge), and the timing wheel of the expiring edges
+        public final long adjacencyBytes;
+        // the Node objects, and the array of the nodes by slot
+        public final long nodeBytes;
+        // the optional parts: the compaction queue, the 2-hop index, the rank index, the change feed and the columns of the snapshots
+        public final long indexBytes;
+        // the memory budget of the graph, or NO_MEMORY_BUDGET
+        public final long budgetBytes;
+        // the running estimate that the budget is checked against (see setMemoryBudget), or 0 if the graph has no budget
+        public final long estimatedBytes;
+        // the amount of edges that the budget rejected
+        public final int rejectedEdges;
+
+        private memoryStats(long idIndexBytes, long heapBytes, long adjacencyBytes, long nodeBytes, long indexBytes, long budgetBytes, long estimatedBytes,
+                            int rejectedEdges) {
+            this.idIndexBytes = idIndexBytes;
+            this.heapBytes = heapBytes;
+            this.adjacencyBytes = adjacencyBytes;
+            this.nodeBytes = nodeBytes;
+            this.indexBytes = indexBytes;
+            this.budgetBytes = budgetBytes;
+            this.estimatedBytes = estimatedBytes;
+            this.rejectedEdges = rejectedEdges;
+        }
+
+        /**
+         * @return the estimated amount of bytes that the graph holds
+         */
+        public long totalBytes() {
+            return idIndexBytes + heapBytes + adjacencyBytes + nodeBytes + indexBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d bytes: id index %d, heap %d, adjacency %d, nodes %d, indices %d%s", totalBytes(), idIndexBytes, heapBytes, adjacencyBytes,
+                    nodeBytes, indexBytes, budgetBytes == NO_MEMORY_BUDGET ? "" : String.format(" (budget %d, estimated %d, %d edges rejected)", budgetBytes, estimatedBytes, rejectedEdges));
+        }
+    }
+
+
+
+    /**
+     * told by a shard of a shardedGraph about the half-edges that deleteNode removed from it, so the other halves can be removed by the shards that own them.
+     */
+    private interface halfEdgeSink{
+        void halfEdgeRemoved(Node local, Node remote);
+    }
+
+
+
+    /**
+     * an interning dictionary of strings: every string that is interned gets a dense int slot, by which it can be looked up in reverse.
+     * the strings aren't kept as String objects. their UTF-8 bytes are appended to a single byte arena, and the slot of a string holds the offset, the length
+     * and the hash of its bytes in int arrays. the strings are found through an open-addressing table of slots (linear probing, at most half full),
+     * by comparing their bytes with the bytes of the looked up string - which are encoded into a reusable buffer, so a lookup allocates nothing.
+     * so a string of b bytes takes b bytes of the arena, 12 bytes of the arrays of its slot, and 8 bytes of the table on average.
+     * <p>
+     * a removed string frees its slot (for the next interned string) and its entry in the table (by shifting back the entries after it). its bytes stay in the
+     * arena until the garbage in it outgrows the live strings, when the arena is compacted.
+     * </p>
+     */
+    public static class stringDictionary{
+        // the UTF-8 bytes of the strings, and the end of the used part of the arena
+        private byte[] arena;
+        private int arenaEnd = 0;
+        // the amount of bytes in the arena that belong to removed strings
+        private int garbage = 0;
+        // the offset, the length and the hash of the bytes of the string of every slot. the length of a free slot is -1
+        private int[] offsets;
+        private int[] lengths;
+        private int[] hashes;
+        // the slots below nextSlot were handed out at least once. the free ones among them are kept in a stack
+        private int nextSlot = 0;
+        private int[] freeSlots;
+        private int freeCount = 0;
+        // the open-addressing table of the slots, by the hashes of their strings. an empty entry is -1
+        private int[] table;
+        private int size = 0;
+        // the bytes of the string that is being looked up
+        private byte[] scratch = new byte[64];
+        private int scratchLength;
+
+        /**
+         * the constructor of the dictionary
+         * <p>
+         * Time Complexity: O(capacity)
+         * </p>
+         * @param capacity - the amount of strings the dictionary is expected to hold. it grows beyond it when needed
+         */
+        public stringDictionary(int capacity) {
+            capacity = Math.max(1, capacity);
+            arena = new byte[capacity * 16];
+            offsets = new int[capacity];
+            lengths = new int[capacity];
+            hashes = new int[capacity];
+            freeSlots = new int[capacity];
+            table = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+            Arrays.fill(table, -1);
+        }
+
+        /**
+         * returns the slot of the given string, interning the string first if it isn't in the dictionary.
+         * <p>
+         * Time Complexity: O(the length of the string) on average
+         * </p>
+         * @return the slot of the string
+         */
+        public int intern(String key) {
+            int pos = find(key);
+            if (table[pos] >= 0) {
+                return table[pos];
+            }
+            int slot;
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                if (nextSlot == offsets.length) {
+                    int capacity = offsets.length * 2;
+                    offsets = Arrays.copyOf(offsets, capacity);
+                    lengths = Arrays.copyOf(lengths, capacity);
+                    hashes = Arrays.copyOf(hashes, capacity);
+                    freeSlots = Arrays.copyOf(freeSlots, capacity);
+                }
+                slot = nextSlot++;
+            }
+            if (arenaEnd + scratchLength > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaEnd + scratchLength));
+            }
+            System.arraycopy(scratch, 0, arena, arenaEnd, scratchLength);
+            offsets[slot] = arenaEnd;
+            lengths[slot] = scratchLength;
+            hashes[slot] = hash(scratch, 0, scratchLength);
+            arenaEnd += scratchLength;
+            table[pos] = slot;
+            size++;
+            if (size * 2 > table.length) {
+                rehash(table.length * 2);
+            }
+            return slot;
+        }
+
+        /**
+         * <p>
+         * Time Complexity: O(the length of the string) on average
+         * </p>
+         * @return the slot of the given string, or -1 if it isn't in the dictionary
+         */
+        public int slotOf(String key) {
+            return table[find(key)];
+        }
+
+        /**
+         * decodes the string of the given slot from the arena.
+         * <p>
+         * Time Complexity: O(the length of the string)
+         * </p>
+         * @return the string of the slot, or null if the slot is free
+         */
+        public String keyOf(int slot) {
+            if (slot < 0 || slot >= nextSlot || lengths[slot] < 0) {
+                return null;
+            }
+            return new String(arena, offsets[slot], lengths[slot], StandardCharsets.UTF_8);
+        }
+
+        /**
+         * removes the string of the given slot from the dictionary, and frees the slot.
+         * <p>
+         * Time Complexity: O(1) on average, or O(the bytes of the live strings) when the arena is compacted
+         * </p>
+         * @return 'true' if a string was removed, 'false' if the slot was already free
+         */
+        public boolean remove(int slot) {
+            if (slot < 0 || slot >= nextSlot || lengths[slot] < 0) {
+                return false;
+            }
+            int mask = table.length - 1;
+            int hole = hashes[slot] & mask;
+            while (table[hole] != slot) {
+                hole = (hole + 1) & mask;
+            }
+            // shifting back every following entry of the probe run whose home isn't cyclically within (hole, next]
+            for (int next = (hole + 1) & mask; table[next] >= 0; next = (next + 1) & mask) {
+                int home = hashes[table[next]] & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    table[hole] = table[next];
+                    hole = next;
+                }
+            }
+            table[hole] = -1;
+            garbage += lengths[slot];
+            lengths[slot] = -1;
+            freeSlots[freeCount++] = slot;
+            size--;
+            if (garbage > 4096 && garbage > arenaEnd - garbage) {
+                compactArena();
+            }
+            return true;
+        }
+
+        /**
+         * @return the amount of strings in the dictionary
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the amount of bytes held by the arrays of the dictionary
+         */
+        public long memoryBytes() {
+            return arena.length + 4L * (offsets.length + lengths.length + hashes.length + freeSlots.length + table.length) + scratch.length;
+        }
+
+        /**
+         * encodes the string into scratch, and finds its entry in the table: the entry that holds its slot, or the empty entry where it would be added.
+         * <p>
+         * Time Complexity: O(the length of the string) on average
+         * </p>
+         */
+        private int find(String key) {
+            encode(key);
+            int hash = hash(scratch, 0, scratchLength);
+            int mask = table.length - 1;
+            int pos = hash & mask;
+            for (int slot = table[pos]; slot >= 0; slot = table[pos]) {
+                if (hashes[slot] == hash && Arrays.equals(arena, offsets[slot], offsets[slot] + lengths[slot], scratch, 0, scratchLength)) {
+                    return pos;
+                }
+                pos = (pos + 1) & mask;
+            }
+            return pos;
+        }
+
+        /**
+         * encodes the string into scratch as UTF-8, the same way String.getBytes(UTF_8) does (an unpaired surrogate becomes '?'), without allocating.
+         */
+        private void encode(String key) {
+            int length = key.length();
+            if (scratch.length < 3 * length) {
+                scratch = new byte[Math.max(3 * length, 2 * scratch.length)];
+            }
+            byte[] out = scratch;
+            int end = 0;
+            for (int i = 0; i < length; i++) {
+                char c = key.charAt(i);
+                if (c < 0x80) {
+                    out[end++] = (byte) c;
+                } else if (c < 0x800) {
+                    out[end++] = (byte) (0xC0 | (c >> 6));
+                    out[end++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(key.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, key.charAt(++i));
+                    out[end++] = (byte) (0xF0 | (codePoint >> 18));
+                    out[end++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    out[end++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    out[end++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    out[end++] = '?';
+                } else {
+                    out[end++] = (byte) (0xE0 | (c >> 12));
+                    out[end++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    out[end++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            scratchLength = end;
+        }
+
+        /**
+         * FNV-1a over the bytes, with a final mix so the low bits (which pick the entry in the table) depend on all of them.
+         */
+        private static int hash(byte[] bytes, int from, int to) {
+            int hash = 0x811C9DC5;
+            for (int i = from; i < to; i++) {
+                hash = (hash ^ bytes[i]) * 0x01000193;
+            }
+            return hash ^ (hash >>> 15) ^ (hash >>> 23);
+        }
+
+        /**
+         * rebuilds the table with the given length, from the hashes of the slots.
+         * <p>
+         * Time Complexity: O(the amount of slots + length)
+         * </p>
+         */
+        private void rehash(int length) {
+            table = new int[length];
+            Arrays.fill(table, -1);
+            for (int slot = 0; slot < nextSlot; slot++) {
+                if (lengths[slot] >= 0) {
+                    int pos = hashes[slot] & (length - 1);
+                    while (table[pos] >= 0) {
+                        pos = (pos + 1) & (length - 1);
+                    }
+                    table[pos] = slot;
+                }
+            }
+        }
+
+        /**
+         * copies the bytes of the live strings into a new arena, twice as large as they are, and drops the garbage.
+         * <p>
+         * Time Complexity: O(the amount of slots + the bytes of the live strings)
+         * </p>
+         */
+        private void compactArena() {
+            byte[] compacted = new byte[Math.max(16, 2 * (arenaEnd - garbage))];
+            int end = 0;
+            for (int slot = 0; slot < nextSlot; slot++) {
+                if (lengths[slot] >= 0) {
+                    System.arraycopy(arena, offsets[slot], compacted, end, lengths[slot]);
+                    offsets[slot] = end;
+                    end += lengths[slot];
+                }
+            }
+            arena = compacted;
+            arenaEnd = end;
+            garbage = 0;
+        }
+    }
+
+
+
+    /**
+     * a Graph whose nodes are named by string keys: the keys are interned into a stringDictionary, whose dense slots are the ids of the nodes of the graph.
+     * so the graph itself works on dense int ids, the keys take a byte arena instead of String objects, and results are translated back to keys by slot.
+     * the key of a deleted node is removed from the dictionary.
+     */
+    public static class stringKeyedGraph{
+        private final Graph graph;
+        private final stringDictionary keys;
+
+        /**
+         * Initializes the graph on the nodes of the given keys and weights: the i-th node is named keys[i] and weighs weights[i].
+         * The created graph is empty, i.e. it has no edges.
+         * <p>
+         * Complexity: O(N + the lengths of the keys)
+         * </p>
+         * @param keys - the keys of the nodes
+         * @param weights - the weights of the nodes
+         * @param kind - the kind of heap that holds the neighborhood weights of the nodes (see heapKind)
+         * @throws IllegalArgumentException if a key appears more than once
+         */
+        public stringKeyedGraph(String[] keys, int[] weights, heapKind kind) {
+            this.keys = new stringDictionary(keys.length);
+            graph = new Graph(internAll(this.keys, keys, weights), kind);
+        }
+
+        /**
+         * Initializes the graph on the nodes of the given keys and weights, picking the kind of heap like Graph(Node[], int) does.
+         * <p>
+         * Complexity: O(N + the lengths of the keys)
+         * </p>
+         * @param bucketQueueBound - the largest neighborhood weight for which a bucket queue is used. 0 never picks a bucket queue
+         * @throws IllegalArgumentException if a key appears more than once
+         */
+        public stringKeyedGraph(String[] keys, int[] weights, int bucketQueueBound) {
+            this.keys = new stringDictionary(keys.length);
+            graph = new Graph(internAll(this.keys, keys, weights), bucketQueueBound);
+        }
+
+        /**
+         * Initializes the graph on the nodes of the given keys and weights, keeping their neighborhood weights in a Maximum-Heap like Graph(Node[]) does.
+         * <p>
+         * Complexity: O(N + the lengths of the keys)
+         * </p>
+         * @throws IllegalArgumentException if a key appears more than once
+         */
+        public stringKeyedGraph(String[] keys, int[] weights) {
+            this(keys, weights, heapKind.MAX_HEAP);
+        }
+
+        /**
+         * interns the keys into the empty dictionary, and creates the node of every key with its slot as its id.
+         * @return the nodes, the i-th of which is named keys[i] and weighs weights[i]
+         * @throws IllegalArgumentException if a key appears more than once
+         */
+        private static Node[] internAll(stringDictionary dictionary, String[] keys, int[] weights) {
+            Node[] nodes = new Node[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                int slot = dictionary.intern(keys[i]);
+                if (slot != i) {
+                    throw new IllegalArgumentException("the key " + keys[i] + " belongs to more than a single node");
+                }
+                nodes[i] = new Node(slot, weights[i]);
+            }
+            return nodes;
+        }
+
+        /**
+         * adds an edge between the nodes of the given keys (see Graph.addEdge).
+         * <p>
+         * Time Complexity: O(the lengths of the keys + log n)
+         * </p>
+         * @return 'true' if an edge was added, otherwise 'false'
+         */
+        public boolean addEdge(String key1, String key2) {
+            int slot1 = keys.slotOf(key1);
+            int slot2 = keys.slotOf(key2);
+            return slot1 >= 0 && slot2 >= 0 && graph.addEdge(slot1, slot2);
+        }
+
+        /**
+         * deletes the node of the given key (see Graph.deleteNode), and removes the key from the dictionary.
+         * <p>
+         * Time Complexity: O(the length of the key + log n), as well as the deletion of the node's edges
+         * </p>
+         * @return 'true' if a node was deleted, otherwise 'false'
+         */
+        public boolean deleteNode(String key) {
+            int slot = keys.slotOf(key);
+            if (slot < 0 || !graph.deleteNode(slot)) {
+                return false;
+            }
+            keys.remove(slot);
+            return true;
+        }
+
+        /**
+         * <p>
+         * Time Complexity: O(the length of the key)
+         * </p>
+         * @return the neighborhood weight of the node of the given key, or -1 if there is no such node
+         */
+        public int getNeighborhoodWeight(String key) {
+            int slot = keys.slotOf(key);
+            return slot < 0 ? -1 : graph.getNeighborhoodWeight(slot);
+        }
+
+        /**
+         * <p>
+         * Time Complexity: O(the length of the key)
+         * </p>
+         * @return the key of the node with the maximum neighborhood weight, or null if the graph is empty
+         */
+        public String maxNeighborhoodWeight() {
+            Node max = graph.maxNeighborhoodWeight();
+            return max == null ? null : keys.keyOf(max.getId());
+        }
+
+        public int getNumNodes() {
+            return graph.getNumNodes();
+        }
+
+        public int getNumEdges() {
+            return graph.getNumEdges();
+        }
+
+        /**
+         * @return the graph of the dense ids (the slots of the keys), for the operations that have no key variant
+         */
+        public Graph getGraph() {
+            return graph;
+        }
+
+        /**
+         * @return the dictionary of the keys
+         */
+        public stringDictionary getKeys() {
+            return keys;
+        }
+    }
+
+
+
+    /**
+     * a graph whose nodes are split between P independent shards, each one a Graph of its own (with its own hash map of ids and its own Maximum-Heap)
+     * that is owned and modified by a single thread. so the mutations of the graph run on P cores.
+     * the caller's thread only routes the operations: addEdge(u, v) is sent to the shard of u, which adds the half-edge u->v and sends the half-edge v->u
+     * to the shard of v. if v turns out to be deleted, the shard of v sends back a removal of u->v. deleteNode(x) is sent to the shard of x, which sends a
+     * removal of the other half of each of x's half-edges to the shards that own them. messages between two shards are delivered in the order they were sent,
+     * so every half-edge is eventually removed exactly when its other half is.
+     * the operations are asynchronous: sync() waits until all of the messages were applied, after which the queries give exact results.
+     * maxNeighborhoodWeight is a tournament between the maxima of the shards' heaps.
+     */
+    public static class shardedGraph implements AutoCloseable{
+        // the kinds of messages between the threads. each message is 3 ints: the kind and two ids
+        private static final int ADD_REQUEST = 0; // add the edge (a, b), sent to the shard of a
+        private static final int ADD_HALF = 1; // add the half-edge a->b, sent to the shard of a by the shard of b
+        private static final int REMOVE_HALF = 2; // remove the half-edge a->b, sent to the shard of a by the shard of b
+        private static final int DELETE = 3; // delete the node a, sent to the shard of a
+        private static final int STOP = 4; // stop the shard's thread
+        // the amount of messages in a single batch
+        private static final int BATCH_SIZE = 1024;
+
+        private final Graph[] shards;
+        private final Thread[] threads;
+        private final java.util.concurrent.LinkedBlockingQueue<int[]>[] inboxes;
+        // all of the nodes by id, shared (read-only) by all of the threads
+        private final hashMap<Node> allNodes;
+        // the amount of batches that were sent and not fully applied yet
+        private final java.util.concurrent.atomic.AtomicLong pendingBatches = new java.util.concurrent.atomic.AtomicLong();
+        // the first exception that a shard threw while applying a message, or null. once it is set, the graph is broken and sync() throws
+        private final java.util.concurrent.atomic.AtomicReference<Throwable> failure = new java.util.concurrent.atomic.AtomicReference<>();
+        // the thread that is waiting in sync(), woken up by the shard that applies the last pending batch (or fails)
+        private volatile Thread syncWaiter;
+        // the amount of times sync() spins before it parks its thread, for the batches that are applied right away
+        private static final int SYNC_SPINS = 1000;
+        // the longest time that sync() parks its thread before it checks the pending batches again, in nanoseconds
+        private static final long SYNC_PARK_NANOS = 1_000_000;
+        // the batches that the caller's thread is filling, one per shard
+        private final int[][] outgoing;
+
+        /**
+         * Initializes the sharded graph on a given set of nodes, split between the given amount of shards, and starts the threads of the shards.
+         * The created graph is empty, i.e. it has no edges.
+         * <p>
+         * Complexity: O(N + P)
+         * </p>
+         * @SupressWarnings("unchecked") this is to avoid a warning caused by the generic array of inboxes
+         * @param nodes - an array of node objects, with 32-bit ids
+         * @param shardsAmount - the amount of shards (and threads), P
+         * @throws IllegalArgumentException if the nodes were created with 64-bit ids
+         */
+        @SuppressWarnings("unchecked")
+        public shardedGraph(Node[] nodes, int shardsAmount) {
+            allNodes = new hashMap<>(nodes.length, 0.5f);
+            int[] sizes = new int[shardsAmount];
+            for (Node node : nodes) {
+                if (node.longKeyed) { // the shards would assign the same slots as 32-bit ids to nodes of different shards
+                    throw new IllegalArgumentException("the nodes of a sharded graph must have 32-bit ids");
+                }
+                allNodes.addItem(node.getId(), node);
+                sizes[shardOf(node.getId(), shardsAmount)]++;
+            }
+            Node[][] parts = new Node[shardsAmount][];
+            for (int i = 0; i < shardsAmount; i++) {
+                parts[i] = new Node[sizes[i]];
+                sizes[i] = 0;
+            }
+            for (Node node : nodes) {
+                int shard = shardOf(node.getId(), shardsAmount);
+                parts[shard][sizes[shard]++] = node;
+            }
+
+            shards = new Graph[shardsAmount];
+            threads = new Thread[shardsAmount];
+            inboxes = (java.util.concurrent.LinkedBlockingQueue<int[]>[]) new java.util.concurrent.LinkedBlockingQueue<?>[shardsAmount];
+            outgoing = new int[shardsAmount][];
+            for (int i = 0; i < shardsAmount; i++) {
+                shards[i] = new Graph(parts[i]);
+                inboxes[i] = new java.util.concurrent.LinkedBlockingQueue<>();
+            }
+            for (int i = 0; i < shardsAmount; i++) {
+                shardWorker worker = new shardWorker(i);
+                shards[i].halfEdgeSink = worker;
+                threads[i] = new Thread(worker, "graph-shard-" + i);
+                threads[i].setDaemon(true);
+                threads[i].start();
+            }
+        }
+
+        /**
+         * returns the shard that owns the node of the given id.
+         */
+        private static int shardOf(int id, int shardsAmount) {
+            return (int) (((id * 0x9E3779B9) & 0xFFFFFFFFL) * shardsAmount >>> 32);
+        }
+
+        /**
+         * sends the edge between the two nodes whose ids are specified to be added by the shards. If one of these nodes is not in the graph (by the time the
+         * message is applied), or if they're the same node, nothing is added.
+         * <p>
+         * Time Complexity: O(1) on the caller's thread
+         * </p>
+         * @pre the method is called by a single thread, and if the two nodes are in the graph there exists no edge between them
+         * @return 'false' if the ids can't make an edge (an unknown id, or the same id twice), otherwise 'true'
+         */
+        public boolean addEdge(int node1_id, int node2_id) {
+            if (node1_id == node2_id || allNodes.get(node1_id) == null || allNodes.get(node2_id) == null) {
+                return false;
+            }
+            send(outgoing, shardOf(node1_id, shards.length), ADD_REQUEST, node1_id, node2_id);
+            return true;
+        }
+
+        /**
+         * sends the node of the given id to be deleted by its shard.
+         * <p>
+         * Time Complexity: O(1) on the caller's thread
+         * </p>
+         * @pre the method is called by a single thread
+         * @return 'false' if there never was a node of the given id, otherwise 'true'
+         */
+        public boolean deleteNode(int node_id) {
+            if (allNodes.get(node_id) == null) {
+                return false;
+            }
+            send(outgoing, shardOf(node_id, shards.length), DELETE, node_id, 0);
+            return true;
+        }
+
+        /**
+         * sends the batches that the caller's thread filled so far, and waits until all of the messages (including the ones the shards sent each other) were applied.
+         * the thread spins for a short while, and then parks until the shard that applies the last pending batch wakes it up.
+         * <p>
+         * Time Complexity: O(P) + the time it takes the shards to apply the pending messages
+         * </p>
+         * @throws IllegalStateException if a shard threw an exception while applying a message (now, or at any earlier time), with that exception as its cause.
+         * the shards keep draining their inboxes after a failure, so the graph can still be closed, but its state is no longer consistent
+         */
+        public void sync() {
+            for (int i = 0; i < shards.length; i++) {
+                flush(outgoing, i);
+            }
+            syncWaiter = Thread.currentThread();
+            try {
+                for (int spins = 0; pendingBatches.get() > 0 && failure.get() == null; spins++) {
+                    if (spins < SYNC_SPINS) {
+                        Thread.onSpinWait();
+                    } else { // the timeout covers a wake-up that came between the check and the park
+                        java.util.concurrent.locks.LockSupport.parkNanos(this, SYNC_PARK_NANOS);
+                    }
+                }
+            } finally {
+                syncWaiter = null;
+            }
+            Throwable cause = failure.get();
+            if (cause != null) {
+                throw new IllegalStateException("a shard failed to apply a message", cause);
+            }
+        }
+
+        /**
+         * returns the node with the maximum neighborhood weight, by a tournament between the maxima of the shards.
+         * <p>
+         * Time Complexity: O(P)
+         * </p>
+         * @pre sync() was called after the last mutation
+         * @return a Node object representing the correct node. If there is no node in the graph, returns 'null'.
+         */
+        public Node maxNeighborhoodWeight() {
+            Node[] round = new Node[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                round[i] = shards[i].maxNeighborhoodWeight();
+            }
+            // every round of the tournament halves the amount of candidates, pairing candidate i with candidate i + half
+            for (int candidates = shards.length; candidates > 1; candidates = (candidates + 1) / 2) {
+                int half = (candidates + 1) / 2;
+                for (int i = 0; i + half < candidates; i++) {
+                    Node other = round[i + half];
+                    if (round[i] == null || (other != null && other.getVicinityWeight() > round[i].getVicinityWeight())) {
+                        round[i] = other;
+                    }
+                }
+            }
+            return round[0];
+        }
+
+        /**
+         * @pre sync() was called after the last mutation
+         * @return the neighborhood weight of the node of id 'node_id' if such a node exists in the graph. Otherwise, the function returns -1.
+         */
+        public int getNeighborhoodWeight(int node_id) {
+            return shards[shardOf(node_id, shards.length)].getNeighborhoodWeight(node_id);
+        }
+
+        /**
+         * @pre sync() was called after the last mutation
+         * @return the amount of nodes in the graph
+         */
+        public int getNumNodes() {
+            int sum = 0;
+            for (Graph shard : shards) {
+                sum += shard.getNumNodes();
+            }
+            return sum;
+        }
+
+        /**
+         * @pre sync() was called after the last mutation
+         * @return the amount of edges in the graph: the edges inside the shards, and half of the half-edges between them
+         */
+        public int getNumEdges() {
+            int edges = 0;
+            int halfEdges = 0;
+            for (Graph shard : shards) {
+                edges += shard.getNumEdges();
+                halfEdges += shard.halfEdgesCount;
+            }
+            return edges + halfEdges / 2;
+        }
+
+        /**
+         * this method applies the pending messages and stops the threads of the shards.
+         */
+        @Override
+        public void close() {
+            try {
+                sync();
+            } finally { // the threads are stopped even if a shard failed, in which case the failure is thrown once they are
+                for (int i = 0; i < shards.length; i++) {
+                    send(outgoing, i, STOP, 0, 0);
+                    flush(outgoing, i);
+                }
+                for (Thread thread : threads) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * appends a message to the batch that the given sender is filling for the given shard, and sends the batch when it is full.
+         * a batch is an int array whose first entry is the amount of messages in it.
+         */
+        private void send(int[][] batches, int shard, int kind, int a, int b) {
+            int[] batch = batches[shard];
+            if (batch == null) {
+                batch = batches[shard] = new int[1 + 3 * BATCH_SIZE];
+            }
+            int pos = 1 + 3 * batch[0]++;
+            batch[pos] = kind;
+            batch[pos + 1] = a;
+            batch[pos + 2] = b;
+            if (batch[0] == BATCH_SIZE) {
+                flush(batches, shard);
+            }
+        }
+
+        /**
+         * sends the batch that the given sender filled for the given shard, if it isn't empty.
+         */
+        private void flush(int[][] batches, int shard) {
+            int[] batch = batches[shard];
+            if (batch != null && batch[0] > 0) {
+                pendingBatches.incrementAndGet();
+                inboxes[shard].add(batch);
+                batches[shard] = null;
+            }
+        }
+
+        /**
+         * the loop of the thread that owns a single shard: it applies the batches of its inbox one by one. the messages it sends to the other shards are batched
+         * as well, and sent before the incoming batch is counted as applied - so sync() never misses them.
+         * an exception thrown by a message is recorded as the failure of the graph (see sync), and from then on the thread only drains its inbox - counting its
+         * batches as applied and obeying STOP - so neither sync() nor close() waits forever for a thread that died.
+         */
+        private class shardWorker implements Runnable, halfEdgeSink{
+            private final int index;
+            private final Graph shard;
+            // the batches that this shard is filling for the other shards
+            private final int[][] outgoingFromShard;
+
+            private shardWorker(int index) {
+                this.index = index;
+                this.shard = shards[index];
+                this.outgoingFromShard = new int[shards.length][];
+            }
+
+            @Override
+            public void run() {
+                while (true) {
+                    int[] batch;
+                    try {
+                        batch = inboxes[index].take();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    boolean stop = false;
+                    try {
+                        for (int i = 0; i < batch[0]; i++) {
+                            int pos = 1 + 3 * i;
+                            if (failure.get() != null) { // the graph is broken, only a STOP is still obeyed
+                                stop |= batch[pos] == STOP;
+                                continue;
+                            }
+                            try {
+                                stop |= apply(batch[pos], batch[pos + 1], batch[pos + 2]);
+                            } catch (RuntimeException | Error e) {
+                                failure.compareAndSet(null, e);
+                            }
+                        }
+                    } finally {
+                        for (int i = 0; i < shards.length; i++) {
+                            flush(outgoingFromShard, i);
+                        }
+                        if (pendingBatches.decrementAndGet() == 0 || failure.get() != null) {
+                            Thread waiter = syncWaiter;
+                            if (waiter != null) {
+                                java.util.concurrent.locks.LockSupport.unpark(waiter);
+                            }
+                        }
+                    }
+                    if (stop) {
+                        return;
+                    }
+                }
+            }
+
+            /**
+             * applies a single message to the shard.
+             * @return 'true' if the thread should stop
+             */
+            private boolean apply(int kind, int a, int b) {
+                switch (kind) {
+                    case ADD_REQUEST: {
+                        int other = shardOf(b, shards.length);
+                        if (other == index) { // both nodes are in this shard, so this is a plain edge
+                            shard.addEdge(a, b);
+                        } else {
+                            Node local = shard.nodesHash.get(a);
+                            if (local != null) { // the other half is added by the shard of b, or rejected if b was deleted
+                                shard.addHalfEdge(local, allNodes.get(b));
+                                send(outgoingFromShard, other, ADD_HALF, b, a);
+                            }
+                        }
+                        return false;
+                    }
+                    case ADD_HALF: {
+                        Node local = shard.nodesHash.get(a);
+                        if (local != null) {
+                            shard.addHalfEdge(local, allNodes.get(b));
+                        } else { // the node was deleted, so the half-edge that the shard of b already added must go as well
+                            send(outgoingFromShard, shardOf(b, shards.length), REMOVE_HALF, b, a);
+                        }
+                        return false;
+                    }
+                    case REMOVE_HALF: {
+                        Node local = shard.nodesHash.get(a);
+                        if (local != null) {
+                            shard.removeHalfEdge(local, allNodes.get(b));
+                        }
+                        return false;
+                    }
+                    case DELETE:
+                        shard.deleteNode(a);
+                        return false;
+                    default: // STOP
+                        return true;
+                }
+            }
+
+            @Override
+            public void halfEdgeRemoved(Node local, Node remote) {
+                send(outgoingFromShard, shardOf(remote.getId(), shards.length), REMOVE_HALF, remote.getId(), local.getId());
+            }
+        }
+    }
+
+
+
+    /**
+     * the state of a single walk of nodesAbove over the graph's heap.
+     * the nodes that pass the threshold go either to `sink`, or to the `ids`/`weights` buffers which are handed to `onBatch` whenever they fill up.
+     */
+    private class thresholdWalk implements queueVisitor<Node>{
+        private final int threshold;
+        private IntConsumer sink;
+        private int[] ids;
+        private int[] weights;
+        private IntConsumer onBatch;
+        // the amount of valid entries in the buffers
+        private int filled = 0;
+        // the amount of nodes reported so far
+        private int total = 0;
+
+        private thresholdWalk(int threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public int bound() {
+            return threshold;
+        }
+
+        @Override
+        public void visit(queueCell<Node> cell) {
+            if (cell.key >= threshold) {
+                report(cell);
+            }
+        }
+
+        /**
+         * hands a single node over to the sink, or to the buffers.
+         */
+        private void report(queueCell<Node> heapNode) {
+            total++;
+            if (sink != null) {
+                sink.accept(heapNode.getValue().getId());
+                return;
+            }
+            ids[filled] = heapNode.getValue().getId();
+            if (weights != null) {
+                weights[filled] = heapNode.key;
+            }
+            filled++;
+            if (filled == ids.length) { // the buffers are full, hand them over before refilling them
+                onBatch.accept(filled);
+                filled = 0;
+            }
+        }
+    }
+
+
+
+    /**
+     * This class represents a node in the graph.
+     */
+    public static class Node{
+        // the id of the node. for a node created with a 64-bit id, the id if it fits in 32 bits, and -1 otherwise
+        private final int id;
+        // the 64-bit id of the node: the id it was created with
+        private final long longId;
+        // whether the node was created with a 64-bit id (see Node(long, int))
+        private final boolean longKeyed;
+        private final int weight;
+        private int vicinityWeight;
+        private final DoublyLinkedList<Node> Neighbors;
+        private queueCell<Node> heapForm;
+        private hashMap<Node>.hashCell<Node> hashForm;
+        // whether the node was deleted from the graph. in lazy deletion mode, cells holding a dead node are skipped by every iteration over a Neighbors list
+        private boolean deleted = false;
+        // the amount of cells in the Neighbors list that hold dead nodes and are yet to be removed by the compactor
+        private int staleNeighbors = 0;
+        // whether the node is currently waiting in the compaction queue of the graph
+        private boolean queuedForCompaction = false;
+        // the 2-hop neighborhood weight of the node, maintained only while the 2-hop index of the graph is enabled
+        private long twoHopWeight;
+        // the pointer to the node's form in the 2-hop Maximum-Heap of the graph, while the 2-hop index is enabled
+        private maxHeap<Node>.heapNode<Node> twoHopForm;
+        // the index of the node's pair in the current batch of the graph's change feed, or -1 if the node didn't change during the batch
+        private int feedSlot = -1;
+        // the index of the node in the array that its graph was created with
+        private int slot;
+        // the index of the node among the nodes that lost edges in the current batch of expireEdges, or -1 if it didn't lose any
+        private int expirySlot = -1;
+
+        /**
+         * Creates a new node object, given its id and its weight.
+         * the node's vicinity weight is initialized to be the weight of the node. this is true because when we insert a new node to the graph, nodes
+         * are yet to be connected with it. so the vicinity weight is simply just its weight.
+         * we also initialize its Neighbors' field to be a new DoublyLinkedList<Node>
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @param id the id of the node.
+         * @param weight the weight of the node.
+         */
+        public Node(int id, int weight){
+            this.id = id;
+            this.longId = id;
+            this.longKeyed = false;
+            this.weight = weight;
+            vicinityWeight = weight;
+            Neighbors = new DoublyLinkedList<>();
+        }
+
+
+        /**
+         * Creates a new node object, given its 64-bit id and its weight. the graph of such a node indexes it by the 64-bit id, and is used only through the
+         * methods that take long ids (see Graph.addEdge(long, long)). getId() returns the id if it fits in 32 bits, and -1 otherwise.
+         * all of the nodes of a graph must be created the same way: either all with 32-bit ids, or all with 64-bit ids.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @param id the 64-bit id of the node.
+         * @param weight the weight of the node.
+         */
+        public Node(long id, int weight){
+            this.id = id == (int) id ? (int) id : -1;
+            this.longId = id;
+            this.longKeyed = true;
+            this.weight = weight;
+            vicinityWeight = weight;
+            Neighbors = new DoublyLinkedList<>();
+        }
+
+
+        /**
+         * Returns the id of the node.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the id of the node. for a node created with a 64-bit id (see Node(long, int)), the id if it fits in 32 bits, and -1 otherwise.
+         */
+        public int getId(){
+            return id;
+        }
+
+        /**
+         * Returns the 64-bit id of the node: the id it was created with.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the 64-bit id of the node.
+         */
+        public long getLongId(){
+            return longId;
+        }
+
+        /**
+         * Returns the weight of the node.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the weight of the node.
+         */
+        public int getWeight(){
+            return weight;
+        }
+
+
+        /**
+         * returns the vicinityWeight of the given node
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        public int getVicinityWeight() {
+            return vicinityWeight;
+        }
+
+        /**
+         * Updates the weight of the Node in case a new edge was added/deleted.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @param additionalWeight the new vicinityWeight of the node will be vicinityWeight + additionalWeight
+         */
+        public void UpdateVicinityWeight(int additionalWeight){
+            vicinityWeight += additionalWeight;
+            this.heapForm.changeKey(this.vicinityWeight);
+        }
+
+        /**
+         * @pre @node must not be a Neighbor
+         * this method is used to add a new Neighbor, which is @node. In other words, this method is used to add a new Edge that consists of the original node and the given argument node
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * we simply add @node to our DoublyLinkedList of @Neighbors, and update the vicinity weight of our original node (because it has a new Neighbor). so we add the new node's weight to the vicinity weight of the original node
+         * @param node
+         */
+        public void addNeighbor(Node node){
+            Neighbors.addItem(node);
+            UpdateVicinityWeight(node.getWeight());
+        }
+
+
+
+        /**
+         * this method is used to add as a new field - the pointer of the node's form in the Maximum-Heap of the Graph.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @param heapForm the pointer we update the field 'heapForm' to.
+         */
+        public void setHeapForm(queueCell<Node> heapForm) {
+            this.heapForm = heapForm;
+        }
+
+
+
+        /**
+         * this method is used to add as a new field - the pointer of the node's form in the hash-Map of the Graph.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @param hashForm the pointer we update the field 'hashForm' to.
+         */
+        public void setHashForm(hashMap<Node>.hashCell<Node> hashForm) {
+            this.hashForm = hashForm;
+        }
+
+
+        /**
+         * the getter of the pointer to the node's form in the hashMap of the Graph
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the pointer to the node's form in the hash map of the graph
+         */
+        public hashMap<Node>.hashCell<Node> getHashForm() {
+            return hashForm;
+        }
+
+
+        /**
+         * the getter of the pointer to the node's form in the Maximum-Heap of the Graph
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the pointer to the node's form in the maximum heap of the graph
+         */
+        public queueCell<Node> getHeapForm() {
+            return heapForm;
+        }
+
+
+        /**
+         * this method returns the amount of Neighbors that the node has - Or in other words, the amount of edges that the node partakes in.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the DoublyLinedList's length: 'Neighbors' of the node, which contains all of its neighbors, without the cells of dead nodes that are yet to be compacted
+         */
+        public int getNeighborsAmount(){
+            return this.Neighbors.length() - this.staleNeighbors;
+        }
+
+    }
+
+
+    /**
+     * this class is an abstract class, that implements the basic format of `some` cell in `some` data structure.
+     *
+     * @param <T> the class of the value that we want to put in the cell
+     */
+    public static abstract class Cell<T>{
+        // key of the cell
+        protected int key;
+        // value of the cell
+        protected T value;
+
+        /**
+         * the constructor of the class.
+         * initializes the plain fields of the instance.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @param key assigned to the field `key`
+         * @param value assigned to the field `value`
+         */
+        protected Cell(int key, T value) {
+            this.key = key;
+            this.value = value;
+        }
+
+
+        /**
+         * the getter of the key
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the key of the cell
+         */
+        protected int getKey() {
+            return key;
+        }
+
+
+        /**
+         * the getter of the value
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the value of the cell
+         */
+        protected T getValue() {
+            return value;
+        }
+
+
+        /**
+         * the setter of the key
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        protected void setKey(int key) {
+            this.key = key;
+        }
+
+
+        /**
+         * the setter of the value
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        protected void setValue(T value) {
+            this.value = value;
+        }
+    }
+
+
+
+    /**
+     * the cell of a value in a priorityQueue - the handle through which the value's key is changed, and through which the value is deleted.
+     *
+     * @param <T> the class of the value that we want to put in the cell
+     */
+    public static abstract class queueCell<T> extends Cell<T>{
+
+        protected queueCell(int key, T value) {
+            super(key, value);
+        }
 
         /**
-         * Creates a new node object, given its id and its weight.
-         * the node's vicinity weight is initialized to be the weight of the node. this is true because when we insert a new node to the graph, nodes
-         * are yet to be connected with it. so the vicinity weight is simply just its weight.
-         * we also initialize its Neighbors' field to be a new DoublyLinkedList<Node>
+         * this method changes the key of the cell, and fixes the cell's position in its priority queue.
+         * @param key the new key of the cell
+         */
+        public abstract void changeKey(int key);
+    }
+
+
+
+    /**
+     * the operations of a maximum priority queue that the Graph keeps the neighborhood weights of its nodes in. every value in the queue is held by a
+     * queueCell, which is returned by insert and is the handle of the value from then on (see Node.heapForm).
+     *
+     * @param <T> the class of the values in the queue
+     */
+    public interface priorityQueue<T>{
+        /**
+         * inserts the value with the given key.
+         * @return the cell that holds the value in the queue
+         */
+        queueCell<T> insert(T value, int key);
+
+        /**
+         * deletes the given cell from the queue.
+         * @pre the cell is in the queue
+         */
+        void delete(queueCell<T> cell);
+
+        /**
+         * changes the key of the given cell.
+         * @pre the cell is in the queue
+         */
+        default void changeKey(queueCell<T> cell, int key) {
+            cell.changeKey(key);
+        }
+
+        /**
+         * @return the cell with the largest key in the queue, or null if the queue is empty
+         */
+        queueCell<T> getMax();
+
+        /**
+         * @return the amount of cells in the queue
+         */
+        int getSize();
+
+        /**
+         * restores the order of the queue after the keys of its cells were set directly (through Cell.setKey, without changeKey).
+         * @pre the cells of the queue are the ones it held before the keys were set
+         */
+        void rebuild();
+
+        /**
+         * @return the estimated amount of bytes that the queue holds: its arrays and its cells, but not the values of the cells (see Graph.memoryStats)
+         */
+        long memoryBytes();
+
+        /**
+         * checks the invariants of the queue around the given cell: that the queue holds the cell where the cell says it is, and that its key is in order
+         * with the keys it is compared against (its parent's, or its children's). checking every cell of the queue this way checks the whole queue.
+         * @pre the queue isn't modified during the check
+         * @return a description of the broken invariant, or null if the cell is fine
+         */
+        String checkCell(queueCell<T> cell);
+
+        /**
+         * passes cells of the queue to the visitor, starting from the cell with the largest key. the queue skips cells only when it can tell that they hold
+         * keys below the visitor's bound (which the visitor may raise during the walk), so every cell whose key is at least the final bound is visited.
+         * @pre the visitor must not modify the queue
+         */
+        void walk(queueVisitor<T> visitor);
+    }
+
+
+
+    /**
+     * the visitor of priorityQueue.walk.
+     */
+    public interface queueVisitor<T>{
+        /**
+         * @return the smallest key that the visitor is interested in. a walk skips the cells that it can tell are below it
+         */
+        int bound();
+
+        /**
+         * called with every cell that the walk didn't skip.
+         */
+        void visit(queueCell<T> cell);
+    }
+
+
+
+    /**
+     * a maximum pairing heap: a heap-ordered tree of any degree (every cell holds a key greater than or equal to the keys of its children), kept as a
+     * leftmost-child / next-sibling binary tree. the children of a cell are linked through `next`, and `prev` points to the previous sibling - or to the
+     * parent for the leftmost child.
+     * the basic operation is meld: the root with the smaller key becomes the leftmost child of the other root, in O(1). so insert is O(1), and so is an increase
+     * of a key - the cell is cut from its parent (with its subtree) and melded with the root. deleting a cell melds its children in two passes (pairs from
+     * left to right, then the pairs from right to left), which is O(log n) amortized, and so is a decrease of a key - the children of the cell are detached
+     * the same way, and the cell is melded back on its own.
+     */
+    public static class pairingHeap<T> implements priorityQueue<T>{
+        // the root of the heap, or null while the heap is empty
+        private pairingNode root;
+        // the amount of cells in the heap
+        private int size = 0;
+
+        /**
+         * inserts the value as a single-cell tree, melded with the root.
          * <p>
          * Time Complexity: O(1)
          * </p>
-         * @param id the id of the node.
-         * @param weight the weight of the node.
          */
-        public Node(int id, int weight){
-            this.id = id;
-            this.weight = weight;
-            vicinityWeight = weight;
-            Neighbors = new DoublyLinkedList<>();
+        @Override
+        public pairingNode insert(T value, int key) {
+            pairingNode node = new pairingNode(key, value);
+            root = meld(root, node);
+            size++;
+            return node;
+        }
+
+        /**
+         * deletes the cell: its children are melded in two passes, and melded with the root (or become the root, if the cell was the root).
+         * <p>
+         * Time Complexity: O(log n) amortized
+         * </p>
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public void delete(queueCell<T> cell) {
+            pairingNode node = (pairingNode) cell;
+            if (node == root) {
+                root = mergePairs(node.child);
+            } else {
+                cut(node);
+                root = meld(root, mergePairs(node.child));
+            }
+            node.child = null;
+            size--;
+        }
+
+        /**
+         * changes the key of the cell. an increased cell is cut from its parent and melded with the root, in O(1). a decreased cell's children are detached
+         * and melded, and the cell is melded back on its own, in O(log n) amortized.
+         * <p>
+         * Time Complexity: O(1) amortized for an increase, O(log n) amortized for a decrease
+         * </p>
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public void changeKey(queueCell<T> cell, int key) {
+            pairingNode node = (pairingNode) cell;
+            if (key == node.key) {
+                return;
+            }
+            if (key > node.key) {
+                node.key = key;
+                if (node != root) {
+                    cut(node);
+                    root = meld(root, node);
+                }
+                return;
+            }
+            node.key = key;
+            pairingNode children = mergePairs(node.child);
+            node.child = null;
+            if (node == root) {
+                root = meld(node, children);
+            } else {
+                cut(node);
+                root = meld(meld(root, node), children);
+            }
+        }
+
+        /**
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the root of the heap, or null if the heap is empty
+         */
+        @Override
+        public pairingNode getMax() {
+            return root;
+        }
+
+        /**
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * walks the tree from the root, cutting off every subtree whose root holds a key below the visitor's bound. the walk keeps a stack of lists of siblings
+         * instead of recursing, since the tree may be as deep as the amount of cells.
+         * <p>
+         * Time Complexity: O(the amount of visited cells)
+         * </p>
+         */
+        @Override
+        public void walk(queueVisitor<T> visitor) {
+            if (root == null) {
+                return;
+            }
+            ArrayDeque<pairingNode> lists = new ArrayDeque<>();
+            lists.push(root);
+            while (!lists.isEmpty()) {
+                for (pairingNode node = lists.pop(); node != null; node = node.next) {
+                    if (node.key < visitor.bound()) { // the node is the largest one in its subtree
+                        continue;
+                    }
+                    visitor.visit(node);
+                    if (node.child != null) {
+                        lists.push(node.child);
+                    }
+                }
+            }
+        }
+
+        /**
+         * the heap is a tree of cells, with nothing else to it.
+         */
+        @Override
+        public long memoryBytes() {
+            return size * objectBytes(pairingNode.class);
+        }
+
+        /**
+         * collects all of the cells, unlinks them, and melds them one by one into a new tree.
+         * <p>
+         * Time Complexity: O(n)
+         * </p>
+         */
+        @Override
+        public void rebuild() {
+            List<pairingNode> nodes = new ArrayList<>(size);
+            ArrayDeque<pairingNode> lists = new ArrayDeque<>();
+            if (root != null) {
+                lists.push(root);
+            }
+            while (!lists.isEmpty()) {
+                for (pairingNode node = lists.pop(); node != null; node = node.next) {
+                    nodes.add(node);
+                    if (node.child != null) {
+                        lists.push(node.child);
+                    }
+                }
+            }
+            root = null;
+            for (pairingNode node : nodes) {
+                node.child = null;
+                node.next = null;
+                node.prev = null;
+            }
+            for (pairingNode node : nodes) {
+                root = meld(root, node);
+            }
+        }
+
+        /**
+         * checks the links of the cell to its siblings, and that the keys of all of its children are at most its own.
+         * <p>
+         * Time Complexity: O(the amount of children of the cell)
+         * </p>
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public String checkCell(queueCell<T> cell) {
+            pairingNode node = (pairingNode) cell;
+            if (node.prev == null ? node != root : node.prev.child != node && node.prev.next != node) {
+                return "the pairing heap cell isn't linked from its previous sibling or its parent";
+            }
+            if (node.next != null && node.next.prev != node) {
+                return "the next sibling of the pairing heap cell doesn't link back to it";
+            }
+            for (pairingNode child = node.child; child != null; child = child.next) {
+                if (child.key > node.key) {
+                    return "the pairing heap cell has the key " + node.key + " but a child of the key " + child.key;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * melds two trees: the root with the smaller key becomes the leftmost child of the other one.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @pre both are roots of trees (they have no parent and no siblings), or null
+         * @return the root of the melded tree
+         */
+        private pairingNode meld(pairingNode a, pairingNode b) {
+            if (a == null) {
+                return b;
+            }
+            if (b == null) {
+                return a;
+            }
+            if (b.key > a.key) {
+                pairingNode tmp = a;
+                a = b;
+                b = tmp;
+            }
+            b.prev = a;
+            b.next = a.child;
+            if (a.child != null) {
+                a.child.prev = b;
+            }
+            a.child = b;
+            return a;
+        }
+
+        /**
+         * cuts the given cell (with its subtree) out of the list of children of its parent.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @pre the cell isn't the root
+         */
+        private void cut(pairingNode node) {
+            if (node.prev.child == node) { // the leftmost child, whose prev is its parent
+                node.prev.child = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next != null) {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        /**
+         * melds the given list of siblings into a single tree in two passes: the siblings are melded in pairs from left to right (the results are chained
+         * backwards through `prev`), and then the pairs are melded into one tree from right to left.
+         * <p>
+         * Time Complexity: O(the amount of siblings)
+         * </p>
+         * @return the root of the melded tree, or null if the list is empty
+         */
+        private pairingNode mergePairs(pairingNode first) {
+            pairingNode pairs = null;
+            while (first != null) {
+                pairingNode a = first;
+                pairingNode b = a.next;
+                first = b == null ? null : b.next;
+                a.prev = null;
+                a.next = null;
+                if (b != null) {
+                    b.prev = null;
+                    b.next = null;
+                }
+                pairingNode melded = meld(a, b);
+                melded.prev = pairs;
+                pairs = melded;
+            }
+            pairingNode result = null;
+            while (pairs != null) {
+                pairingNode previousPair = pairs.prev;
+                pairs.prev = null;
+                result = meld(pairs, result);
+                pairs = previousPair;
+            }
+            return result;
+        }
+
+        /**
+         * the cell of a value in the pairing heap.
+         */
+        protected class pairingNode extends queueCell<T>{
+            // the leftmost child of the cell, the next sibling of the cell, and the previous sibling of the cell (or its parent, if it is the leftmost child)
+            private pairingNode child;
+            private pairingNode next;
+            private pairingNode prev;
+
+            private pairingNode(int key, T value) {
+                super(key, value);
+            }
+
+            @Override
+            public void changeKey(int key) {
+                pairingHeap.this.changeKey(this, key);
+            }
+        }
+    }
+
+
+
+    /**
+     * a winner tree (tournament tree) over fixed slots: every value is given a slot when it is inserted, and keeps it until it is deleted. the keys are kept by
+     * slot in a flat array, and the tree is a flat array of slots laid out like a heap - tree[i] is the slot with the largest key among the leaves under i, and
+     * the leaves are tree[leaves + s] = s. nothing ever moves: a key change rewrites the winners along the single path from the slot's leaf to the root (two
+     * primitive keys compared per level), the maximum is the winner at the root, and a deleted slot is just given the key EMPTY, which never wins.
+     * the slots of the deleted values are reused by the next inserts. when all of the slots are taken, the amount of leaves is doubled and the tree is rebuilt.
+     * <p>
+     * the Graph inserts its nodes by their order, so the slot of every node in the tree is the node's slot in the graph.
+     * </p>
+     */
+    public static class winnerTree<T> implements priorityQueue<T>{
+        // the key of a free slot. it loses to every key of a value in the tree
+        private static final int EMPTY = Integer.MIN_VALUE;
+        // the amount of leaves (slots) of the tree, a power of two
+        private int leaves;
+        // the key of every slot, and the cell of every slot (null for a free slot)
+        private int[] keys;
+        private winnerCell[] cells;
+        // tree[1] is the root, the children of i are 2i and 2i + 1, and tree[leaves + s] = s
+        private int[] tree;
+        // the slots below nextSlot were handed out at least once. the free ones among them are kept in a stack
+        private int nextSlot = 0;
+        private int[] freeSlots;
+        private int freeCount = 0;
+        // the amount of values in the tree
+        private int size = 0;
+
+        /**
+         * the constructor of the winner tree
+         * <p>
+         * Time Complexity: O(capacity)
+         * </p>
+         * @param capacity - the amount of values the tree can hold before it is grown
+         */
+        @SuppressWarnings("unchecked")
+        public winnerTree(int capacity) {
+            leaves = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+            keys = new int[leaves];
+            Arrays.fill(keys, EMPTY);
+            cells = (winnerCell[]) new winnerTree<?>.winnerCell[leaves]; // a generic array can't be created, only cast to
+            freeSlots = new int[leaves];
+            tree = new int[2 * leaves];
+            build();
+        }
+
+        /**
+         * inserts the value into a free slot (a reused one if there is any), and replays the slot's path.
+         * <p>
+         * Time Complexity: O(log n), or O(n) when the tree is grown
+         * </p>
+         * @pre key > Integer.MIN_VALUE
+         */
+        @Override
+        public queueCell<T> insert(T value, int key) {
+            int slot;
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                if (nextSlot == leaves) {
+                    grow();
+                }
+                slot = nextSlot++;
+            }
+            winnerCell cell = new winnerCell(key, value, slot);
+            cells[slot] = cell;
+            keys[slot] = key;
+            replay(slot);
+            size++;
+            return cell;
+        }
+
+        /**
+         * frees the slot of the cell: its key becomes EMPTY, and its path is replayed.
+         * <p>
+         * Time Complexity: O(log n)
+         * </p>
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public void delete(queueCell<T> cell) {
+            int slot = ((winnerCell) cell).slot;
+            cells[slot] = null;
+            keys[slot] = EMPTY;
+            replay(slot);
+            freeSlots[freeCount++] = slot;
+            size--;
+        }
+
+        /**
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the cell of the winner at the root, or null if the tree is empty
+         */
+        @Override
+        public queueCell<T> getMax() {
+            return cells[tree[1]];
+        }
+
+        /**
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * walks the tree from the root, cutting off every subtree whose winner is below the visitor's bound (or is a free slot). the cells are visited at
+         * their leaves, so a winner is visited once even though it is the winner of the whole path above it.
+         * <p>
+         * Time Complexity: O(log n * the amount of visited cells)
+         * </p>
+         */
+        @Override
+        public void walk(queueVisitor<T> visitor) {
+            walk(1, visitor);
+        }
+
+        private void walk(int i, queueVisitor<T> visitor) {
+            int slot = tree[i];
+            if (cells[slot] == null || keys[slot] < visitor.bound()) { // nothing under i is of interest
+                return;
+            }
+            if (i >= leaves) {
+                visitor.visit(cells[slot]);
+                return;
+            }
+            walk(2 * i, visitor);
+            walk(2 * i + 1, visitor);
+        }
+
+        /**
+         * the arrays of the slots and of the matches, and the cells.
+         */
+        @Override
+        public long memoryBytes() {
+            return arrayBytes(keys.length, 4) + arrayBytes(cells.length, REFERENCE_BYTES) + arrayBytes(tree.length, 4) + arrayBytes(freeSlots.length, 4)
+                    + size * objectBytes(winnerCell.class);
+        }
+
+        /**
+         * reloads the keys of the slots from their cells, and plays all of the matches from the bottom up.
+         * <p>
+         * Time Complexity: O(n)
+         * </p>
+         */
+        @Override
+        public void rebuild() {
+            for (int slot = 0; slot < nextSlot; slot++) {
+                keys[slot] = cells[slot] == null ? EMPTY : cells[slot].key;
+            }
+            build();
         }
 
-
         /**
-         * Returns the id of the node.
+         * checks that the slot of the cell holds it and its key, and replays the matches that the cell won on the way up from its leaf, up to the first one it
+         * lost (which must have been lost to a key that isn't smaller). every match is won by a single slot, so checking every cell checks each match of the
+         * tree at most once.
          * <p>
-         * Time Complexity: O(1)
+         * Time Complexity: O(1 + the amount of matches the cell won)
          * </p>
-         * @return the id of the node.
          */
-        public int getId(){
-            return id;
+        @Override
+        @SuppressWarnings("unchecked")
+        public String checkCell(queueCell<T> cell) {
+            int slot = ((winnerCell) cell).slot;
+            if (cells[slot] != cell || keys[slot] != cell.key) {
+                return "slot " + slot + " of the winner tree doesn't hold its cell and key";
+            }
+            for (int i = (leaves + slot) >>> 1; i > 0; i >>>= 1) {
+                int left = tree[2 * i];
+                int right = tree[2 * i + 1];
+                if (tree[i] != slot) {
+                    return keys[tree[i]] < keys[slot] ? "slot " + slot + " lost a match of the winner tree to a smaller key" : null;
+                }
+                if (tree[i] != (keys[right] > keys[left] ? right : left)) {
+                    return "a match of the winner tree won by slot " + slot + " has the wrong winner";
+                }
+            }
+            return null;
         }
 
         /**
-         * Returns the weight of the node.
+         * replays the matches along the path from the leaf of the given slot to the root. on a tie the left slot wins, so a free slot never beats a value.
          * <p>
-         * Time Complexity: O(1)
+         * Time Complexity: O(log n)
          * </p>
-         * @return the weight of the node.
          */
-        public int getWeight(){
-            return weight;
+        private void replay(int slot) {
+            int[] tree = this.tree;
+            int[] keys = this.keys;
+            for (int i = (leaves + slot) >>> 1; i > 0; i >>>= 1) {
+                int left = tree[2 * i];
+                int right = tree[2 * i + 1];
+                tree[i] = keys[right] > keys[left] ? right : left;
+            }
         }
 
-
         /**
-         * returns the vicinityWeight of the given node
+         * sets the leaves of the tree, and plays all of the matches from the bottom up.
          * <p>
-         * Time Complexity: O(1)
+         * Time Complexity: O(n)
          * </p>
          */
-        public int getVicinityWeight() {
-            return vicinityWeight;
+        private void build() {
+            for (int s = 0; s < leaves; s++) {
+                tree[leaves + s] = s;
+            }
+            for (int i = leaves - 1; i > 0; i--) {
+                int left = tree[2 * i];
+                int right = tree[2 * i + 1];
+                tree[i] = keys[right] > keys[left] ? right : left;
+            }
         }
 
         /**
-         * Updates the weight of the Node in case a new edge was added/deleted.
+         * doubles the amount of leaves of the tree. the slots (and so the cells) stay as they are.
          * <p>
-         * Time Complexity: O(1)
+         * Time Complexity: O(n)
          * </p>
-         * @param additionalWeight the new vicinityWeight of the node will be vicinityWeight + additionalWeight
          */
-        public void UpdateVicinityWeight(int additionalWeight){
-            vicinityWeight += additionalWeight;
-            this.heapForm.changeKey(this.vicinityWeight);
+        private void grow() {
+            leaves *= 2;
+            keys = Arrays.copyOf(keys, leaves);
+            Arrays.fill(keys, leaves / 2, leaves, EMPTY);
+            cells = Arrays.copyOf(cells, leaves);
+            freeSlots = Arrays.copyOf(freeSlots, leaves);
+            tree = new int[2 * leaves];
+            build();
         }
 
         /**
-         * @pre @node must not be a Neighbor
-         * this method is used to add a new Neighbor, which is @node. In other words, this method is used to add a new Edge that consists of the original node and the given argument node
-         * <p>
-         * Time Complexity: O(1)
-         * </p>
-         * we simply add @node to our DoublyLinkedList of @Neighbors, and update the vicinity weight of our original node (because it has a new Neighbor). so we add the new node's weight to the vicinity weight of the original node
-         * @param node
+         * the cell of a value in the winner tree. its slot never changes.
          */
-        public void addNeighbor(Node node){
-            Neighbors.addItem(node);
-            UpdateVicinityWeight(node.getWeight());
+        protected class winnerCell extends queueCell<T>{
+            private final int slot;
+
+            private winnerCell(int key, T value, int slot) {
+                super(key, value);
+                this.slot = slot;
+            }
+
+            @Override
+            public void changeKey(int key) {
+                this.key = key;
+                keys[slot] = key;
+                replay(slot);
+            }
         }
+    }
+
 
 
+    /**
+     * a bucket queue for non-negative integer keys: a list of cells for every key, kept in an array indexed by the key. a key change unlinks the cell from its
+     * bucket and links it to the head of the new one, in O(1) whatever the amount of cells is. the maximum is found through `top`, which is raised on every
+     * insert and key change that goes above it, and lowered lazily by getMax - to the highest bucket that isn't empty.
+     * the array of buckets starts with the given maximal key, and is doubled whenever a larger key arrives, so it takes O(n + the largest key) memory.
+     */
+    public static class bucketQueue<T> implements priorityQueue<T>{
+        // the head of the list of every key
+        private bucketCell[] buckets;
+        // no bucket above top holds a cell
+        private int top = 0;
+        // the amount of cells in the queue
+        private int size = 0;
 
         /**
-         * this method is used to add as a new field - the pointer of the node's form in the Maximum-Heap of the Graph.
+         * the constructor of the bucket queue
          * <p>
-         * Time Complexity: O(1)
+         * Time Complexity: O(maxKey)
          * </p>
-         * @param heapForm the pointer we update the field 'heapForm' to.
+         * @param maxKey - the largest key that the queue is expected to hold
          */
-        public void setHeapForm(maxHeap<Node>.heapNode<Node> heapForm) {
-            this.heapForm = heapForm;
+        @SuppressWarnings("unchecked")
+        public bucketQueue(int maxKey) {
+            buckets = (bucketCell[]) new bucketQueue<?>.bucketCell[Math.max(1, maxKey + 1)]; // a generic array can't be created, only cast to
         }
 
-
-
         /**
-         * this method is used to add as a new field - the pointer of the node's form in the hash-Map of the Graph.
+         * links the value to the head of the bucket of its key.
          * <p>
-         * Time Complexity: O(1)
+         * Time Complexity: O(1) (amortized, when the array of buckets is grown)
          * </p>
-         * @param hashForm the pointer we update the field 'hashForm' to.
+         * @throws IllegalArgumentException if the key is negative
          */
-        public void setHashForm(hashMap<Node>.hashCell<Node> hashForm) {
-            this.hashForm = hashForm;
+        @Override
+        public queueCell<T> insert(T value, int key) {
+            bucketCell cell = new bucketCell(key, value);
+            link(cell);
+            size++;
+            return cell;
         }
 
-
         /**
-         * the getter of the pointer to the node's form in the hashMap of the Graph
+         * unlinks the cell from its bucket.
          * <p>
          * Time Complexity: O(1)
          * </p>
-         * @return the pointer to the node's form in the hash map of the graph
          */
-        public hashMap<Node>.hashCell<Node> getHashForm() {
-            return hashForm;
+        @Override
+        @SuppressWarnings("unchecked")
+        public void delete(queueCell<T> cell) {
+            unlink((bucketCell) cell);
+            size--;
         }
 
-
         /**
-         * the getter of the pointer to the node's form in the Maximum-Heap of the Graph
+         * moves the cell to the bucket of its new key.
          * <p>
-         * Time Complexity: O(1)
+         * Time Complexity: O(1) (amortized, when the array of buckets is grown)
          * </p>
-         * @return the pointer to the node's form in the maximum heap of the graph
+         * @throws IllegalArgumentException if the key is negative
          */
-        public maxHeap<Node>.heapNode<Node> getHeapForm() {
-            return heapForm;
+        @Override
+        @SuppressWarnings("unchecked")
+        public void changeKey(queueCell<T> cell, int key) {
+            bucketCell bucketCell = (bucketCell) cell;
+            if (key == bucketCell.key) {
+                return;
+            }
+            unlink(bucketCell);
+            bucketCell.key = key;
+            link(bucketCell);
         }
 
-
         /**
-         * this method returns the amount of Neighbors that the node has - Or in other words, the amount of edges that the node partakes in.
+         * lowers top to the highest bucket that isn't empty, and returns the head of that bucket. so unlike the heaps, reading the maximum writes to the queue.
          * <p>
-         * Time Complexity: O(1)
+         * Time Complexity: O(1) amortized - top only goes down as far as it was raised by the inserts and the key changes. a single call costs O(the amount of
+         * buckets that top goes down), which is the drop of the largest key since the previous call
          * </p>
-         * @return the DoublyLinedList's length: 'Neighbors' of the node, which contains all of its neighbors
+         * @return a cell with the largest key in the queue, or null if the queue is empty
          */
-        public int getNeighborsAmount(){
-            return this.Neighbors.length();
+        @Override
+        public queueCell<T> getMax() {
+            while (top > 0 && buckets[top] == null) {
+                top--;
+            }
+            return buckets[top];
         }
 
-    }
-
-
-    /**
-     * this class is an abstract class, that implements the basic format of `some` cell in `some` data structure.
-     *
-     * @param <T> the class of the value that we want to put in the cell
-     */
-    public static abstract class Cell<T>{
-        // key of the cell
-        protected int key;
-        // value of the cell
-        protected T value;
-
         /**
-         * the constructor of the class.
-         * initializes the plain fields of the instance.
          * <p>
          * Time Complexity: O(1)
          * </p>
-         * @param key assigned to the field `key`
-         * @param value assigned to the field `value`
          */
-        protected Cell(int key, T value) {
-            this.key = key;
-            this.value = value;
+        @Override
+        public int getSize() {
+            return size;
         }
 
-
         /**
-         * the getter of the key
+         * walks the buckets from top down to the visitor's bound, visiting every cell in them. the walk doesn't lower top, so any amount of walks may run at
+         * the same time.
          * <p>
-         * Time Complexity: O(1)
+         * Time Complexity: O(the amount of visited cells + the amount of walked buckets)
          * </p>
-         * @return the key of the cell
          */
-        protected int getKey() {
-            return key;
+        @Override
+        public void walk(queueVisitor<T> visitor) {
+            for (int key = top; key >= 0 && key >= visitor.bound(); key--) {
+                for (bucketCell cell = buckets[key]; cell != null; cell = cell.next) {
+                    visitor.visit(cell);
+                }
+            }
         }
 
+        /**
+         * the array of the buckets, and the cells.
+         */
+        @Override
+        public long memoryBytes() {
+            return arrayBytes(buckets.length, REFERENCE_BYTES) + size * objectBytes(bucketCell.class);
+        }
 
         /**
-         * the getter of the value
+         * collects all of the cells from the buckets they were linked to, and links them again by their keys.
          * <p>
-         * Time Complexity: O(1)
+         * Time Complexity: O(n + the amount of buckets)
          * </p>
-         * @return the value of the cell
+         * @throws IllegalArgumentException if a key is negative
          */
-        protected T getValue() {
-            return value;
+        @Override
+        public void rebuild() {
+            List<bucketCell> cells = new ArrayList<>(size);
+            for (int key = 0; key < buckets.length; key++) {
+                for (bucketCell cell = buckets[key]; cell != null; cell = cell.next) {
+                    cells.add(cell);
+                }
+            }
+            Arrays.fill(buckets, null);
+            top = 0;
+            for (bucketCell cell : cells) {
+                link(cell);
+            }
         }
 
-
         /**
-         * the setter of the key
+         * checks that the cell is linked into the bucket of its key, and that the bucket isn't above top.
          * <p>
          * Time Complexity: O(1)
          * </p>
          */
-        protected void setKey(int key) {
-            this.key = key;
+        @Override
+        @SuppressWarnings("unchecked")
+        public String checkCell(queueCell<T> cell) {
+            bucketCell bucketCell = (bucketCell) cell;
+            int key = bucketCell.key;
+            if (key < 0 || key >= buckets.length || key > top) {
+                return "the bucket queue cell has the key " + key + ", out of the buckets' range (top is " + top + ")";
+            }
+            if (bucketCell.prev == null ? buckets[key] != bucketCell : bucketCell.prev.next != bucketCell || bucketCell.prev.key != key) {
+                return "the bucket queue cell isn't linked into the bucket of its key " + key;
+            }
+            if (bucketCell.next != null && bucketCell.next.prev != bucketCell) {
+                return "the next cell in the bucket of the key " + key + " doesn't link back to its previous one";
+            }
+            return null;
         }
 
+        /**
+         * links the cell to the head of the bucket of its key, growing the array of buckets if needed.
+         */
+        private void link(bucketCell cell) {
+            int key = cell.key;
+            if (key < 0) {
+                throw new IllegalArgumentException("a bucket queue can't hold the negative key " + key);
+            }
+            if (key >= buckets.length) {
+                buckets = Arrays.copyOf(buckets, Math.max(key + 1, 2 * buckets.length));
+            }
+            cell.prev = null;
+            cell.next = buckets[key];
+            if (cell.next != null) {
+                cell.next.prev = cell;
+            }
+            buckets[key] = cell;
+            if (key > top) {
+                top = key;
+            }
+        }
 
         /**
-         * the setter of the value
-         * <p>
-         * Time Complexity: O(1)
-         * </p>
+         * unlinks the cell from the bucket of its key.
          */
-        protected void setValue(T value) {
-            this.value = value;
+        private void unlink(bucketCell cell) {
+            if (cell.prev == null) {
+                buckets[cell.key] = cell.next;
+            } else {
+                cell.prev.next = cell.next;
+            }
+            if (cell.next != null) {
+                cell.next.prev = cell.prev;
+            }
+            cell.prev = null;
+            cell.next = null;
+        }
+
+        /**
+         * the cell of a value in the bucket queue, linked with the other cells of its bucket.
+         */
+        protected class bucketCell extends queueCell<T>{
+            private bucketCell prev;
+            private bucketCell next;
+
+            private bucketCell(int key, T value) {
+                super(key, value);
+            }
+
+            @Override
+            public void changeKey(int key) {
+                bucketQueue.this.changeKey(this, key);
+            }
         }
     }
 
@@ -610,13 +5653,14 @@ public class Graph {
      * @param <V> the values that we want our hash map to handle
      */
     public static class hashMap<V>{
-        private final hashCell<V>[] table; // the table of the hash-table. the table will manage the chaining.
+        private hashCell<V>[] table; // the table of the hash-table. the table will manage the chaining. it is replaced by a table twice as long when the load factor is exceeded
 
         // the parameters used to calculating our universally-selected modular hash function
         private final int p = (int)Math.pow(10, 9) + 9; // the prime number of the Hash function. this is set by default to the prime number that we got handed with the assignment
         private final int a; // random int between 1 to p
         private final int b; // random int between 0 to p
-        private final int m; // the lenght of our hash-table
+        private int m; // the lenght of our hash-table
+        private final float loadFactor; // the maximal ratio between the amount of items in the hash map and the length of its table
 
         // the amount of items in the hash map
         private int size = 0;
@@ -636,8 +5680,9 @@ public class Graph {
         @SuppressWarnings("unchecked")
         public hashMap(int m, float loadFactor){
             // initializing our fields as discussed above
-            this.m = (int)((float)m*(1/loadFactor));
+            this.m = Math.max(1, (int)((float)m*(1/loadFactor)));
             this.table = (hashMap<V>.hashCell<V>[]) new hashCell[this.m];
+            this.loadFactor = loadFactor;
 
             // randomizing a and b
             Random rand = new Random();
@@ -673,8 +5718,11 @@ public class Graph {
          * @return the pointer to the hashCell that wraps the inserted item in the hash-map
          */
         public hashCell<V> addItem(int key, V item){
-            // highring the hash map's size by one
+            // highring the hash map's size by one, and doubling the table if the load factor is exceeded (never the case for the nodes of a graph, whose amount is known upfront)
             size++;
+            if (size > m * loadFactor) {
+                rehash(2 * m);
+            }
 
             // calculating the hashed key for the given key
             int hashedKey = hash(key);
@@ -702,6 +5750,34 @@ public class Graph {
 
 
 
+        /**
+         * this method moves all of the hashCells of the hash map to a new table of the given length. the hashCells themselves are kept,
+         * so the pointers that were returned by addItem remain valid.
+         * <p>
+         * Time Complexity: O(size + newLength)
+         * </p>
+         * @param newLength the length of the new table
+         */
+        private void rehash(int newLength) {
+            hashCell<V>[] oldTable = table;
+            // an array of the same (generic) type as the old table, emptied - so no raw array has to be created and cast
+            table = Arrays.copyOf(oldTable, newLength);
+            Arrays.fill(table, null);
+            m = newLength;
+            for (hashCell<V> curr : oldTable) {
+                while (curr != null) { // moving every cell of the chain to the head of its new chain
+                    hashCell<V> next = curr.next;
+                    int hashedKey = hash(curr.key);
+                    curr.setNext(table[hashedKey]);
+                    table[hashedKey] = curr;
+                    curr = next;
+                }
+            }
+        }
+
+
+
+
         /**
          * returns the node in the hashMap who holds the given key.
          * done by accessing the likned list chain at index hashedKey(@key) in the hash-map's table, and by searching the given key in that list.
@@ -830,11 +5906,11 @@ public class Graph {
      * its left child is at index 2*i
      * its right child is at index 2*i + 1
      */
-    public static class maxHeap<T>{
+    public static class maxHeap<T> implements priorityQueue<T>{
         // this will be the array that represents the Maximum-Heap
-        private final heapNode<T>[] Heap;
+        protected heapNode<T>[] Heap;
         // this will hold the number of nodes in the Heap
-        private int size;
+        protected int size;
 
 
         /**
@@ -866,7 +5942,7 @@ public class Graph {
          * </p>
          * @param pos the index of the node in the Heap's array. if the given @pos is 0 (thus the root of the heap), then we return -1.
          */
-        private int parent(int pos) {
+        protected int parent(int pos) {
             return Math.floorDiv(pos+1,2 ) - 1;
         }
 
@@ -881,7 +5957,7 @@ public class Graph {
          * </p>
          * @param pos the index of the original node in the Heap's array
          */
-        private int leftChild(int pos) {
+        protected int leftChild(int pos) {
             return 2*(pos+1)-1;
         }
 
@@ -896,7 +5972,7 @@ public class Graph {
          * </p>
          * @param pos the index of the original node in the Heap's array
          */
-        private int rightChild(int pos) {
+        protected int rightChild(int pos) {
             return 2*(pos+1);
         }
 
@@ -959,7 +6035,7 @@ public class Graph {
          * @param pos1
          * @param pos2
          */
-        private void swap(int pos1, int pos2){
+        protected void swap(int pos1, int pos2){
             // updating the new positions fields of the nodes given at the indices of the Heap's array - given as the arguments
             Heap[pos1].setPos(pos2);
             Heap[pos2].setPos(pos1);
@@ -974,48 +6050,181 @@ public class Graph {
 
 
         /**
-         * this method is used to add a node into the heap. it also performs the Heapifying-process used to maintain the balance and requirements of a Maximum-Heap
+         * this method is used to add a node into the heap. it also performs the Heapifying-process used to maintain the balance and requirements of a Maximum-Heap
+         * <p>
+         * Time Complexity: O(log n), while n is the amount of nodes in the Heap (or in the graph)
+         * </p>
+         * @pre the node must not exist in the Heap
+         * @param node
+         * @return the pointer to the node's representation in the maximum heap, in order for the node to access in O(1) its heapNode
+         */
+        public heapNode<T> addNode(T node, int key) {
+            // wrapping the given node of class T with @key in a heapNode<T>, at the end of the priority Queue of the heap denoted: `Heap`
+            // also highering size by one
+            ensureCapacity();
+            Heap[size] = new heapNode<>(key, node, size); // key = node.getVicinityWeight()
+            size++;
+
+            // getting the index of the last node in the priority Queue of the heap
+            int curr = getMaxIndex();
+            heapNode<T> heapForm = Heap[curr];
+
+            // performing a Heapify-up process. We don't need to perform any heapiyfing-down process due to the implementation of this data structure
+            while (parent(curr) >= 0 && Heap[curr].key > Heap[parent(curr)].key) { // continuing the loop as long as the newly added heapNode isn't the root and holds a key greater than its parent
+                swap(curr, parent(curr)); // swapping the newly added heapNode with its `current` parent
+                curr = parent(curr); // advancing to the next iteration
+            }
+            return heapForm; // returning the pointer to the freshly added item
+        }
+
+
+
+
+
+        /**
+         * the priorityQueue form of addNode.
+         * <p>
+         * Time Complexity: O(log n)
+         * </p>
+         */
+        @Override
+        public heapNode<T> insert(T value, int key) {
+            return addNode(value, key);
+        }
+
+
+        /**
+         * the priorityQueue form of deleteNode.
+         * <p>
+         * Time Complexity: O(log n)
+         * </p>
+         * @pre the cell is a heapNode of this heap
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public void delete(queueCell<T> cell) {
+            deleteNode((heapNode<T>) cell);
+        }
+
+
+        /**
+         * walks the priority Queue from the root (see priorityQueue.walk). a subtree is cut off when its root is on a bounding level (see bounds) and holds a key
+         * below the visitor's bound.
+         * <p>
+         * Time Complexity: O(the amount of visited nodes)
+         * </p>
+         */
+        @Override
+        public void walk(queueVisitor<T> visitor) {
+            walk(0, visitor);
+        }
+
+        private void walk(int pos, queueVisitor<T> visitor) {
+            if (pos > getMaxIndex()) { // there's no such node
+                return;
+            }
+            heapNode<T> heapNode = Heap[pos];
+            if (bounds(pos) && heapNode.key < visitor.bound()) { // the node is the largest one in its subtree, so nothing in it is of interest
+                return;
+            }
+            visitor.visit(heapNode);
+            walk(leftChild(pos), visitor);
+            walk(rightChild(pos), visitor);
+        }
+
+
+        /**
+         * the array of the heap, and the cells.
+         */
+        @Override
+        public long memoryBytes() {
+            return arrayBytes(Heap.length, REFERENCE_BYTES) + size * objectBytes(heapNode.class);
+        }
+
+
+        /**
+         * restores the heap order bottom-up (Floyd's method): every node that has children is sifted down, from the last one to the root.
+         * <p>
+         * Time Complexity: O(n)
+         * </p>
+         */
+        @Override
+        public void rebuild() {
+            for (int pos = parent(getMaxIndex()); pos >= 0; pos--) {
+                siftDown(pos);
+            }
+        }
+
+        /**
+         * sifts the node at the given position down, until its children's keys are at most its own, given that its subtrees are already in heap order.
+         * <p>
+         * Time Complexity: O(log n)
+         * </p>
+         */
+        protected void siftDown(int pos) {
+            for (int child = biggerChild(pos); child >= 0 && Heap[child].key > Heap[pos].key; child = biggerChild(pos)) {
+                swap(pos, child);
+                pos = child;
+            }
+        }
+
+
+        /**
+         * checks that the Heap holds the node at its position, and that the node's key is at most its parent's.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public String checkCell(queueCell<T> cell) {
+            int pos = ((heapNode<T>) cell).getPos();
+            if (pos < 0 || pos > getMaxIndex() || Heap[pos] != cell) {
+                return "the heap doesn't hold the node at its position " + pos;
+            }
+            return checkOrder(pos);
+        }
+
+        /**
+         * checks the order of the key of the node at the given position against its parent's.
+         * @return a description of the broken order, or null if the node is in order
+         */
+        protected String checkOrder(int pos) {
+            int parent = parent(pos);
+            if (pos > 0 && Heap[pos].key > Heap[parent].key) {
+                return "the heap node at " + pos + " has the key " + Heap[pos].key + ", larger than its parent's " + Heap[parent].key;
+            }
+            return null;
+        }
+
+
+        /**
+         * this method tells whether the node at the given position holds the largest key of its subtree. on a Maximum-Heap every node does.
          * <p>
-         * Time Complexity: O(log n), while n is the amount of nodes in the Heap (or in the graph)
+         * Time Complexity: O(1)
          * </p>
-         * @pre the node must not exist in the Heap
-         * @param node
-         * @return the pointer to the node's representation in the maximum heap, in order for the node to access in O(1) its heapNode
          */
-        public heapNode<T> addNode(T node, int key) {
-            // wrapping the given node of class T with @key in a heapNode<T>
-            // also highering size by one
-            Heap[size++] = new heapNode<>(key, node, size); // key = node.getVicinityWeight()
-
-            // getting the index of the last node in the priority Queue of the heap denoted: `Heap`
-            int curr = getMaxIndex();
+        protected boolean bounds(int pos) {
+            return true;
+        }
 
-            // adding our new item at the end of thr priority Queue as we should
-            heapNode<T> heapForm = Heap[curr];
 
-            // if only the recently inserted item is in the heap, then there is no need to Heapify the node up (or down), so we shalll return the pointer to the newly added heapNode
-            if (curr == 0) {
-                return heapForm;
+        /**
+         * this method doubles the length of the Heap's array when it is full. the heap of a graph's nodes is created with room for all of them and never grows,
+         * but other heaps (like the ones of the forks of a graph) may start small.
+         * <p>
+         * Time Complexity: O(1) amortized
+         * </p>
+         */
+        protected void ensureCapacity() {
+            if (size == Heap.length) {
+                Heap = Arrays.copyOf(Heap, Math.max(1, 2 * Heap.length));
             }
-
-            // performing a Heapify-up process. We don't need to perform any heapiyfing-down process due to the implementation of this data structure
-            do {
-                if (parent(curr) < 0) { // breaking the loop when we reach the root: parent() returns a value lower then 0 only when the given position is the position of the root.
-                    break;
-                }
-                swap(curr, parent(curr)); // swapping the newly added heapNode with its `current` parent
-                curr = parent(curr); // advancing to the next iteration
-                if (curr == 0) { // safety precaution
-                    break;
-                }
-            } while (Heap[curr].key > Heap[parent(curr)].key); // continuing the loop as long as the newly added heapNode holds a key greater than its parent
-            return heapForm; // returning the pointer to the freshly added item
         }
 
 
 
 
-
         /**
          * this method is used when we want to delete a certain node from the whole Graph, and therefore we delete it from the Maximum-Heap as well.
          * <p>
@@ -1149,7 +6358,7 @@ public class Graph {
          * This class implements the abstract class Cell<V>.
          * each cell holds a field called `pos`, which maintains the index of the node in the priority Queue of the heap: `Heap`
          */
-        private class heapNode<V> extends Cell<V>{
+        protected class heapNode<V> extends queueCell<V>{
             private int pos;
 
             /**
@@ -1201,6 +6410,7 @@ public class Graph {
              * @param key the new key of this node
              * @SupressWarnings("unchecked") this is to avoid a warning caused by our attempt at generifying this class
              */
+            @Override
             @SuppressWarnings("unchecked")
             public void changeKey(int key){
                 // change the key of the node
@@ -1213,6 +6423,492 @@ public class Graph {
 
 
 
+    /**
+     * an order-statistic tree over a multiset of int keys, implemented as an AVL tree of the distinct keys.
+     * each treeNode holds a key, the amount of times the key appears in the multiset (`count`), and the total amount of keys in its subtree (`total`),
+     * which lets us count the keys on either side of a given key, and find the k-th smallest key, along a single root-to-leaf path.
+     */
+    public static class orderStatisticTree{
+        // the root of the tree, or null while the multiset is empty
+        private treeNode root;
+
+        /**
+         * <p>
+         * Time Complexity: O(d)
+         * </p>
+         * @return the amount of nodes in the tree: the amount of distinct keys in the multiset
+         */
+        public int nodesAmount() {
+            return nodesAmount(root);
+        }
+
+        private static int nodesAmount(treeNode node) {
+            return node == null ? 0 : 1 + nodesAmount(node.left) + nodesAmount(node.right);
+        }
+
+        /**
+         * adds a single occurrence of the given key to the multiset.
+         * <p>
+         * Time Complexity: O(log d), while d is the amount of distinct keys in the multiset
+         * </p>
+         */
+        public void add(int key) {
+            root = add(root, key);
+        }
+
+        /**
+         * removes a single occurrence of the given key from the multiset.
+         * <p>
+         * Time Complexity: O(log d)
+         * </p>
+         * @pre the key is in the multiset
+         */
+        public void remove(int key) {
+            root = remove(root, key);
+        }
+
+        /**
+         * returns the amount of keys in the multiset.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        public int size() {
+            return total(root);
+        }
+
+        /**
+         * returns the amount of keys in the multiset that are strictly greater than the given key.
+         * <p>
+         * Time Complexity: O(log d)
+         * </p>
+         */
+        public int countGreater(int key) {
+            int count = 0;
+            treeNode curr = root;
+            while (curr != null) {
+                if (key < curr.key) { // the node and its right subtree are all greater than the key
+                    count += curr.count + total(curr.right);
+                    curr = curr.left;
+                } else if (key > curr.key) {
+                    curr = curr.right;
+                } else {
+                    return count + total(curr.right);
+                }
+            }
+            return count;
+        }
+
+        /**
+         * returns the k-th smallest key in the multiset (counting from 1, with repetitions).
+         * <p>
+         * Time Complexity: O(log d)
+         * </p>
+         * @pre 1 <= k <= size()
+         */
+        public int select(int k) {
+            treeNode curr = root;
+            while (true) {
+                int leftTotal = total(curr.left);
+                if (k <= leftTotal) {
+                    curr = curr.left;
+                } else if (k <= leftTotal + curr.count) {
+                    return curr.key;
+                } else {
+                    k -= leftTotal + curr.count;
+                    curr = curr.right;
+                }
+            }
+        }
+
+        /**
+         * inserts the key into the subtree rooted at the given node, and returns the new (balanced) root of the subtree.
+         */
+        private treeNode add(treeNode node, int key) {
+            if (node == null) {
+                return new treeNode(key);
+            }
+            if (key < node.key) {
+                node.left = add(node.left, key);
+            } else if (key > node.key) {
+                node.right = add(node.right, key);
+            } else {
+                node.count++;
+                node.total++;
+                return node;
+            }
+            return balance(node);
+        }
+
+        /**
+         * removes the key from the subtree rooted at the given node, and returns the new (balanced) root of the subtree.
+         */
+        private treeNode remove(treeNode node, int key) {
+            if (key < node.key) {
+                node.left = remove(node.left, key);
+            } else if (key > node.key) {
+                node.right = remove(node.right, key);
+            } else if (node.count > 1) { // other occurrences of the key are left, so the node stays
+                node.count--;
+                node.total--;
+                return node;
+            } else if (node.left == null || node.right == null) { // the node has at most one child, which takes its place
+                return node.left != null ? node.left : node.right;
+            } else { // the node is replaced by its successor, which is removed from the right subtree
+                treeNode successor = node.right;
+                while (successor.left != null) {
+                    successor = successor.left;
+                }
+                node.right = removeMin(node.right);
+                successor.left = node.left;
+                successor.right = node.right;
+                node = successor;
+            }
+            return balance(node);
+        }
+
+        /**
+         * detaches the node of the smallest key from the subtree rooted at the given node, and returns the new (balanced) root of the subtree.
+         */
+        private treeNode removeMin(treeNode node) {
+            if (node.left == null) {
+                return node.right;
+            }
+            node.left = removeMin(node.left);
+            return balance(node);
+        }
+
+        /**
+         * updates the height and the total of the given node from its children, and performs the AVL rotations needed if its children's heights differ by 2.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the root of the balanced subtree
+         */
+        private treeNode balance(treeNode node) {
+            update(node);
+            int balanceFactor = height(node.left) - height(node.right);
+            if (balanceFactor > 1) {
+                if (height(node.left.left) < height(node.left.right)) {
+                    node.left = rotateLeft(node.left);
+                }
+                return rotateRight(node);
+            } else if (balanceFactor < -1) {
+                if (height(node.right.right) < height(node.right.left)) {
+                    node.right = rotateRight(node.right);
+                }
+                return rotateLeft(node);
+            }
+            return node;
+        }
+
+        private treeNode rotateRight(treeNode node) {
+            treeNode left = node.left;
+            node.left = left.right;
+            left.right = node;
+            update(node);
+            update(left);
+            return left;
+        }
+
+        private treeNode rotateLeft(treeNode node) {
+            treeNode right = node.right;
+            node.right = right.left;
+            right.left = node;
+            update(node);
+            update(right);
+            return right;
+        }
+
+        private void update(treeNode node) {
+            node.height = 1 + Math.max(height(node.left), height(node.right));
+            node.total = node.count + total(node.left) + total(node.right);
+        }
+
+        private static int height(treeNode node) {
+            return node == null ? 0 : node.height;
+        }
+
+        private static int total(treeNode node) {
+            return node == null ? 0 : node.total;
+        }
+
+        /**
+         * a single node of the tree, holding a distinct key of the multiset.
+         */
+        private static class treeNode{
+            private final int key;
+            // the amount of occurrences of the key in the multiset
+            private int count = 1;
+            // the amount of keys (with repetitions) in the subtree rooted at this node
+            private int total = 1;
+            private int height = 1;
+            private treeNode left;
+            private treeNode right;
+
+            private treeNode(int key) {
+                this.key = key;
+            }
+        }
+    }
+
+
+
+    /**
+     * the kinds of heaps that a Graph can keep the neighborhood weights of its nodes in.
+     * MAX_HEAP - a plain Maximum-Heap (the default). answers maxNeighborhoodWeight in O(1).
+     * MIN_MAX_HEAP - a Min-Max Heap. answers both maxNeighborhoodWeight and minNeighborhoodWeight in O(1), at the price of a few more comparisons per key change.
+     * PAIRING_HEAP - a pairing heap. an increase of a neighborhood weight (every addEdge) costs O(1) amortized instead of O(log n), while a decrease
+     * (a deleteNode, for every Neighbor of the deleted node) costs O(log n) amortized with a larger constant.
+     * WINNER_TREE - a winner tree over the slots of the nodes. every key change replays a single leaf-to-root path of primitive keys, and no node ever moves.
+     * BUCKET_QUEUE - a bucket queue, with a list of nodes for every neighborhood weight. every key change costs O(1), at the price of O(the largest
+     * neighborhood weight) memory. the weights of the nodes must not be negative. picked by Graph(Node[], int) when the neighborhood weights are small enough.
+     */
+    public enum heapKind {
+        MAX_HEAP,
+        MIN_MAX_HEAP,
+        PAIRING_HEAP,
+        WINNER_TREE,
+        BUCKET_QUEUE
+    }
+
+
+
+    /**
+     * Min-Max Heap containing cells T (more precisely, a max-min heap: its root holds the largest key).
+     * the priority Queue `Heap` is laid out exactly like the one of maxHeap, but the levels of the tree alternate between max levels and min levels:
+     * the root is on a max level, its children are on a min level, its grand-children are on a max level, and so on.
+     * each node on a max level holds a key greater than or equal to the keys of all of its descendants, and each node on a min level holds a key smaller than
+     * or equal to the keys of all of its descendants. therefore the maximum is the root, and the minimum is one of the root's children.
+     * the heapNodes and their `pos` back-pointers are the ones of maxHeap, so a Node's heapForm works the same with both heaps, and a key change is a single
+     * O(log n) sift in a single structure.
+     */
+    public static class minMaxHeap<T> extends maxHeap<T>{
+
+        /**
+         * the constructor of the Min-Max Heap
+         * <p>
+         * Time Complexity: O(maxSize) = O(N)
+         * </p>
+         */
+        public minMaxHeap(int maxSize){
+            super(maxSize);
+        }
+
+
+        /**
+         * this method returns the node in the Heap which holds the smallest key.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         * @return the node with the smallest key, or null if the heap is empty
+         */
+        public heapNode<T> getMin(){
+            if (size <= 1) { // an empty heap, or a heap whose only node is the root
+                return Heap[0];
+            } else if (size == 2) { // the root has only a left child
+                return Heap[1];
+            }
+            return Heap[1].key <= Heap[2].key ? Heap[1] : Heap[2];
+        }
+
+
+        /**
+         * this method is used to add a node into the heap: the node is placed at the end of the priority Queue and is then sifted up along its level's ancestors
+         * <p>
+         * Time Complexity: O(log n), while n is the amount of nodes in the Heap (or in the graph)
+         * </p>
+         * @pre the node must not exist in the Heap
+         * @return the pointer to the node's representation in the heap, in order for the node to access in O(1) its heapNode
+         */
+        @Override
+        public heapNode<T> addNode(T node, int key) {
+            ensureCapacity();
+            Heap[size] = new heapNode<>(key, node, size);
+            size++;
+            heapNode<T> heapForm = Heap[getMaxIndex()];
+            fix(getMaxIndex());
+            return heapForm;
+        }
+
+
+        /**
+         * this method deletes a node from the heap: the last node in the priority Queue takes its place, and is then fixed in place.
+         * <p>
+         * Time Complexity: O(log n), while n is the amount of nodes in the heap (or in the graph)
+         * </p>
+         * @pre the node must exist in the Heap
+         */
+        @Override
+        public void deleteNode(heapNode<T> node){
+            int pos = node.getPos();
+            if (pos == getMaxIndex()) { // the last node in the priority Queue can be simply cut off
+                Heap[--size] = null;
+                return;
+            }
+            swap(pos, getMaxIndex());
+            Heap[--size] = null;
+            fix(pos);
+        }
+
+
+        /**
+         * this method is used to sift either UP or DOWN a node who has got its key changed.
+         * <p>
+         * Time Complexity: O(log n), while n is the amount of nodes in the heap (or in the graph)
+         * </p>
+         */
+        @Override
+        public void Heapify(heapNode<T> node) {
+            fix(node.getPos());
+        }
+
+
+        /**
+         * on a Min-Max Heap only the nodes of the max levels hold the largest key of their subtree.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        @Override
+        protected boolean bounds(int pos) {
+            return isMaxLevel(pos);
+        }
+
+
+        /**
+         * on a Min-Max Heap a node is sifted down along the levels of its kind - which builds the heap bottom-up in O(n) as well.
+         * <p>
+         * Time Complexity: O(log n)
+         * </p>
+         */
+        @Override
+        protected void siftDown(int pos) {
+            pushDown(pos, isMaxLevel(pos));
+        }
+
+
+        /**
+         * on a Min-Max Heap a node on a max level is at least its parent and at most its grand-parent, and a node on a min level is the other way around.
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        @Override
+        protected String checkOrder(int pos) {
+            boolean max = isMaxLevel(pos);
+            int parent = parent(pos);
+            if (pos > 0 && (max ? Heap[pos].key < Heap[parent].key : Heap[pos].key > Heap[parent].key)) {
+                return "the min-max heap node at " + pos + " is out of order with its parent";
+            }
+            int grandParent = pos > 0 ? parent(parent) : -1;
+            if (grandParent >= 0 && parent > 0 && (max ? Heap[pos].key > Heap[grandParent].key : Heap[pos].key < Heap[grandParent].key)) {
+                return "the min-max heap node at " + pos + " is out of order with its grand-parent";
+            }
+            return null;
+        }
+
+
+        /**
+         * this method checks whether the given position in the Heap's array is on a max level of the tree (the root's level is a max level).
+         * <p>
+         * Time Complexity: O(1)
+         * </p>
+         */
+        private boolean isMaxLevel(int pos){
+            return ((31 - Integer.numberOfLeadingZeros(pos + 1)) & 1) == 0;
+        }
+
+
+        /**
+         * this method restores the Min-Max Heap order around the node at the given position, given that every other node already respects it.
+         * on a max level: if the node is smaller than its parent (a min level node), the two are swapped - the parent's old key is then sifted down
+         * from the node's old position and the node is sifted up along the min levels. otherwise the node is sifted up along the max levels, and if it
+         * didn't move, it is sifted down. the min level case is symmetric.
+         * <p>
+         * Time Complexity: O(log n)
+         * </p>
+         */
+        private void fix(int pos){
+            int parent = parent(pos);
+            if (isMaxLevel(pos)) {
+                if (parent >= 0 && Heap[pos].key < Heap[parent].key) {
+                    swap(pos, parent);
+                    pushDown(pos, true);
+                    pushUp(parent, false);
+                } else if (pushUp(pos, true) == pos) {
+                    pushDown(pos, true);
+                }
+            } else {
+                if (parent >= 0 && Heap[pos].key > Heap[parent].key) {
+                    swap(pos, parent);
+                    pushDown(pos, false);
+                    pushUp(parent, true);
+                } else if (pushUp(pos, false) == pos) {
+                    pushDown(pos, false);
+                }
+            }
+        }
+
+
+        /**
+         * this method sifts the node at the given position up along its grand-parents, which are on the same kind of level as it is.
+         * <p>
+         * Time Complexity: O(log n)
+         * </p>
+         * @param max whether the node is on a max level
+         * @return the final position of the node
+         */
+        private int pushUp(int pos, boolean max){
+            int grandParent = parent(parent(pos));
+            while (parent(pos) >= 0 && grandParent >= 0 && (max ? Heap[pos].key > Heap[grandParent].key : Heap[pos].key < Heap[grandParent].key)) {
+                swap(pos, grandParent);
+                pos = grandParent;
+                grandParent = parent(parent(pos));
+            }
+            return pos;
+        }
+
+
+        /**
+         * this method sifts the node at the given position down: at every step it is compared to the extreme node (largest on a max level, smallest on a min level)
+         * among its children and grand-children. when that node is a grand-child, the two are swapped, and the node is also swapped with its new parent if it
+         * lies on the wrong side of it.
+         * <p>
+         * Time Complexity: O(log n)
+         * </p>
+         * @param max whether the node is on a max level
+         */
+        private void pushDown(int pos, boolean max){
+            while (leftChild(pos) <= getMaxIndex()) {
+                // finding the extreme node among the (up to 6) children and grand-children of the node. the 2 children, and so the 4 grand-children, are adjacent in the array
+                int extreme = leftChild(pos);
+                int firstGrandChild = leftChild(leftChild(pos));
+                for (int candidate = rightChild(pos); candidate <= getMaxIndex() && candidate < firstGrandChild + 4; candidate = candidate == rightChild(pos) ? firstGrandChild : candidate + 1) {
+                    if (max ? Heap[candidate].key > Heap[extreme].key : Heap[candidate].key < Heap[extreme].key) {
+                        extreme = candidate;
+                    }
+                }
+
+                if (max ? Heap[extreme].key <= Heap[pos].key : Heap[extreme].key >= Heap[pos].key) { // the node is already in place
+                    return;
+                }
+                swap(pos, extreme);
+                if (parent(extreme) == pos) { // a child has no children of its own that could be out of order with the node
+                    return;
+                }
+                int extremeParent = parent(extreme);
+                if (max ? Heap[extreme].key < Heap[extremeParent].key : Heap[extreme].key > Heap[extremeParent].key) {
+                    swap(extreme, extremeParent);
+                }
+                pos = extreme;
+            }
+        }
+    }
+
+
+
+
 }
 
 
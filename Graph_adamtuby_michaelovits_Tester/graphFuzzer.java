@@ -0,0 +1,473 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * a differential fuzzer of Graph: it runs large random workloads (see workloadGenerator) against a Graph and against an incremental reference oracle,
+ * and cross-checks maxNeighborhoodWeight, getNumNodes and getNumEdges after every operation, the result of every operation, and the neighborhood weights
+ * of all of the nodes every SWEEP_INTERVAL operations.
+ * <p>
+ * the oracle keeps the same state with the simplest structures that still cost O(1) - O(log n) per operation: a primitive map from the ids to dense indices,
+ * an adjacency array per node (so a deletion costs O(deg)), and a segment tree of the neighborhood weights for the maximum. so a run on 10^6 nodes and
+ * millions of operations takes seconds, where rescanning all of the nodes and edges on every deletion would take days.
+ * </p>
+ * <p>
+ * every run picks a random configuration of the graph (the kind of its heap, and lazy or eager deletion) and a random workload. a failing run is shrunk to
+ * a minimal trace: the operations after the failing one are dropped, then the nodes that no operation refers to, and then chunks of operations
+ * (delta debugging) as long as the trace still fails. the minimal trace is printed, and written as a trace file that graphReplay can replay.
+ * </p>
+ * usage: graphFuzzer [n] [operations per run] [runs] [seed]
+ */
+public class graphFuzzer {
+
+    private static final int SWEEP_INTERVAL = 1 << 18;
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        SplittableRandom rand = new SplittableRandom(seed);
+        System.out.printf("fuzzing with seed %d%n", seed);
+
+        for (int run = 0; run < runs; run++) {
+            long runSeed = rand.nextLong();
+            fuzzCase fuzz = fuzzCase.random(n, operations, runSeed);
+            long start = System.nanoTime();
+            failure fail = fuzz.check();
+            System.out.printf("run %d (seed %d, %s): %s in %.2f s%n", run, runSeed, fuzz.describe(), fail == null ? "ok" : "FAILED", (System.nanoTime() - start) / 1e9);
+            if (fail != null) {
+                System.out.printf("op #%d: %s%n", fail.index, fail.message);
+                fuzzCase minimal = shrink(fuzz, fail);
+                failure minimalFail = minimal.check();
+                System.out.printf("%nshrunk to %d nodes and %d operations (%s):%n", minimal.ids.length, minimal.count, minimal.describe());
+                minimal.print();
+                System.out.printf("op #%d: %s%n", minimalFail.index, minimalFail.message);
+                Path trace = Path.of("fuzz-" + runSeed + ".trace");
+                minimal.writeTrace(trace);
+                System.out.printf("the trace was written to %s (replay it with graphReplay)%n", trace);
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * shrinks a failing case to a (locally) minimal one that still fails.
+     */
+    private static fuzzCase shrink(fuzzCase fuzz, failure fail) {
+        fuzzCase current = fuzz.prefix(fail.index + 1);
+        fuzzCase fewerNodes = current.onlyReferencedNodes();
+        if (fewerNodes.check() != null) {
+            current = fewerNodes;
+        }
+        for (int chunk = current.count / 2; chunk >= 1; ) {
+            boolean removed = false;
+            for (int from = 0; from < current.count; ) {
+                fuzzCase candidate = current.without(from, Math.min(current.count, from + chunk));
+                failure candidateFail = candidate.check();
+                if (candidateFail != null) {
+                    current = candidate.prefix(candidateFail.index + 1);
+                    removed = true;
+                } else {
+                    from += chunk;
+                }
+            }
+            if (!removed) {
+                chunk /= 2;
+            }
+        }
+        fewerNodes = current.onlyReferencedNodes();
+        return fewerNodes.check() != null ? fewerNodes : current;
+    }
+
+
+    /**
+     * the first mismatch between the graph and the oracle: the index of the operation after which it was found, and what didn't match.
+     */
+    private static class failure {
+        private final int index;
+        private final String message;
+
+        private failure(int index, String message) {
+            this.index = index;
+            this.message = message;
+        }
+    }
+
+
+    /**
+     * a case to check: a configuration of the graph, its nodes, and a sequence of operations (with the op codes of Graph.traceRecorder).
+     */
+    private static class fuzzCase {
+        private final Graph.heapKind kind;
+        private final boolean lazyDeletion;
+        private final int[] ids;
+        private final int[] weights;
+        private final byte[] ops;
+        private final int[] ids1;
+        private final int[] ids2;
+        private final int count;
+        private final String workload;
+
+        private fuzzCase(Graph.heapKind kind, boolean lazyDeletion, int[] ids, int[] weights, byte[] ops, int[] ids1, int[] ids2, int count, String workload) {
+            this.kind = kind;
+            this.lazyDeletion = lazyDeletion;
+            this.ids = ids;
+            this.weights = weights;
+            this.ops = ops;
+            this.ids1 = ids1;
+            this.ids2 = ids2;
+            this.count = count;
+            this.workload = workload;
+        }
+
+        private static fuzzCase random(int n, int operations, long seed) {
+            SplittableRandom rand = new SplittableRandom(seed);
+            workloadGenerator.graphModel model = workloadGenerator.graphModel.values()[rand.nextInt(workloadGenerator.graphModel.values().length)];
+            int addPercent = 30 + rand.nextInt(60);
+            int deletePercent = rand.nextInt(Math.min(20, 100 - addPercent) + 1);
+            int getPercent = rand.nextInt(100 - addPercent - deletePercent + 1);
+            workloadGenerator generator = new workloadGenerator(n, model, addPercent, deletePercent, getPercent, (long) operations * addPercent / 100, rand.nextLong());
+            Graph.Node[] nodes = generator.nodes();
+            int[] ids = new int[n];
+            int[] weights = new int[n];
+            for (int i = 0; i < n; i++) {
+                ids[i] = nodes[i].getId();
+                weights[i] = nodes[i].getWeight();
+            }
+            byte[] ops = new byte[operations];
+            int[] ids1 = new int[operations];
+            int[] ids2 = new int[operations];
+            generator.next(ops, ids1, ids2);
+            String workload = String.format("%s, %d%% add, %d%% delete, %d%% get", model, addPercent, deletePercent, getPercent);
+            Graph.heapKind kind = Graph.heapKind.values()[rand.nextInt(Graph.heapKind.values().length)];
+            return new fuzzCase(kind, rand.nextBoolean(), ids, weights, ops, ids1, ids2, operations, workload);
+        }
+
+        private String describe() {
+            return String.format("%s, %s deletion, %s", kind, lazyDeletion ? "lazy" : "eager", workload);
+        }
+
+        private Graph newGraph() {
+            Graph.Node[] nodes = new Graph.Node[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                nodes[i] = new Graph.Node(ids[i], weights[i]);
+            }
+            Graph graph = new Graph(nodes, kind);
+            graph.setLazyDeletion(lazyDeletion);
+            return graph;
+        }
+
+        /**
+         * runs the case against a fresh graph and a fresh oracle.
+         * @return the first mismatch, or null if there was none
+         */
+        private failure check() {
+            Graph graph = newGraph();
+            oracle expected = new oracle(ids, weights);
+            int i = 0;
+            try {
+                for (; i < count; i++) {
+                    String mismatch = step(graph, expected, i);
+                    if (mismatch == null) {
+                        mismatch = compareSummary(graph, expected);
+                    }
+                    if (mismatch == null && (i + 1) % SWEEP_INTERVAL == 0) {
+                        mismatch = compareAll(graph, expected);
+                    }
+                    if (mismatch != null) {
+                        return new failure(i, mismatch);
+                    }
+                }
+                String mismatch = compareAll(graph, expected);
+                return mismatch == null ? null : new failure(count - 1, mismatch);
+            } catch (RuntimeException e) { // a corrupted structure usually ends with an exception
+                return new failure(Math.min(i, count - 1), e.toString());
+            }
+        }
+
+        private String step(Graph graph, oracle expected, int i) {
+            int a = ids1[i];
+            int b = ids2[i];
+            switch (ops[i]) {
+                case Graph.traceRecorder.ADD_EDGE: {
+                    boolean actual = graph.addEdge(a, b);
+                    boolean wanted = expected.addEdge(a, b);
+                    return actual == wanted ? null : String.format("addEdge(%d, %d) returned %b instead of %b", a, b, actual, wanted);
+                }
+                case Graph.traceRecorder.DELETE_NODE: {
+                    boolean actual = graph.deleteNode(a);
+                    boolean wanted = expected.deleteNode(a);
+                    return actual == wanted ? null : String.format("deleteNode(%d) returned %b instead of %b", a, actual, wanted);
+                }
+                case Graph.traceRecorder.GET_NEIGHBORHOOD_WEIGHT: {
+                    long actual = graph.getNeighborhoodWeight(a);
+                    long wanted = expected.neighborhoodWeight(a);
+                    return actual == wanted ? null : String.format("getNeighborhoodWeight(%d) returned %d instead of %d", a, actual, wanted);
+                }
+                default:
+                    return null; // maxNeighborhoodWeight is compared after every operation
+            }
+        }
+
+        private static String compareSummary(Graph graph, oracle expected) {
+            if (graph.getNumNodes() != expected.numNodes) {
+                return String.format("getNumNodes() returned %d instead of %d", graph.getNumNodes(), expected.numNodes);
+            }
+            if (graph.getNumEdges() != expected.numEdges) {
+                return String.format("getNumEdges() returned %d instead of %d", graph.getNumEdges(), expected.numEdges);
+            }
+            Graph.Node max = graph.maxNeighborhoodWeight();
+            long wanted = expected.maxNeighborhoodWeight();
+            if (max == null) {
+                return wanted == -1 ? null : String.format("maxNeighborhoodWeight() returned null instead of a node of weight %d", wanted);
+            }
+            if (max.getVicinityWeight() != wanted || expected.neighborhoodWeight(max.getId()) != wanted) {
+                return String.format("maxNeighborhoodWeight() returned node %d of weight %d (%d by the oracle) instead of a node of weight %d",
+                        max.getId(), max.getVicinityWeight(), expected.neighborhoodWeight(max.getId()), wanted);
+            }
+            return null;
+        }
+
+        private String compareAll(Graph graph, oracle expected) {
+            for (int id : ids) {
+                if (graph.getNeighborhoodWeight(id) != expected.neighborhoodWeight(id)) {
+                    return String.format("the neighborhood weight of node %d is %d instead of %d", id, graph.getNeighborhoodWeight(id), expected.neighborhoodWeight(id));
+                }
+            }
+            return null;
+        }
+
+        private fuzzCase prefix(int length) {
+            return new fuzzCase(kind, lazyDeletion, ids, weights, ops, ids1, ids2, length, workload);
+        }
+
+        private fuzzCase without(int from, int to) {
+            int length = count - (to - from);
+            byte[] newOps = new byte[length];
+            int[] newIds1 = new int[length];
+            int[] newIds2 = new int[length];
+            System.arraycopy(ops, 0, newOps, 0, from);
+            System.arraycopy(ids1, 0, newIds1, 0, from);
+            System.arraycopy(ids2, 0, newIds2, 0, from);
+            System.arraycopy(ops, to, newOps, from, count - to);
+            System.arraycopy(ids1, to, newIds1, from, count - to);
+            System.arraycopy(ids2, to, newIds2, from, count - to);
+            return new fuzzCase(kind, lazyDeletion, ids, weights, newOps, newIds1, newIds2, length, workload);
+        }
+
+        /**
+         * @return the same case on only the nodes that its operations refer to
+         */
+        private fuzzCase onlyReferencedNodes() {
+            intIndex referenced = new intIndex(2 * count + 1);
+            for (int i = 0; i < count; i++) {
+                referenced.putIfAbsent(ids1[i], 0);
+                referenced.putIfAbsent(ids2[i], 0);
+            }
+            int kept = 0;
+            for (int id : ids) {
+                kept += referenced.get(id) >= 0 ? 1 : 0;
+            }
+            int[] newIds = new int[kept];
+            int[] newWeights = new int[kept];
+            kept = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (referenced.get(ids[i]) >= 0) {
+                    newIds[kept] = ids[i];
+                    newWeights[kept++] = weights[i];
+                }
+            }
+            return new fuzzCase(kind, lazyDeletion, newIds, newWeights, ops, ids1, ids2, count, workload);
+        }
+
+        private void print() {
+            StringBuilder nodes = new StringBuilder("nodes (id:weight):");
+            for (int i = 0; i < ids.length && i < 1000; i++) {
+                nodes.append(' ').append(ids[i]).append(':').append(weights[i]);
+            }
+            System.out.println(ids.length > 1000 ? nodes + " ..." : nodes.toString());
+            for (int i = 0; i < count; i++) {
+                switch (ops[i]) {
+                    case Graph.traceRecorder.ADD_EDGE:
+                        System.out.printf("  addEdge(%d, %d)%n", ids1[i], ids2[i]);
+                        break;
+                    case Graph.traceRecorder.DELETE_NODE:
+                        System.out.printf("  deleteNode(%d)%n", ids1[i]);
+                        break;
+                    case Graph.traceRecorder.GET_NEIGHBORHOOD_WEIGHT:
+                        System.out.printf("  getNeighborhoodWeight(%d)%n", ids1[i]);
+                        break;
+                    default:
+                        System.out.printf("  maxNeighborhoodWeight()%n");
+                }
+            }
+        }
+
+        /**
+         * writes the case as a trace, by recording a graph while the operations of the case are applied to it.
+         */
+        private void writeTrace(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                Graph graph = newGraph();
+                graph.startRecording(channel);
+                try {
+                    workloadGenerator.apply(graph, ops, ids1, ids2, count);
+                } catch (RuntimeException e) {
+                    // the failure may well be an exception, the trace up to it is what matters
+                }
+                graph.stopRecording();
+            }
+        }
+    }
+
+
+    /**
+     * the reference oracle: the state of the graph kept by the straightforward definitions, in primitive arrays indexed by the dense index of every node.
+     */
+    private static class oracle {
+        private final intIndex indices;
+        private final int[] weights;
+        private final long[] neighborhood;
+        private final boolean[] alive;
+        private final int[][] adjacency;
+        private final int[] degrees;
+        // a segment tree of the neighborhood weights of the living nodes (Long.MIN_VALUE for the deleted ones), with the leaves at [leaves, 2 * leaves)
+        private final long[] tree;
+        private final int leaves;
+        private int numNodes;
+        private int numEdges = 0;
+
+        private oracle(int[] ids, int[] weights) {
+            int n = ids.length;
+            indices = new intIndex(n);
+            this.weights = weights;
+            neighborhood = new long[n];
+            alive = new boolean[n];
+            adjacency = new int[n][];
+            degrees = new int[n];
+            leaves = Integer.highestOneBit(Math.max(1, n - 1)) << 1;
+            tree = new long[2 * leaves];
+            Arrays.fill(tree, Long.MIN_VALUE);
+            for (int i = 0; i < n; i++) {
+                indices.putIfAbsent(ids[i], i);
+                neighborhood[i] = weights[i];
+                alive[i] = true;
+                adjacency[i] = new int[2];
+                tree[leaves + i] = weights[i];
+            }
+            for (int i = leaves - 1; i >= 1; i--) {
+                tree[i] = Math.max(tree[2 * i], tree[2 * i + 1]);
+            }
+            numNodes = n;
+        }
+
+        private int living(int id) {
+            int i = indices.get(id);
+            return i >= 0 && alive[i] ? i : -1;
+        }
+
+        private boolean addEdge(int id1, int id2) {
+            int i = living(id1);
+            int j = living(id2);
+            if (i < 0 || j < 0 || i == j) {
+                return false;
+            }
+            link(i, j);
+            link(j, i);
+            numEdges++;
+            return true;
+        }
+
+        private void link(int i, int j) {
+            if (degrees[i] == adjacency[i].length) {
+                adjacency[i] = Arrays.copyOf(adjacency[i], 2 * degrees[i]);
+            }
+            adjacency[i][degrees[i]++] = j;
+            neighborhood[i] += weights[j];
+            update(i, neighborhood[i]);
+        }
+
+        private boolean deleteNode(int id) {
+            int i = living(id);
+            if (i < 0) {
+                return false;
+            }
+            alive[i] = false;
+            update(i, Long.MIN_VALUE);
+            for (int k = 0; k < degrees[i]; k++) {
+                int j = adjacency[i][k];
+                if (alive[j]) {
+                    neighborhood[j] -= weights[i];
+                    update(j, neighborhood[j]);
+                    numEdges--;
+                }
+            }
+            adjacency[i] = null;
+            numNodes--;
+            return true;
+        }
+
+        private long neighborhoodWeight(int id) {
+            int i = living(id);
+            return i < 0 ? -1 : neighborhood[i];
+        }
+
+        private long maxNeighborhoodWeight() {
+            return numNodes == 0 ? -1 : tree[1];
+        }
+
+        private void update(int i, long value) {
+            int pos = leaves + i;
+            tree[pos] = value;
+            for (pos >>>= 1; pos >= 1; pos >>>= 1) {
+                tree[pos] = Math.max(tree[2 * pos], tree[2 * pos + 1]);
+            }
+        }
+    }
+
+
+    /**
+     * a primitive map from int keys to non-negative int values, by open addressing with linear probing.
+     */
+    private static class intIndex {
+        private final int[] keys;
+        private final int[] values;
+        private final int mask;
+
+        private intIndex(int capacity) {
+            int length = Integer.highestOneBit(Math.max(2, 2 * capacity - 1)) << 1;
+            keys = new int[length];
+            values = new int[length];
+            Arrays.fill(values, -1);
+            mask = length - 1;
+        }
+
+        private int slot(int key) {
+            int hash = key * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (values[slot] >= 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void putIfAbsent(int key, int value) {
+            int slot = slot(key);
+            if (values[slot] < 0) {
+                keys[slot] = key;
+                values[slot] = value;
+            }
+        }
+
+        /**
+         * @return the value of the key, or -1 if it isn't in the map
+         */
+        private int get(int key) {
+            return values[slot(key)];
+        }
+    }
+}
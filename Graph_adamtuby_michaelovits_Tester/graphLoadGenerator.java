@@ -0,0 +1,148 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * a load generator for graphServer: every connection keeps a window of pipelined requests in flight (a mix of 70% addEdge of distinct edges, 1% deleteNode,
+ * 24% getNeighborhoodWeight and 5% maxNeighborhoodWeight on random ids), and the generator reports the throughput and the latency percentiles of the requests.
+ * <p>
+ * usage: graphLoadGenerator [tcp host:port | unix path | embedded] [connections] [pipeline depth] [requests per connection] [n]
+ * with 'embedded' (the default), a graphServer of n nodes is started in this process, on a loopback port.
+ * </p>
+ */
+public class graphLoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        String transport = args.length > 0 ? args[0] : "embedded";
+        int offset = transport.equals("embedded") ? 1 : 2;
+        int connectionsAmount = args.length > offset ? Integer.parseInt(args[offset]) : 4;
+        int depth = args.length > offset + 1 ? Integer.parseInt(args[offset + 1]) : 64;
+        int requestsPerConnection = args.length > offset + 2 ? Integer.parseInt(args[offset + 2]) : 500000;
+        int n = args.length > offset + 3 ? Integer.parseInt(args[offset + 3]) : 1 << 20;
+
+        graphServer embedded = null;
+        SocketAddress address;
+        if (transport.equals("unix")) {
+            address = UnixDomainSocketAddress.of(Path.of(args[1]));
+        } else if (transport.equals("tcp")) {
+            String[] hostPort = args[1].split(":");
+            address = new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1]));
+        } else {
+            Random rand = new Random(1);
+            Graph.Node[] nodes = new Graph.Node[n];
+            for (int j = 1; j <= n; j++) {
+                nodes[j-1] = new Graph.Node(j, rand.nextInt(100) + 1);
+            }
+            embedded = new graphServer(new Graph(nodes), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            address = embedded.getAddress();
+        }
+
+        long[][] latencies = new long[connectionsAmount][];
+        Thread[] clients = new Thread[connectionsAmount];
+        final SocketAddress target = address;
+        final int nodesAmount = n;
+        long start = System.nanoTime();
+        for (int c = 0; c < connectionsAmount; c++) {
+            final int client = c;
+            clients[c] = new Thread(() -> latencies[client] = runConnection(target, depth, requestsPerConnection, nodesAmount, client, connectionsAmount));
+            clients[c].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] all = new long[connectionsAmount * requestsPerConnection];
+        for (int c = 0; c < connectionsAmount; c++) {
+            System.arraycopy(latencies[c], 0, all, c * requestsPerConnection, requestsPerConnection);
+        }
+        Arrays.sort(all);
+        System.out.printf("%d connections x %d in flight, %d requests: %.2f M requests/s%n", connectionsAmount, depth, all.length, all.length * 1000.0 / elapsed);
+        System.out.printf("latency p50 = %.1f us, p99 = %.1f us, p99.9 = %.1f us, max = %.1f us%n",
+                percentile(all, 0.5) / 1000.0, percentile(all, 0.99) / 1000.0, percentile(all, 0.999) / 1000.0, all[all.length - 1] / 1000.0);
+        if (embedded != null) {
+            embedded.close();
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+
+    /**
+     * the edge of the given index. different indices give different edges, as long as index < n * (n/2 - 1): the index picks the node
+     * (scattered by a multiplication by a prime modulo n) and the distance to the other node along 1..n.
+     */
+    private static long edge(long index, int n) {
+        long u = (index % n) * 2654435761L % n;
+        long v = (u + index / n + 1) % n;
+        return (u + 1) << 32 | (v + 1);
+    }
+
+    /**
+     * sends the requests of a single connection, keeping up to 'depth' of them in flight: whenever responses arrive, as many new requests are sent.
+     * the responses come in the order of the requests, so the send time of every request is kept in a ring of 'depth' slots.
+     * @return the latency of every request, in nanoseconds
+     */
+    private static long[] runConnection(SocketAddress address, int depth, int requests, int n, int client, int clientsAmount) {
+        Random rand = new Random(client + 1);
+        long addedEdges = 0;
+        long[] latencies = new long[requests];
+        long[] sentAt = new long[depth];
+        ByteBuffer out = ByteBuffer.allocateDirect(depth * 13);
+        ByteBuffer in = ByteBuffer.allocateDirect(depth * graphServer.RESPONSE_SIZE);
+        try (SocketChannel channel = address instanceof UnixDomainSocketAddress ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open()) {
+            channel.connect(address);
+            int sent = 0;
+            int received = 0;
+            while (received < requests) {
+                out.clear();
+                while (sent < requests && sent - received < depth) {
+                    int kind = rand.nextInt(100);
+                    if (kind < 70) { // the clients take turns on the edge indices, so no edge is added twice
+                        long edge = edge(addedEdges++ * clientsAmount + client, n);
+                        out.putInt(9).put(graphServer.ADD_EDGE).putInt((int) (edge >>> 32)).putInt((int) edge);
+                    } else if (kind < 71) {
+                        out.putInt(5).put(graphServer.DELETE_NODE).putInt(rand.nextInt(n) + 1);
+                    } else if (kind < 95) {
+                        out.putInt(5).put(graphServer.GET_NEIGHBORHOOD_WEIGHT).putInt(rand.nextInt(n) + 1);
+                    } else {
+                        out.putInt(1).put(graphServer.MAX_NEIGHBORHOOD_WEIGHT);
+                    }
+                    sentAt[sent % depth] = System.nanoTime();
+                    sent++;
+                }
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                if (channel.read(in) < 0) {
+                    throw new IllegalStateException("the server closed the connection");
+                }
+                in.flip();
+                long now = System.nanoTime();
+                while (in.remaining() >= graphServer.RESPONSE_SIZE) {
+                    in.getInt();
+                    if (in.get() == graphServer.ERROR) {
+                        throw new IllegalStateException("the server rejected a request");
+                    }
+                    in.getInt();
+                    in.getInt();
+                    latencies[received] = now - sentAt[received % depth];
+                    received++;
+                }
+                in.compact();
+            }
+        } catch (java.io.IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return latencies;
+    }
+}
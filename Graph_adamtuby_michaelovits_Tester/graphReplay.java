@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * replays a trace written by Graph.startRecording against a fresh graph, as fast as possible, and reports the throughput, the latency percentiles of every
+ * kind of operation, and the state checksum of the graph at the end of the trace (compared to the one the recorded graph had, when the trace has it).
+ * <p>
+ * usage: graphReplay [trace file]
+ * </p>
+ */
+public class graphReplay {
+
+    private static final String[] OP_NAMES = {"end", "addEdge", "deleteNode", "getNeighborhoodWeight", "maxNeighborhoodWeight", "getNumNodes", "getNumEdges", "addEdge (expiring)", "expireEdges"};
+
+    public static void main(String[] args) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(args[0]), StandardOpenOption.READ)) {
+            traceInput in = new traceInput(channel);
+
+            // building the graph of the header. its edges are part of the state the trace started from, so they aren't timed
+            in.ensure(5);
+            if (in.buffer.getInt() != Graph.traceRecorder.MAGIC) {
+                throw new IllegalStateException(args[0] + " is not a graph trace");
+            }
+            Graph.heapKind kind = Graph.heapKind.values()[in.buffer.get()];
+            Graph.Node[] nodes = new Graph.Node[in.nextInt()];
+            for (int j = 0; j < nodes.length; j++) {
+                int id = in.nextInt();
+                nodes[j] = new Graph.Node(id, in.nextInt());
+            }
+            Graph graph = new Graph(nodes, kind);
+            int initialEdges = in.nextInt();
+            for (int k = 0; k < initialEdges; k++) {
+                graph.addEdge(in.nextInt(), in.nextInt());
+            }
+
+            latencyHistogram[] histograms = new latencyHistogram[OP_NAMES.length];
+            for (int op = 0; op < OP_NAMES.length; op++) {
+                histograms[op] = new latencyHistogram();
+            }
+            long sink = 0; // keeps the results of the queries alive
+            long recordedChecksum = 0;
+            boolean ended = false;
+            long operations = 0;
+            long start = System.nanoTime();
+            while (in.ensure(Graph.traceRecorder.MAX_RECORD_SIZE + 8)) {
+                byte op = in.buffer.get();
+                if (op == Graph.traceRecorder.END) {
+                    recordedChecksum = in.buffer.getLong();
+                    ended = true;
+                    break;
+                }
+                long before;
+                switch (op) {
+                    case Graph.traceRecorder.ADD_EDGE: {
+                        int id1 = in.nextInt();
+                        int id2 = in.nextInt();
+                        before = System.nanoTime();
+                        sink += graph.addEdge(id1, id2) ? 1 : 0;
+                        break;
+                    }
+                    case Graph.traceRecorder.DELETE_NODE: {
+                        int id = in.nextInt();
+                        before = System.nanoTime();
+                        sink += graph.deleteNode(id) ? 1 : 0;
+                        break;
+                    }
+                    case Graph.traceRecorder.GET_NEIGHBORHOOD_WEIGHT: {
+                        int id = in.nextInt();
+                        before = System.nanoTime();
+                        sink += graph.getNeighborhoodWeight(id);
+                        break;
+                    }
+                    case Graph.traceRecorder.MAX_NEIGHBORHOOD_WEIGHT: {
+                        before = System.nanoTime();
+                        Graph.Node max = graph.maxNeighborhoodWeight();
+                        sink += max == null ? 0 : max.getId();
+                        break;
+                    }
+                    case Graph.traceRecorder.GET_NUM_NODES:
+                        before = System.nanoTime();
+                        sink += graph.getNumNodes();
+                        break;
+                    case Graph.traceRecorder.GET_NUM_EDGES:
+                        before = System.nanoTime();
+                        sink += graph.getNumEdges();
+                        break;
+                    case Graph.traceRecorder.ADD_EXPIRING_EDGE: {
+                        int id1 = in.nextInt();
+                        int id2 = in.nextInt();
+                        long expiresAt = in.buffer.getLong();
+                        before = System.nanoTime();
+                        sink += graph.addEdge(id1, id2, expiresAt) ? 1 : 0;
+                        break;
+                    }
+                    case Graph.traceRecorder.EXPIRE_EDGES: {
+                        long now = in.buffer.getLong();
+                        before = System.nanoTime();
+                        sink += graph.expireEdges(now);
+                        break;
+                    }
+                    default:
+                        throw new IllegalStateException("unknown op " + op + " in the trace");
+                }
+                histograms[op].add(System.nanoTime() - before);
+                operations++;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%d nodes, %d initial edges, %d operations in %.3f s: %.2f M ops/s%n",
+                    nodes.length, initialEdges, operations, elapsed / 1e9, operations * 1000.0 / elapsed);
+            for (int op = 1; op < OP_NAMES.length; op++) {
+                latencyHistogram h = histograms[op];
+                if (h.count > 0) {
+                    System.out.printf("%-22s %10d ops   p50 %8d ns   p99 %8d ns   p99.9 %8d ns   max %10d ns%n",
+                            OP_NAMES[op], h.count, h.percentile(0.5), h.percentile(0.99), h.percentile(0.999), h.max);
+                }
+            }
+            long checksum = graph.stateChecksum();
+            if (ended) {
+                System.out.printf("state checksum %016x, recorded %016x: %s%n", checksum, recordedChecksum, checksum == recordedChecksum ? "match" : "MISMATCH");
+            } else {
+                System.out.printf("state checksum %016x (the trace has no end record)%n", checksum);
+            }
+            System.out.printf("(result sink %d)%n", sink);
+        }
+    }
+
+
+    /**
+     * reads a trace through a fixed buffer, refilled from the channel whenever it runs low.
+     */
+    private static class traceInput {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        private boolean eof = false;
+
+        private traceInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        /**
+         * makes sure that the buffer holds at least 'bytes' bytes, or whatever is left of the trace.
+         * @return 'false' if nothing is left of the trace
+         */
+        private boolean ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes && !eof) {
+                buffer.compact();
+                while (buffer.position() < bytes && !eof) {
+                    eof = channel.read(buffer) < 0;
+                }
+                buffer.flip();
+            }
+            return buffer.hasRemaining();
+        }
+
+        private int nextInt() throws IOException {
+            ensure(5);
+            return Graph.traceRecorder.getInt(buffer);
+        }
+    }
+
+
+    /**
+     * a histogram of latencies in log-linear buckets: 16 buckets per power of two, so a percentile is reported within ~6% of the real latency, in fixed memory.
+     */
+    private static class latencyHistogram {
+        private final long[] buckets = new long[64 * 16];
+        private long count = 0;
+        private long max = 0;
+
+        private void add(long nanos) {
+            long value = Math.max(1, nanos);
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = exponent < 4 ? (int) (value & 15) : (int) ((value >>> (exponent - 4)) & 15);
+            buckets[exponent * 16 + sub]++;
+            count++;
+            max = Math.max(max, value);
+        }
+
+        /**
+         * @return the lower bound of the bucket that holds the latency of the given percentile
+         */
+        private long percentile(double p) {
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    int exponent = i / 16;
+                    int sub = i % 16;
+                    return exponent < 4 ? sub : (16L + sub) << (exponent - 4);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * an embedded server of a Graph, on a loopback port or on a Unix domain socket, that speaks a compact length-prefixed binary protocol.
+ * <p>
+ * every request is a frame of [int length][byte op][int args...], where length is the amount of bytes after it:
+ * ADD_EDGE (id1, id2), DELETE_NODE (id), GET_NEIGHBORHOOD_WEIGHT (id) and MAX_NEIGHBORHOOD_WEIGHT ().
+ * every response is a frame of [int length][byte op][int value][int value2], sent in the order of the requests of the connection:
+ * ADD_EDGE and DELETE_NODE answer 1 or 0 (like the boolean the Graph returns), GET_NEIGHBORHOOD_WEIGHT answers the weight (or -1), and
+ * MAX_NEIGHBORHOOD_WEIGHT answers the id and the neighborhood weight of the maximum (or -1, -1 for an empty graph). a malformed request is answered with
+ * the op ERROR, after which the connection is closed.
+ * </p>
+ * <p>
+ * a client may send many requests without waiting for their responses (pipelining). the server decodes all of the requests that arrived on a connection,
+ * applies them to the graph as a single batch (under the graph's lock, between beginBatch() and endBatch()), and writes all of their responses at once.
+ * every connection is served by a virtual thread when the JVM supports them, and by a pooled platform thread otherwise.
+ * </p>
+ */
+public class graphServer implements AutoCloseable {
+
+    public static final byte ADD_EDGE = 1;
+    public static final byte DELETE_NODE = 2;
+    public static final byte GET_NEIGHBORHOOD_WEIGHT = 3;
+    public static final byte MAX_NEIGHBORHOOD_WEIGHT = 4;
+    public static final byte ERROR = -1;
+    // the size of a response frame, including its length prefix
+    public static final int RESPONSE_SIZE = 4 + 1 + 4 + 4;
+    // the maximal amount of requests that are decoded from a connection into a single batch
+    private static final int MAX_BATCH = 4096;
+
+    private final Graph graph;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService connections;
+    private final Thread acceptor;
+    private volatile boolean closed = false;
+
+    /**
+     * starts serving the given graph on the given address: an InetSocketAddress for TCP (normally a loopback one), or a UnixDomainSocketAddress.
+     * @param graph - the served graph. while it is served, it must be accessed only by synchronizing on it
+     * @param address - the address to bind. a Unix domain socket file that already exists is replaced
+     */
+    public graphServer(Graph graph, SocketAddress address) throws IOException {
+        this.graph = graph;
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            serverChannel = ServerSocketChannel.open();
+        }
+        serverChannel.bind(address);
+        connections = newConnectionExecutor();
+        acceptor = new Thread(this::acceptLoop, "graph-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return the address the server is bound to (with the actual port, if port 0 was asked for)
+     */
+    public SocketAddress getAddress() throws IOException {
+        return serverChannel.getLocalAddress();
+    }
+
+    /**
+     * stops accepting connections and closes the open ones.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverChannel.close();
+        connections.shutdownNow();
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * a virtual thread per connection when the JVM has them (Java 21 and on), otherwise a cached pool of platform threads.
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "graph-server-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                connections.execute(() -> serve(channel));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * serves a single connection until the client closes it: reads whatever arrived, applies the complete requests as a batch, and answers them.
+     */
+    private void serve(SocketChannel channel) {
+        ByteBuffer in = ByteBuffer.allocateDirect(1 << 16);
+        ByteBuffer out = ByteBuffer.allocateDirect(MAX_BATCH * RESPONSE_SIZE);
+        // the decoded requests of the current batch: op, arg1, arg2 for every request
+        int[] requests = new int[3 * MAX_BATCH];
+        int[] results = new int[2 * MAX_BATCH];
+        try (channel) {
+            boolean moreBuffered = false;
+            while (moreBuffered || channel.read(in) >= 0) {
+                in.flip();
+                boolean malformed = false;
+                int count = 0;
+                while (count < MAX_BATCH && in.remaining() >= 4) {
+                    int length = in.getInt(in.position());
+                    if (length != 1 && length != 5 && length != 9) { // no request has another length
+                        malformed = true;
+                        break;
+                    }
+                    if (in.remaining() < 4 + length) { // the rest of the frame didn't arrive yet
+                        break;
+                    }
+                    in.getInt();
+                    byte op = in.get();
+                    int expected = op == ADD_EDGE ? 9 : op == DELETE_NODE || op == GET_NEIGHBORHOOD_WEIGHT ? 5 : op == MAX_NEIGHBORHOOD_WEIGHT ? 1 : -1;
+                    if (length != expected) {
+                        malformed = true;
+                        break;
+                    }
+                    requests[3 * count] = op;
+                    requests[3 * count + 1] = length >= 5 ? in.getInt() : 0;
+                    requests[3 * count + 2] = length == 9 ? in.getInt() : 0;
+                    count++;
+                }
+                // a full batch may leave complete requests in the buffer, which must be served without waiting for more bytes
+                moreBuffered = count == MAX_BATCH && in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position());
+                in.compact();
+
+                apply(requests, results, count);
+                out.clear();
+                for (int i = 0; i < count; i++) {
+                    out.putInt(RESPONSE_SIZE - 4).put((byte) requests[3 * i]).putInt(results[2 * i]).putInt(results[2 * i + 1]);
+                }
+                if (malformed) {
+                    out.putInt(RESPONSE_SIZE - 4).put(ERROR).putInt(0).putInt(0);
+                }
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                if (malformed) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // the client went away, nothing to answer
+        }
+    }
+
+    /**
+     * applies a batch of decoded requests to the graph, under its lock.
+     */
+    private void apply(int[] requests, int[] results, int count) {
+        if (count == 0) {
+            return;
+        }
+        synchronized (graph) {
+            graph.beginBatch();
+            try {
+                for (int i = 0; i < count; i++) {
+                    int a = requests[3 * i + 1];
+                    int b = requests[3 * i + 2];
+                    results[2 * i + 1] = 0;
+                    switch (requests[3 * i]) {
+                        case ADD_EDGE:
+                            results[2 * i] = graph.addEdge(a, b) ? 1 : 0;
+                            break;
+                        case DELETE_NODE:
+                            results[2 * i] = graph.deleteNode(a) ? 1 : 0;
+                            break;
+                        case GET_NEIGHBORHOOD_WEIGHT:
+                            results[2 * i] = graph.getNeighborhoodWeight(a);
+                            break;
+                        default: // MAX_NEIGHBORHOOD_WEIGHT
+                            Graph.Node max = graph.maxNeighborhoodWeight();
+                            results[2 * i] = max == null ? -1 : max.getId();
+                            results[2 * i + 1] = max == null ? -1 : max.getVicinityWeight();
+                    }
+                }
+            } finally {
+                graph.endBatch();
+            }
+        }
+    }
+
+    /**
+     * serves a graph of n nodes (ids 1..n, random weights) until the process is killed.
+     * usage: graphServer tcp [port] [n]  |  graphServer unix [socket path] [n]
+     */
+    public static void main(String[] args) throws Exception {
+        String transport = args.length > 0 ? args[0] : "tcp";
+        int n = args.length > 2 ? Integer.parseInt(args[2]) : 1 << 20;
+        SocketAddress address = transport.equals("unix")
+                ? UnixDomainSocketAddress.of(Path.of(args.length > 1 ? args[1] : "/tmp/graph.sock"))
+                : new InetSocketAddress(InetAddress.getLoopbackAddress(), args.length > 1 ? Integer.parseInt(args[1]) : 7070);
+        Random rand = new Random(1);
+        Graph.Node[] nodes = new Graph.Node[n];
+        for (int j = 1; j <= n; j++) {
+            nodes[j-1] = new Graph.Node(j, rand.nextInt(100) + 1);
+        }
+        graphServer server = new graphServer(new Graph(nodes), address);
+        System.out.printf("serving %d nodes on %s%n", n, server.getAddress());
+        Thread.currentThread().join();
+    }
+}
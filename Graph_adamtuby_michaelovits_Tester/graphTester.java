@@ -1,35 +1,50 @@
 
-import javafx.util.Pair;
-
 import java.util.*;
 
 public class graphTester {
 
     public Graph G;
     public int N;
-    public Set<Integer> nodesIds;
-    public Map<Integer, Integer> nodesWeights;
-    public Set<Pair<Integer, Integer>> edges;
+    // the ids of the nodes that are still in the graph are nodesIds[0..numNodes-1]. a deleted node is swapped with the last one
+    public int[] nodesIds;
+    // the index of every node (by its id) in the arrays below, which never changes
+    public Map<Integer, Integer> nodesIndices;
+    public int[] nodesWeights;
+    public long[] neighborhoodWeights;
+    // the position of every node in nodesIds, or -1 once it was deleted
+    private int[] positions;
+    // the Neighbors of every node (by their indices), as a growable array. the Neighbors of a node are subtracted from when it is deleted
+    private int[][] neighbors;
+    private int[] degrees;
+    // the edges of the graph, as min(index1, index2) << 32 | max(index1, index2)
+    public Set<Long> edges;
     public int numNodes;
     public int numEdges;
-    public Map<Integer, Integer> neighborhoodWeights;
     public Random rnd = new Random();
 
     public graphTester(int N)
     {
         this.N = N;
         Graph.Node[] nodes = new Graph.Node[N];
-        nodesIds = new HashSet<>();
-        nodesWeights = new HashMap<>();
-        neighborhoodWeights = new HashMap<>();
+        nodesIds = new int[N];
+        nodesIndices = new HashMap<>();
+        nodesWeights = new int[N];
+        neighborhoodWeights = new long[N];
+        positions = new int[N];
+        neighbors = new int[N][];
+        degrees = new int[N];
+        int idsRange = Math.max(100000, 4 * N);
         for(int i=0;i<N;i++)
         {
             int id;
-            do { id = Math.abs(rnd.nextInt(100000)); } while(nodesIds.contains(id));
-            int weight = Math.abs(rnd.nextInt(100000));
-            nodesIds.add(id);
-            nodesWeights.put(id, weight);
-            neighborhoodWeights.put(id, weight);
+            do { id = rnd.nextInt(idsRange); } while(nodesIndices.containsKey(id));
+            int weight = rnd.nextInt(100000);
+            nodesIds[i] = id;
+            nodesIndices.put(id, i);
+            nodesWeights[i] = weight;
+            neighborhoodWeights[i] = weight;
+            positions[i] = i;
+            neighbors[i] = new int[4];
             nodes[i] = new Graph.Node(id, weight);
         }
         this.G = new Graph(nodes);
@@ -38,73 +53,86 @@ public class graphTester {
         this.numEdges = 0;
     }
 
+    private static long edgeKey(int i1, int i2)
+    {
+        return (long) Math.min(i1, i2) << 32 | Math.max(i1, i2);
+    }
+
     public boolean addEdge(int v1, int v2)
     {
-        if(edges.contains(new Pair<Integer, Integer>(v1, v2)))
+        Integer i1 = nodesIndices.get(v1);
+        Integer i2 = nodesIndices.get(v2);
+        if(i1 == null || i2 == null || positions[i1] < 0 || positions[i2] < 0 || v1 == v2 || !edges.add(edgeKey(i1, i2)))
         {
             return false;
         }
         G.addEdge(v1, v2);
-        neighborhoodWeights.replace(v1, neighborhoodWeights.get(v1) + nodesWeights.get(v2));
-        neighborhoodWeights.replace(v2, neighborhoodWeights.get(v2) + nodesWeights.get(v1));
+        neighborhoodWeights[i1] += nodesWeights[i2];
+        neighborhoodWeights[i2] += nodesWeights[i1];
+        addNeighbor(i1, i2);
+        addNeighbor(i2, i1);
+        numEdges++;
         return true;
     }
 
+    private void addNeighbor(int i, int neighbor)
+    {
+        if(degrees[i] == neighbors[i].length)
+        {
+            neighbors[i] = Arrays.copyOf(neighbors[i], 2 * degrees[i]);
+        }
+        neighbors[i][degrees[i]++] = neighbor;
+    }
+
     public boolean deleteNode(int v)
     {
-        if(!nodesIds.contains(v))
+        Integer i = nodesIndices.get(v);
+        if(i == null || positions[i] < 0)
         {
             return false;
         }
         G.deleteNode(v);
-        neighborhoodWeights.replaceAll((u, Sw) -> edges.contains(new Pair<>(v,u)) ? Sw - nodesWeights.get(u) : Sw);
-        edges.removeIf(p -> p.getKey() == v || p.getValue() == v);
-        nodesIds.remove(v);
-        nodesWeights.remove(v);
-        numNodes = nodesIds.size();
-        numEdges = edges.size();
+        // only the Neighbors of the deleted node change, so only they are updated - O(deg(v))
+        for(int k = 0; k < degrees[i]; k++)
+        {
+            int u = neighbors[i][k];
+            if(positions[u] >= 0)
+            {
+                neighborhoodWeights[u] -= nodesWeights[i];
+                edges.remove(edgeKey(i, u));
+                numEdges--;
+            }
+        }
+        neighbors[i] = null;
+        degrees[i] = 0;
+        int last = nodesIds[--numNodes];
+        nodesIds[positions[i]] = last;
+        positions[nodesIndices.get(last)] = positions[i];
+        positions[i] = -1;
         return true;
     }
 
     public void randomEdges(int amount)
     {
-        Integer[] idsArr = nodesIds.toArray(new Integer[numNodes]);
         for(int i=0;i<amount;i++)
         {
             int v1, v2;
 
             do {
-                v1 = idsArr[rnd.nextInt(numNodes)];
-                v2 = idsArr[rnd.nextInt(numNodes)];
-            } while(v1 == v2 || edges.contains(new Pair<>(v1, v2)));
+                v1 = nodesIds[rnd.nextInt(numNodes)];
+                v2 = nodesIds[rnd.nextInt(numNodes)];
+            } while(v1 == v2 || edges.contains(edgeKey(nodesIndices.get(v1), nodesIndices.get(v2))));
             this.addEdge(v1, v2);
         }
-        assert !verifyAll();
+        assert verifyAll();
     }
 
     public void randomDeletions(int amount)
     {
-        HashSet<Integer> deletionIndicesSet = new HashSet<>();
-        int[] deletionIndices = new int[amount];
-        while(deletionIndicesSet.size() < amount)
-        {
-            int index;
-            do {
-                index = rnd.nextInt(numNodes);
-            } while(deletionIndicesSet.contains(index));
-            deletionIndicesSet.add(index);
-            deletionIndices[deletionIndicesSet.size()-1] = index;
-        }
         for(int i=0 ; i<amount ; i++) {
-            int counter = 0;
-            for (int v : nodesIds.toArray(new Integer[numNodes])) {
-                if (counter == deletionIndices[i]) {
-                    this.deleteNode(v);
-                }
-                counter++;
-            }
+            this.deleteNode(nodesIds[rnd.nextInt(numNodes)]);
         }
-        assert !verifyAll();
+        assert verifyAll();
     }
 
     public void randomOperations(int amount) // not so random, but kinda...
@@ -115,19 +143,19 @@ public class graphTester {
         randomDeletions(2*amount/3 - amount/2);
         randomEdges(5*amount/6 - 2*amount/3);
         randomDeletions(amount - 5*amount/6);
-        assert !verifyAll();
+        assert verifyAll();
     }
 
     public void deleteOneByOne()
     {
         this.randomDeletions(numNodes);
-        assert numNodes != 0;
+        assert numNodes == 0;
     }
 
     public void addAllEdgesOneByOne()
     {
         randomEdges(numNodes*(numNodes-1)/2-numEdges);
-        assert numEdges != numNodes*(numNodes-1)/2;
+        assert numEdges == numNodes*(numNodes-1)/2;
     }
 
     public boolean verifyAll()
@@ -147,15 +175,14 @@ public class graphTester {
 
     public boolean verifyMaximum()
     {
-        int maxNeighborhoodWeightNode = 0;
-        for(Integer v : nodesIds)
+        // ties between nodes are broken by the heap, so the neighborhood weight of the maximum is what is compared
+        long maxNeighborhoodWeight = -1;
+        for(int k = 0; k < numNodes; k++)
         {
-            if(neighborhoodWeights.get(v) > neighborhoodWeights.get(maxNeighborhoodWeightNode))
-            {
-                maxNeighborhoodWeightNode = v;
-            }
+            maxNeighborhoodWeight = Math.max(maxNeighborhoodWeight, neighborhoodWeights[nodesIndices.get(nodesIds[k])]);
         }
-        if(maxNeighborhoodWeightNode != G.maxNeighborhoodWeight().getId())
+        Graph.Node max = G.maxNeighborhoodWeight();
+        if(maxNeighborhoodWeight != (max == null ? -1 : max.getVicinityWeight()))
         {
             System.out.println("ERR - Maximum");
             int a = 1/0;
@@ -165,11 +192,59 @@ public class graphTester {
     }
 
 
+    /**
+     * runs the tests, or - when given the names of measurements (like "java graphTester twoHop") - runs those measurements instead.
+     */
     public static void main(String[] args){
+        for (String measurement : args) {
+            switch (measurement) {
+                case "twoHop":
+                    twoHopMeasurements();
+                    break;
+                case "rank":
+                    rankMeasurements();
+                    break;
+                case "sharded":
+                    shardedMeasurements();
+                    break;
+                case "queue":
+                    queueMeasurements();
+                    break;
+                case "bulk":
+                    bulkMeasurements();
+                    break;
+                case "memory":
+                    memoryMeasurements();
+                    break;
+                case "workload":
+                    workloadMeasurements();
+                    break;
+                case "verify":
+                    verifyMeasurements();
+                    break;
+                case "dictionary":
+                    dictionaryMeasurements();
+                    break;
+                case "expiry":
+                    expiryMeasurements();
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown measurement: " + measurement);
+            }
+        }
+        if (args.length > 0) {
+            return;
+        }
 //        measurements();
         whatsappTest();
         firstTest();
         secondTest();
+        forkTest();
+        dictionaryTest();
+        expiryTest();
+        memoryBudgetTest();
+        twoHopTest();
+        kernelsTest();
     }
 
 
@@ -219,6 +294,700 @@ public class graphTester {
 
 
 
+    /**
+     * generates a power-law graph on the vertices 1..n by preferential attachment: every new edge picks its second endpoint
+     * proportionally to the current degrees, by sampling a uniformly random endpoint of an earlier edge.
+     * @return the edges as pairs of ids: edges[2*k], edges[2*k+1]
+     */
+    private static int[] powerLawEdges(int n, int edgesAmount, Random rand){
+        int[] edges = new int[2*edgesAmount];
+        Set<Long> taken = new HashSet<>();
+        int k = 0;
+        while (k < edgesAmount) {
+            int x = rand.nextInt(n) + 1;
+            int y = k == 0 || rand.nextInt(4) == 0 ? rand.nextInt(n) + 1 : edges[rand.nextInt(2*k)];
+            long key = (long)Math.min(x, y) << 32 | Math.max(x, y);
+            if (x != y && taken.add(key)) {
+                edges[2*k] = x;
+                edges[2*k+1] = y;
+                k++;
+            }
+        }
+        return edges;
+    }
+
+
+    /**
+     * the weight of the nodes within distance 2 of the given node, computed on demand with a BFS over the graph's Neighbors.
+     */
+    private static long twoHopByBFS(Graph g, int id, int[] weights, int[] mark, int stamp, int[] buf1, int[] buf2){
+        long sum = weights[id];
+        mark[id] = stamp;
+        int d1 = g.neighbors(id, buf1);
+        for (int i = 0; i < d1; i++) {
+            int u = buf1[i];
+            if (mark[u] != stamp) { mark[u] = stamp; sum += weights[u]; }
+        }
+        for (int i = 0; i < d1; i++) {
+            int d2 = g.neighbors(buf1[i], buf2);
+            for (int j = 0; j < d2; j++) {
+                int x = buf2[j];
+                if (mark[x] != stamp) { mark[x] = stamp; sum += weights[x]; }
+            }
+        }
+        return sum;
+    }
+
+
+    /**
+     * compares the cost of keeping the 2-hop index of the graph up to date against computing the heaviest 2-hop neighborhood on demand with a BFS per node,
+     * on power-law graphs of growing size, and checks that the two find the same maximum.
+     */
+    private static void twoHopMeasurements(){
+        Random rand = new Random(1);
+        for (int i = 10; i <= 16; i++){
+            int n = (int)Math.pow(2,i);
+            int[] weights = new int[n+1];
+            Graph.Node[] nodes = new Graph.Node[n];
+            Graph.Node[] indexedNodes = new Graph.Node[n];
+            for (int j = 1; j <= n; j++) {
+                weights[j] = rand.nextInt(100) + 1;
+                nodes[j-1] = new Graph.Node(j, weights[j]);
+                indexedNodes[j-1] = new Graph.Node(j, weights[j]);
+            }
+            int[] edges = powerLawEdges(n, 4*n, rand);
+
+            Graph plain = new Graph(nodes);
+            long start = System.nanoTime();
+            for (int k = 0; k < edges.length; k += 2) {
+                plain.addEdge(edges[k], edges[k+1]);
+            }
+            long plainAdd = System.nanoTime() - start;
+
+            Graph indexed = new Graph(indexedNodes);
+            indexed.enableTwoHopIndex();
+            start = System.nanoTime();
+            for (int k = 0; k < edges.length; k += 2) {
+                indexed.addEdge(edges[k], edges[k+1]);
+            }
+            long indexedAdd = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Graph.Node indexedMax = indexed.maxTwoHopNeighborhoodWeight();
+            long indexedQuery = System.nanoTime() - start;
+
+            int maxDegree = 0;
+            for (int j = 1; j <= n; j++) {
+                maxDegree = Math.max(maxDegree, plain.neighbors(j, new int[0]));
+            }
+            int[] mark = new int[n+1], buf1 = new int[maxDegree], buf2 = new int[maxDegree];
+            start = System.nanoTime();
+            long bfsMax = Long.MIN_VALUE;
+            for (int j = 1; j <= n; j++) {
+                bfsMax = Math.max(bfsMax, twoHopByBFS(plain, j, weights, mark, j, buf1, buf2));
+            }
+            long bfsQuery = System.nanoTime() - start;
+
+            long indexedWeight = indexed.getTwoHopNeighborhoodWeight(indexedMax.getId());
+            System.out.printf("%n" + "\033[1m" + "i = %d" + "\033[0m" + " (n = %d, m = %d, max degree = %d)%n", i, n, edges.length/2, maxDegree);
+            System.out.printf("addEdge without index: %8.1f ns/edge,  with 2-hop index: %8.1f ns/edge%n", (double)plainAdd/(edges.length/2), (double)indexedAdd/(edges.length/2));
+            System.out.printf("max 2-hop query - index: %d ns (node %d, weight %d),  BFS per node: %.2f ms (max %d)%n",
+                    indexedQuery, indexedMax.getId(), indexedWeight, bfsQuery/1e6, bfsMax);
+            expect(indexedWeight == bfsMax, "the 2-hop index found a maximum of " + indexedWeight + " instead of " + bfsMax);
+        }
+    }
+
+
+    /**
+     * runs random sequences of addEdge, addEdge with an expiration time, expireEdges and deleteNode on small graphs with the 2-hop index (enabled at a random
+     * point of every run, and rebuilt once in a while), in both deletion modes, and checks the 2-hop neighborhood weight of every node and the maximum
+     * against a BFS. the graphs are dense enough to be full of triangles and 4-cycles, and some of the runs use weights whose 2-hop sums don't fit in an int.
+     */
+    private static void twoHopTest(){
+        Random rand = new Random(1);
+        for (int run = 0; run < 40; run++) {
+            int n = 5 + rand.nextInt(40);
+            boolean heavy = run % 4 == 3;
+            int[] weights = new int[n + 1];
+            Graph.Node[] nodes = new Graph.Node[n];
+            for (int j = 1; j <= n; j++) {
+                weights[j] = heavy ? Integer.MAX_VALUE / 4 + rand.nextInt(1000) : rand.nextInt(100);
+                nodes[j-1] = new Graph.Node(j, weights[j]);
+            }
+            Graph graph = new Graph(nodes);
+            graph.setLazyDeletion(run % 2 == 1);
+            Set<Long> edges = new HashSet<>();
+            boolean[] deleted = new boolean[n + 1];
+            int enableAt = rand.nextInt(100);
+            int[] mark = new int[n + 1], buf1 = new int[n], buf2 = new int[n];
+            int stamp = 0;
+            long now = 0;
+            for (int k = 0; k < 400; k++) {
+                if (k == enableAt) {
+                    graph.enableTwoHopIndex();
+                } else if (k > enableAt && rand.nextInt(100) == 0) {
+                    graph.disableTwoHopIndex();
+                    graph.enableTwoHopIndex();
+                }
+                int op = rand.nextInt(100);
+                if (op < 70) {
+                    int u = rand.nextInt(n) + 1;
+                    int v = rand.nextInt(n) + 1;
+                    if (u == v || deleted[u] || deleted[v] || !edges.add(edgeKey(u, v))) {
+                        continue;
+                    }
+                    boolean added = rand.nextBoolean() ? graph.addEdge(u, v) : graph.addEdge(u, v, now + 1 + rand.nextInt(50));
+                    expect(added, "addEdge(" + u + ", " + v + ") failed");
+                } else if (op < 75) {
+                    int u = rand.nextInt(n) + 1;
+                    graph.deleteNode(u);
+                    deleted[u] = true;
+                    edges.removeIf(key -> key >>> 32 == u || (int) (long) key == u);
+                } else {
+                    now += rand.nextInt(10);
+                    graph.expireEdges(now);
+                    edges.removeIf(key -> !isNeighbor(graph, (int) (key >>> 32), (int) (long) key, buf1));
+                }
+                if (k < enableAt) {
+                    continue;
+                }
+                long max = Long.MIN_VALUE;
+                for (int j = 1; j <= n; j++) {
+                    if (deleted[j]) {
+                        continue;
+                    }
+                    long expected = twoHopByBFS(graph, j, weights, mark, ++stamp, buf1, buf2);
+                    expect(graph.getTwoHopNeighborhoodWeight(j) == expected, "the 2-hop neighborhood weight of node " + j + " is "
+                            + graph.getTwoHopNeighborhoodWeight(j) + " instead of " + expected + " (run " + run + ", step " + k + ")");
+                    max = Math.max(max, expected);
+                }
+                Graph.Node maxNode = graph.maxTwoHopNeighborhoodWeight();
+                expect(maxNode == null ? max == Long.MIN_VALUE : graph.getTwoHopNeighborhoodWeight(maxNode.getId()) == max,
+                        "maxTwoHopNeighborhoodWeight() disagrees with the BFS maximum " + max + " (run " + run + ", step " + k + ")");
+            }
+        }
+        System.out.println("2-hop test ended");
+    }
+
+
+    /**
+     * @return whether v is among the Neighbors of u
+     */
+    private static boolean isNeighbor(Graph graph, int u, int v, int[] buf){
+        int count = graph.neighbors(u, buf);
+        for (int i = 0; i < count; i++) {
+            if (buf[i] == v) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * checks every scan of Graph.bulkKernels against a plain loop, on every range length up to 100 (so every tail length of any vector size up to 64 lanes
+     * is covered) at a few offsets, with values and masks that include the extremes of an int. the scans run on the Vector API when vectorKernels is
+     * loaded (see Graph.bulkKernels), and on the loops of bulkKernels otherwise - run the test both ways.
+     */
+    private static void kernelsTest(){
+        Random rand = new Random(1);
+        int[] extremes = {Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE};
+        for (int length = 0; length <= 100; length++) {
+            for (int from = 0; from < 4; from++) {
+                int to = from + length;
+                int[] values = new int[to + 3];
+                int[] mask = new int[to + 3];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = rand.nextInt(4) == 0 ? extremes[rand.nextInt(extremes.length)] : rand.nextInt(21) - 10;
+                    mask[i] = rand.nextInt(4) == 0 ? -1 : rand.nextInt(4) == 0 ? extremes[rand.nextInt(extremes.length)] : rand.nextInt(10);
+                }
+
+                long sum = 0;
+                int max = Integer.MIN_VALUE;
+                int count = 0;
+                int threshold = rand.nextInt(21) - 10;
+                for (int i = from; i < to; i++) {
+                    sum += Math.max(values[i], 0);
+                    if (mask[i] >= 0) {
+                        max = Math.max(max, values[i]);
+                        count += values[i] >= threshold ? 1 : 0;
+                    }
+                }
+                // a value of the range (which may belong to a deleted node), or any value, or the maximum - the second pass of an argmax
+                int pick = rand.nextInt(3);
+                int value = pick == 0 && length > 0 ? values[from + rand.nextInt(length)] : pick == 1 ? rand.nextInt(21) - 10 : max;
+                int index = -1;
+                for (int i = from; i < to && index < 0; i++) {
+                    if (values[i] == value && mask[i] >= 0) {
+                        index = i;
+                    }
+                }
+                String range = " over [" + from + ", " + to + ")";
+                expect(Graph.bulkKernels.sumNonNegative(values, from, to) == sum, "sumNonNegative is wrong" + range);
+                expect(Graph.bulkKernels.maxMasked(values, mask, from, to) == max, "maxMasked is wrong" + range);
+                expect(Graph.bulkKernels.indexOfMasked(values, mask, value, from, to) == index, "indexOfMasked(" + value + ") is wrong" + range);
+                expect(Graph.bulkKernels.countAtLeast(values, mask, threshold, from, to) == count, "countAtLeast(" + threshold + ") is wrong" + range);
+            }
+        }
+
+        // a sum that doesn't fit in an int
+        int[] large = new int[1000];
+        Arrays.fill(large, Integer.MAX_VALUE);
+        expect(Graph.bulkKernels.sumNonNegative(large, 1, 998) == 997L * Integer.MAX_VALUE, "sumNonNegative overflows");
+        System.out.println("kernels test ended (" + (Graph.bulkKernels.isVectorized() ? "Vector API" : "scalar loops") + ")");
+    }
+
+
+    /**
+     * the check of the tests that aren't driven by verifyAll: prints the error and stops the tester.
+     */
+    private static void expect(boolean condition, String error){
+        if (!condition) {
+            System.out.println("ERR - " + error);
+            throw new AssertionError(error);
+        }
+    }
+
+
+
+
+    /**
+     * measures what keeping the rank index of the graph up to date adds to the cost of addEdge, and the cost of its queries,
+     * on power-law graphs of growing size.
+     */
+    private static void rankMeasurements(){
+        Random rand = new Random(1);
+        for (int i = 10; i <= 20; i += 2){
+            int n = (int)Math.pow(2,i);
+            Graph.Node[] nodes = new Graph.Node[n];
+            Graph.Node[] indexedNodes = new Graph.Node[n];
+            for (int j = 1; j <= n; j++) {
+                int weight = rand.nextInt(100) + 1;
+                nodes[j-1] = new Graph.Node(j, weight);
+                indexedNodes[j-1] = new Graph.Node(j, weight);
+            }
+            int[] edges = powerLawEdges(n, 4*n, rand);
+
+            Graph plain = new Graph(nodes);
+            long start = System.nanoTime();
+            for (int k = 0; k < edges.length; k += 2) {
+                plain.addEdge(edges[k], edges[k+1]);
+            }
+            long plainAdd = System.nanoTime() - start;
+
+            Graph indexed = new Graph(indexedNodes);
+            indexed.enableRankIndex();
+            start = System.nanoTime();
+            for (int k = 0; k < edges.length; k += 2) {
+                indexed.addEdge(edges[k], edges[k+1]);
+            }
+            long indexedAdd = System.nanoTime() - start;
+
+            int queries = 100000;
+            long checksum = 0;
+            start = System.nanoTime();
+            for (int k = 0; k < queries; k++) {
+                checksum += indexed.rankOf(rand.nextInt(n) + 1);
+            }
+            long rankQuery = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int k = 0; k < queries; k++) {
+                checksum += indexed.weightAtPercentile(rand.nextDouble());
+            }
+            long percentileQuery = System.nanoTime() - start;
+
+            System.out.printf("%n" + "\033[1m" + "i = %d" + "\033[0m" + " (n = %d, m = %d)%n", i, n, edges.length/2);
+            System.out.printf("addEdge without index: %7.1f ns/edge,  with rank index: %7.1f ns/edge%n", (double)plainAdd/(edges.length/2), (double)indexedAdd/(edges.length/2));
+            System.out.printf("rankOf: %6.1f ns,  weightAtPercentile: %6.1f ns,  p99 = %d  (checksum %d)%n", (double)rankQuery/queries, (double)percentileQuery/queries, indexed.weightAtPercentile(0.99), checksum);
+        }
+    }
+
+
+
+
+    /**
+     * the throughput of a mixed stream of addEdge and deleteNode operations on a sharded graph, for 1, 2, 4, ... shards up to the amount of cores,
+     * compared to a single Graph.
+     */
+    private static void shardedMeasurements(){
+        Random rand = new Random(1);
+        int n = (int)Math.pow(2,20);
+        int[] weights = new int[n];
+        for (int j = 0; j < n; j++) {
+            weights[j] = rand.nextInt(100) + 1;
+        }
+        int[] edges = powerLawEdges(n, 4*n, rand);
+        int[] deletions = new int[n/16];
+        for (int k = 0; k < deletions.length; k++) {
+            deletions[k] = rand.nextInt(n) + 1;
+        }
+        int operations = edges.length/2 + deletions.length;
+
+        Graph.Node[] nodes = new Graph.Node[n];
+        for (int j = 1; j <= n; j++) {
+            nodes[j-1] = new Graph.Node(j, weights[j-1]);
+        }
+        Graph single = new Graph(nodes);
+        long start = System.nanoTime();
+        for (int k = 0, d = 0; k < edges.length; k += 2) {
+            single.addEdge(edges[k], edges[k+1]);
+            if (k % 64 == 0 && d < deletions.length) { // a deletion every 32 edges
+                single.deleteNode(deletions[d++]);
+            }
+        }
+        long singleTime = System.nanoTime() - start;
+        System.out.printf("%n" + "\033[1m" + "single graph" + "\033[0m" + ": %6.2f M ops/s, max = %d%n", operations*1000.0/singleTime, single.maxNeighborhoodWeight().getVicinityWeight());
+
+        for (int shards = 1; shards <= Runtime.getRuntime().availableProcessors(); shards *= 2) {
+            for (int j = 1; j <= n; j++) {
+                nodes[j-1] = new Graph.Node(j, weights[j-1]);
+            }
+            try (Graph.shardedGraph sharded = new Graph.shardedGraph(nodes, shards)) {
+                start = System.nanoTime();
+                for (int k = 0, d = 0; k < edges.length; k += 2) {
+                    sharded.addEdge(edges[k], edges[k+1]);
+                    if (k % 64 == 0 && d < deletions.length) {
+                        sharded.deleteNode(deletions[d++]);
+                    }
+                }
+                sharded.sync();
+                long shardedTime = System.nanoTime() - start;
+                System.out.printf("%2d shards: %6.2f M ops/s (x%.2f), max = %d%n", shards, operations*1000.0/shardedTime, (double)singleTime/shardedTime, sharded.maxNeighborhoodWeight().getVicinityWeight());
+            }
+        }
+    }
+
+
+    /**
+     * streams synthetic workloads of every model of workloadGenerator through a Graph, in chunks of primitive arrays, and reports their throughput.
+     * the mix is 60% addEdge, 2% deleteNode, 30% getNeighborhoodWeight and 8% maxNeighborhoodWeight.
+     */
+    private static void workloadMeasurements(){
+        int n = (int)Math.pow(2,20);
+        long operations = 10_000_000L;
+        byte[] ops = new byte[1 << 16];
+        int[] ids1 = new int[ops.length];
+        int[] ids2 = new int[ops.length];
+        for (workloadGenerator.graphModel model : workloadGenerator.graphModel.values()) {
+            workloadGenerator generator = new workloadGenerator(n, model, 60, 2, 30, operations * 60 / 100, 1);
+            Graph g = new Graph(generator.nodes());
+            long sink = 0;
+            long applyTime = 0;
+            for (long done = 0; done < operations; done += ops.length) {
+                int count = generator.next(ops, ids1, ids2);
+                long start = System.nanoTime();
+                sink += workloadGenerator.apply(g, ops, ids1, ids2, count);
+                applyTime += System.nanoTime() - start;
+            }
+            System.out.printf("%n" + "\033[1m" + "%s" + "\033[0m" + " (n = %d, %d operations)%n", model, n, operations);
+            System.out.printf("%6.2f M ops/s, %d nodes and %d edges left, max = %d  (sink %d)%n",
+                    operations*1000.0/applyTime, g.getNumNodes(), g.getNumEdges(), g.maxNeighborhoodWeight().getVicinityWeight(), sink);
+        }
+    }
+
+
+    /**
+     * compares the kinds of priority queues of the neighborhood weights (see Graph.heapKind) on an addEdge-heavy, a deleteNode-heavy and a mixed workload of
+     * workloadGenerator. every addEdge increases two keys, and every deleteNode decreases the keys of all of the Neighbors of the deleted node.
+     */
+    private static void queueMeasurements(){
+        int n = (int)Math.pow(2,20);
+        long operations = 5_000_000L;
+        int[][] mixes = {{90, 1, 4}, {40, 30, 20}, {60, 5, 25}};
+        String[] names = {"add-heavy", "delete-heavy", "mixed"};
+        byte[] ops = new byte[1 << 16];
+        int[] ids1 = new int[ops.length];
+        int[] ids2 = new int[ops.length];
+        for (int mix = 0; mix < mixes.length; mix++) {
+            System.out.printf("%n" + "\033[1m" + "%s" + "\033[0m" + " (%d%% add, %d%% delete, %d%% get, n = %d, %d operations)%n",
+                    names[mix], mixes[mix][0], mixes[mix][1], mixes[mix][2], n, operations);
+            for (Graph.heapKind kind : Graph.heapKind.values()) {
+                workloadGenerator generator = new workloadGenerator(n, workloadGenerator.graphModel.RMAT, mixes[mix][0], mixes[mix][1], mixes[mix][2],
+                        operations * mixes[mix][0] / 100, 1);
+                Graph g = new Graph(generator.nodes(), kind);
+                long sink = 0;
+                long applyTime = 0;
+                for (long done = 0; done < operations; done += ops.length) {
+                    int count = generator.next(ops, ids1, ids2);
+                    long start = System.nanoTime();
+                    sink += workloadGenerator.apply(g, ops, ids1, ids2, count);
+                    applyTime += System.nanoTime() - start;
+                }
+                Graph.Node max = g.maxNeighborhoodWeight();
+                System.out.printf("%-13s %6.2f M ops/s, max = %d  (sink %d)%n", kind, operations*1000.0/applyTime, max == null ? 0 : max.getVicinityWeight(), sink);
+            }
+        }
+    }
+
+
+    /**
+     * compares the bulk kernels of Graph.bulkKernels over primitive columns against the same whole-graph computations over the Node objects of a power-law
+     * graph: the sum of the degrees, the argmax of the neighborhood weights, the count above a threshold, and recomputing every neighborhood weight
+     * (from a CSR copy of the adjacency against the Neighbors lists). every computation is timed 10 times, and the best time is reported.
+     * the scans run on the Vector API only when vectorKernels is compiled and the JVM runs with --add-modules jdk.incubator.vector (see vectorKernels for
+     * the build steps).
+     */
+    private static void bulkMeasurements(){
+        int n = (int)Math.pow(2,20);
+        int edgesAmount = 4 * n;
+        Random rand = new Random(1);
+        Graph.Node[] nodes = new Graph.Node[n];
+        int[] weights = new int[n];
+        for (int j = 0; j < n; j++) {
+            weights[j] = rand.nextInt(100) + 1;
+            nodes[j] = new Graph.Node(j + 1, weights[j]);
+        }
+        Graph g = new Graph(nodes);
+        int[] edges = powerLawEdges(n, edgesAmount, rand);
+        for (int k = 0; k < edgesAmount; k++) {
+            g.addEdge(edges[2*k], edges[2*k+1]);
+        }
+
+        // the columns and the CSR adjacency, by index (id - 1)
+        int[] degrees = new int[n];
+        int[] vicinity = new int[n];
+        for (int j = 0; j < n; j++) {
+            degrees[j] = nodes[j].getNeighborsAmount();
+            vicinity[j] = nodes[j].getVicinityWeight();
+        }
+        int[] offsets = new int[n + 1];
+        for (int j = 0; j < n; j++) {
+            offsets[j + 1] = offsets[j] + degrees[j];
+        }
+        int[] targets = new int[offsets[n]];
+        int[] fill = Arrays.copyOf(offsets, n);
+        for (int k = 0; k < edgesAmount; k++) {
+            int u = edges[2*k] - 1;
+            int v = edges[2*k+1] - 1;
+            targets[fill[u]++] = v;
+            targets[fill[v]++] = u;
+        }
+        int threshold = vicinity[n / 2];
+        int[] out = new int[n];
+        int[] buf = new int[n];
+
+        System.out.printf("%n" + "\033[1m" + "bulk kernels" + "\033[0m" + " (n = %d, m = %d, %s)%n", n, edgesAmount,
+                Graph.bulkKernels.isVectorized() ? "Vector API" : "scalar loops");
+        long[] best = new long[8];
+        Arrays.fill(best, Long.MAX_VALUE);
+        long sink = 0;
+        for (int rep = 0; rep < 10; rep++) {
+            long start = System.nanoTime();
+            long degreeSum = 0;
+            for (Graph.Node node : nodes) {
+                degreeSum += node.getNeighborsAmount();
+            }
+            best[0] = Math.min(best[0], System.nanoTime() - start);
+            start = System.nanoTime();
+            sink += degreeSum - Graph.bulkKernels.sumNonNegative(degrees, 0, n);
+            best[1] = Math.min(best[1], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            Graph.Node maxNode = nodes[0];
+            for (Graph.Node node : nodes) {
+                if (node.getVicinityWeight() > maxNode.getVicinityWeight()) {
+                    maxNode = node;
+                }
+            }
+            best[2] = Math.min(best[2], System.nanoTime() - start);
+            start = System.nanoTime();
+            int max = Graph.bulkKernels.maxMasked(vicinity, degrees, 0, n);
+            sink += maxNode.getId() - 1 - Graph.bulkKernels.indexOfMasked(vicinity, degrees, max, 0, n);
+            best[3] = Math.min(best[3], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            int count = 0;
+            for (Graph.Node node : nodes) {
+                if (node.getVicinityWeight() >= threshold) {
+                    count++;
+                }
+            }
+            best[4] = Math.min(best[4], System.nanoTime() - start);
+            start = System.nanoTime();
+            sink += count - Graph.bulkKernels.countAtLeast(vicinity, degrees, threshold, 0, n);
+            best[5] = Math.min(best[5], System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int j = 0; j < n; j++) {
+                int d = g.neighbors(j + 1, buf);
+                int sum = weights[j];
+                for (int i = 0; i < d; i++) {
+                    sum += weights[buf[i] - 1];
+                }
+                out[j] = sum;
+            }
+            best[6] = Math.min(best[6], System.nanoTime() - start);
+            sink += out[n - 1] - vicinity[n - 1];
+            start = System.nanoTime();
+            Graph.bulkKernels.vicinityFromCSR(weights, offsets, targets, out, 0, n);
+            best[7] = Math.min(best[7], System.nanoTime() - start);
+            sink += out[n - 1] - vicinity[n - 1];
+        }
+        String[] names = {"sum of degrees", "argmax of neighborhood weights", "count above a threshold", "recompute neighborhood weights"};
+        for (int k = 0; k < names.length; k++) {
+            System.out.printf("%-32s Node objects %8.2f ms, kernel %8.2f ms (x%.1f)%n", names[k], best[2*k] / 1e6, best[2*k+1] / 1e6, (double)best[2*k] / best[2*k+1]);
+        }
+        System.out.printf("(the kernels and the loops over the nodes differ by %d)%n", sink);
+    }
+
+
+    /**
+     * measures Graph.verify() and Graph.rebuildDerivedState() on random graphs of growing sizes, with the amount of threads of the common ForkJoinPool.
+     */
+    private static void verifyMeasurements(){
+        System.out.printf("%n" + "\033[1m" + "verify and rebuild" + "\033[0m" + " (%d threads)%n", java.util.concurrent.ForkJoinPool.getCommonPoolParallelism());
+        Random rand = new Random(1);
+        for (int n = (int)Math.pow(2,16); n <= (int)Math.pow(2,21); n *= 4) {
+            Graph.Node[] nodes = new Graph.Node[n];
+            for (int j = 1; j <= n; j++) {
+                nodes[j-1] = new Graph.Node(j, rand.nextInt(100) + 1);
+            }
+            Graph g = new Graph(nodes);
+            for (long k = 0; k < 8L * n; k++) {
+                g.addEdge(rand.nextInt(n) + 1, rand.nextInt(n) + 1);
+            }
+            g.verify(); // warming up
+            long start = System.nanoTime();
+            List<String> failures = g.verify();
+            long elapsed = System.nanoTime() - start;
+            start = System.nanoTime();
+            int changed = g.rebuildDerivedState();
+            long rebuildElapsed = System.nanoTime() - start;
+            System.out.printf("n = %8d, m = %9d: verify %8.2f ms (%.1f ns per node and edge), %d failures; rebuild %8.2f ms, %d changed%n",
+                    n, g.getNumEdges(), elapsed / 1e6, (double)elapsed / (n + g.getNumEdges()), failures.size(), rebuildElapsed / 1e6, changed);
+        }
+    }
+
+
+    /**
+     * measures the stringDictionary against a HashMap<String, Integer> over the same keys, for growing key lengths: the bytes per key (the arrays of the
+     * dictionary, and the growth of the used heap for the map), and the time of looking up every key.
+     */
+    private static void dictionaryMeasurements(){
+        int n = (int)Math.pow(2,18);
+        Random rand = new Random(1);
+        System.out.printf("%n" + "\033[1m" + "string dictionary" + "\033[0m" + " (%d keys)%n", n);
+        for (int length = 8; length <= 64; length *= 2) {
+            String[] keys = new String[n];
+            for (int j = 0; j < n; j++) {
+                char[] chars = new char[length];
+                for (int i = 0; i < length; i++) {
+                    chars[i] = (char)('a' + rand.nextInt(26));
+                }
+                keys[j] = new String(chars);
+            }
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long before = runtime.totalMemory() - runtime.freeMemory();
+            HashMap<String, Integer> map = new HashMap<>();
+            for (int j = 0; j < n; j++) {
+                map.put(new String(keys[j].toCharArray()), j); // a copy, so the keys of the map are its own
+            }
+            System.gc();
+            long mapBytes = runtime.totalMemory() - runtime.freeMemory() - before;
+            Graph.stringDictionary dictionary = new Graph.stringDictionary(n);
+            for (int j = 0; j < n; j++) {
+                dictionary.intern(keys[j]);
+            }
+
+            long sink = 0;
+            long mapBest = Long.MAX_VALUE;
+            long dictionaryBest = Long.MAX_VALUE;
+            for (int rep = 0; rep < 5; rep++) {
+                long start = System.nanoTime();
+                for (int j = 0; j < n; j++) {
+                    sink += map.get(keys[j]);
+                }
+                mapBest = Math.min(mapBest, System.nanoTime() - start);
+                start = System.nanoTime();
+                for (int j = 0; j < n; j++) {
+                    sink -= dictionary.slotOf(keys[j]);
+                }
+                dictionaryBest = Math.min(dictionaryBest, System.nanoTime() - start);
+            }
+            System.out.printf("keys of %2d bytes: dictionary %6.1f bytes per key, %6.1f ns per lookup; HashMap %6.1f bytes per key, %6.1f ns per lookup (sink %d)%n",
+                    length, (double)dictionary.memoryBytes() / n, (double)dictionaryBest / n, (double)mapBytes / n, (double)mapBest / n, sink);
+        }
+    }
+
+    /**
+     * measures a sliding window of edges: every tick adds 'rate' edges that expire 'window' ticks later, and expires the due ones with Graph.expireEdges
+     * every 'period' ticks - so every batch removes ~rate * period edges, while the graph holds ~rate * window of them.
+     */
+    private static void expiryMeasurements(){
+        int n = (int)Math.pow(2,18);
+        int rate = 64;
+        int window = 10000;
+        System.out.printf("%n" + "\033[1m" + "edge expiration" + "\033[0m" + " (n = %d, %d edges per tick, a window of %d ticks)%n", n, rate, window);
+        for (int period = 1; period <= 1000; period *= 10) {
+            Random rand = new Random(1);
+            Graph.Node[] nodes = new Graph.Node[n];
+            for (int j = 1; j <= n; j++) {
+                nodes[j-1] = new Graph.Node(j, rand.nextInt(100) + 1);
+            }
+            Graph g = new Graph(nodes);
+            long addTime = 0;
+            long expireTime = 0;
+            long expired = 0;
+            int maxPending = 0;
+            for (long tick = 0; tick < 3L * window; tick++) {
+                long start = System.nanoTime();
+                for (int k = 0; k < rate; k++) {
+                    g.addEdge(rand.nextInt(n) + 1, rand.nextInt(n) + 1, tick + window);
+                }
+                addTime += System.nanoTime() - start;
+                if (tick % period == 0) {
+                    start = System.nanoTime();
+                    expired += g.expireEdges(tick);
+                    expireTime += System.nanoTime() - start;
+                }
+                maxPending = Math.max(maxPending, g.pendingExpirations());
+            }
+            System.out.printf("a batch every %4d ticks: addEdge %6.1f ns, expiration %6.1f ns per edge (%d expired); at most %d edges pending, %d edges in the graph%n",
+                    period, (double)addTime / (3L * window * rate), (double)expireTime / Math.max(1, expired), expired, maxPending, g.getNumEdges());
+        }
+    }
+
+    /**
+     * measures the footprint of every heap kind at growing sizes, with m = 4n random edges: the estimate of Graph.memoryStats by part, the bytes per node and
+     * per edge it adds up to, and the growth of the used heap of the JVM while the graph was built (which the estimate should be close to). the graph is
+     * built under a budget that it never reaches, with some deleted nodes on the way, and the running estimate of the budget must end up exactly where
+     * memoryStats does.
+     */
+    private static void memoryMeasurements(){
+        System.out.printf("%n" + "\033[1m" + "memory footprint" + "\033[0m" + " (m = 4n)%n");
+        Runtime runtime = Runtime.getRuntime();
+        for (int n = (int)Math.pow(2,12); n <= (int)Math.pow(2,20); n *= 16) {
+            for (Graph.heapKind kind : Graph.heapKind.values()) {
+                Random rand = new Random(1);
+                System.gc(); // twice, so the graph of the previous kind is surely collected
+                System.gc();
+                long before = runtime.totalMemory() - runtime.freeMemory();
+                Graph.Node[] nodes = new Graph.Node[n];
+                for (int j = 1; j <= n; j++) {
+                    nodes[j-1] = new Graph.Node(j, rand.nextInt(100) + 1);
+                }
+                Graph g = new Graph(nodes, kind);
+                nodes = null;
+                g.setMemoryBudget(Long.MAX_VALUE - 1); // a budget that is never reached, for the running estimate of the graph
+                for (int k = 0; k < 4 * n; k++) {
+                    g.addEdge(rand.nextInt(n) + 1, rand.nextInt(n) + 1);
+                    if (k % 64 == 63) { // some churn, so the estimate has to follow the memory that is freed too
+                        g.deleteNode(rand.nextInt(n) + 1);
+                    }
+                }
+                System.gc();
+                long measured = runtime.totalMemory() - runtime.freeMemory() - before;
+                Graph.memoryStats stats = g.memoryStats();
+                System.out.printf("n = %7d, %-12s: %6.1f bytes per node, %5.1f per edge (ids %5.1f, heap %5.1f, nodes %5.1f per node), estimate %6.1f MB (running %6.1f MB), measured %6.1f MB%n",
+                        n, kind, (double)(stats.totalBytes() - stats.adjacencyBytes) / n, (double)stats.adjacencyBytes / g.getNumEdges(),
+                        (double)stats.idIndexBytes / n, (double)stats.heapBytes / n, (double)stats.nodeBytes / n, stats.totalBytes() / 1e6,
+                        stats.estimatedBytes / 1e6, measured / 1e6);
+                expect(stats.estimatedBytes == stats.totalBytes(), "the running estimate drifted from memoryStats: " + stats);
+            }
+        }
+    }
+
     private static void whatsappTest(){
         graphTester T;
         // #1:
@@ -255,6 +1024,375 @@ public class graphTester {
     }
 
 
+    /**
+     * checks the forks of a graph against reference graphs, for every heap kind: a parent graph is built by random operations, and every fork of it goes
+     * through random operations of its own, which are applied to a reference graph too - a fresh graph that replayed the operations of the parent.
+     * after every operation, the fork must agree with the reference on every neighborhood weight, on the maximal neighborhood weight, and on the amounts of
+     * nodes and edges. at the end, the parent must still be the graph it was before it was forked.
+     */
+    private static void forkTest(){
+        Random rand = new Random(1);
+        int n = 200;
+        for (Graph.heapKind kind : Graph.heapKind.values()) {
+            for (int run = 0; run < 10; run++) {
+                int[] weights = new int[n + 1];
+                for (int j = 1; j <= n; j++) {
+                    weights[j] = rand.nextInt(100);
+                }
+                Graph parent = new Graph(forkTestNodes(weights), kind);
+                parent.setLazyDeletion(rand.nextBoolean());
+                HashSet<Long> parentEdges = new HashSet<>();
+                boolean[] parentDeleted = new boolean[n + 1];
+                // the operations of the parent: an edge as (id1, id2), a deletion as (id, 0)
+                List<int[]> parentOps = new ArrayList<>();
+                forkTestOperations(parent, null, 3 * n, 10, parentEdges, parentDeleted, parentOps, rand);
+                int[] parentWeights = new int[n + 1];
+                for (int j = 1; j <= n; j++) {
+                    parentWeights[j] = parent.getNeighborhoodWeight(j);
+                }
+                Graph.Node parentMax = parent.maxNeighborhoodWeight();
+                int parentEdgesAmount = parent.getNumEdges();
+
+                for (int f = 0; f < 3; f++) {
+                    Graph.graphFork fork = parent.fork();
+                    Graph reference = new Graph(forkTestNodes(weights), kind);
+                    for (int[] op : parentOps) {
+                        if (op[1] == 0) {
+                            reference.deleteNode(op[0]);
+                        } else {
+                            reference.addEdge(op[0], op[1]);
+                        }
+                    }
+                    forkTestOperations(reference, fork, 2 * n, 5, new HashSet<>(parentEdges), parentDeleted.clone(), null, rand);
+                }
+
+                for (int j = 1; j <= n; j++) {
+                    expect(parent.getNeighborhoodWeight(j) == parentWeights[j], "a fork changed the neighborhood weight of node " + j + " in its parent");
+                }
+                expect(parent.maxNeighborhoodWeight() == parentMax && parent.getNumEdges() == parentEdgesAmount, "a fork changed its parent");
+            }
+        }
+        System.out.println("fork test ended");
+    }
+
+    private static Graph.Node[] forkTestNodes(int[] weights){
+        Graph.Node[] nodes = new Graph.Node[weights.length - 1];
+        for (int j = 1; j < weights.length; j++) {
+            nodes[j-1] = new Graph.Node(j, weights[j]);
+        }
+        return nodes;
+    }
+
+    /**
+     * applies random operations (new edges, and deletions with the given percentage) to the graph, or to the fork with the graph as its reference -
+     * in which case the fork is compared with the graph after every operation. the operations are logged to 'ops', if it isn't null.
+     */
+    private static void forkTestOperations(Graph graph, Graph.graphFork fork, int amount, int deletePercent, HashSet<Long> edges, boolean[] deleted,
+                                           List<int[]> ops, Random rand){
+        int n = deleted.length - 1;
+        for (int k = 0; k < amount; k++) {
+            int u = rand.nextInt(n) + 1;
+            int v = rand.nextInt(n) + 1;
+            if (rand.nextInt(100) < deletePercent) {
+                boolean done = graph.deleteNode(u);
+                expect(fork == null || fork.deleteNode(u) == done, "deleteNode(" + u + ") of a fork disagrees with its reference");
+                deleted[u] = true;
+                if (ops != null) {
+                    ops.add(new int[]{u, 0});
+                }
+            } else if (u != v && !deleted[u] && !deleted[v] && edges.add(edgeKey(Math.min(u, v), Math.max(u, v)))) {
+                graph.addEdge(u, v);
+                expect(fork == null || fork.addEdge(u, v), "addEdge(" + u + ", " + v + ") of a fork failed");
+                if (ops != null) {
+                    ops.add(new int[]{u, v});
+                }
+            }
+            if (fork != null) {
+                for (int j = 1; j <= n; j++) {
+                    expect(fork.getNeighborhoodWeight(j) == graph.getNeighborhoodWeight(j), "the neighborhood weight of node " + j + " in a fork is "
+                            + fork.getNeighborhoodWeight(j) + " instead of " + graph.getNeighborhoodWeight(j));
+                }
+                Graph.Node max = graph.maxNeighborhoodWeight();
+                Graph.Node forkMax = fork.maxNeighborhoodWeight();
+                expect((max == null) == (forkMax == null), "the maximum of a fork disagrees with its reference on whether the graph is empty");
+                expect(max == null || fork.getNeighborhoodWeight(forkMax.getId()) == max.getVicinityWeight(), "the maximum of a fork has the neighborhood weight "
+                        + (forkMax == null ? -1 : fork.getNeighborhoodWeight(forkMax.getId())) + " instead of " + (max == null ? -1 : max.getVicinityWeight()));
+                expect(fork.getNumNodes() == graph.getNumNodes() && fork.getNumEdges() == graph.getNumEdges(), "the amounts of a fork disagree with its reference");
+            }
+        }
+    }
+
+
+    /**
+     * checks the stringDictionary against a HashMap of the same keys: every key must come back from its slot, the removed keys must be gone while the
+     * others stay where they were (through the compactions of the arena), and the freed slots must be handed out again before any new one.
+     * then checks a stringKeyedGraph against a Graph of the slots of its keys.
+     */
+    private static void dictionaryTest(){
+        Random rand = new Random(1);
+        String alphabet = "abcxyz09 \u00e9\u00df\u65e5\u672c\ud83d\ude00"; // 1 to 4 bytes per character in UTF-8 (the last two chars are one code point)
+        for (int run = 0; run < 10; run++) {
+            int n = 1000 + rand.nextInt(1000);
+            Graph.stringDictionary dictionary = new Graph.stringDictionary(rand.nextInt(n) + 1);
+            HashMap<String, Integer> slots = new HashMap<>();
+            expect(dictionary.slotOf("") == -1, "the empty dictionary holds the empty key");
+            while (slots.size() < n) {
+                String key = dictionaryTestKey(alphabet, rand);
+                int slot = dictionary.intern(key);
+                Integer expected = slots.putIfAbsent(key, slot);
+                expect(expected == null ? slot == slots.size() - 1 : slot == expected, "interning " + key + " gave the slot " + slot);
+            }
+            for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+                expect(entry.getKey().equals(dictionary.keyOf(entry.getValue())), "the slot " + entry.getValue() + " holds " + dictionary.keyOf(entry.getValue())
+                        + " instead of " + entry.getKey());
+                expect(dictionary.slotOf(entry.getKey()) == entry.getValue(), "the key " + entry.getKey() + " isn't found at its slot");
+            }
+
+            // removing most of the keys, so the arena is compacted along the way
+            List<String> removed = new ArrayList<>();
+            for (String key : new ArrayList<>(slots.keySet())) {
+                if (rand.nextInt(4) != 0) {
+                    int slot = slots.remove(key);
+                    expect(dictionary.remove(slot), "removing the slot " + slot + " failed");
+                    expect(!dictionary.remove(slot), "the slot " + slot + " was removed twice");
+                    removed.add(key);
+                }
+            }
+            expect(dictionary.size() == slots.size(), "the dictionary holds " + dictionary.size() + " keys instead of " + slots.size());
+            HashSet<Integer> freed = new HashSet<>();
+            for (String key : removed) {
+                expect(dictionary.slotOf(key) == -1, "the removed key " + key + " is still found");
+            }
+            for (int slot = 0; slot < n; slot++) {
+                if (!slots.containsValue(slot)) {
+                    expect(dictionary.keyOf(slot) == null, "the freed slot " + slot + " still holds " + dictionary.keyOf(slot));
+                    freed.add(slot);
+                }
+            }
+            for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+                expect(entry.getKey().equals(dictionary.keyOf(entry.getValue())) && dictionary.slotOf(entry.getKey()) == entry.getValue(),
+                        "the key " + entry.getKey() + " moved after the removals");
+            }
+
+            // the freed slots come back first, and only then the dictionary grows
+            int reused = 0;
+            while (reused < freed.size() + 10) {
+                String key = dictionaryTestKey(alphabet, rand);
+                if (slots.containsKey(key)) {
+                    continue;
+                }
+                int slot = dictionary.intern(key);
+                expect(reused < freed.size() ? freed.contains(slot) : slot >= n, "the new key " + key + " got the slot " + slot);
+                expect(key.equals(dictionary.keyOf(slot)), "the reused slot " + slot + " doesn't hold its new key");
+                slots.put(key, slot);
+                reused++;
+            }
+            expect(dictionary.size() == slots.size(), "the dictionary holds " + dictionary.size() + " keys instead of " + slots.size());
+        }
+
+        // a stringKeyedGraph against a Graph of the slots of its keys
+        for (Graph.heapKind kind : Graph.heapKind.values()) {
+            int n = 300;
+            String[] keys = new String[n];
+            int[] weights = new int[n];
+            Graph.Node[] nodes = new Graph.Node[n];
+            HashSet<String> used = new HashSet<>();
+            for (int j = 0; j < n; j++) {
+                do {
+                    keys[j] = dictionaryTestKey(alphabet, rand);
+                } while (!used.add(keys[j]));
+                weights[j] = rand.nextInt(100);
+                nodes[j] = new Graph.Node(j, weights[j]);
+            }
+            Graph.stringKeyedGraph graph = new Graph.stringKeyedGraph(keys, weights, kind);
+            Graph reference = new Graph(nodes, kind);
+            HashSet<Long> edges = new HashSet<>();
+            boolean[] deleted = new boolean[n];
+            for (int k = 0; k < 4 * n; k++) {
+                int u = rand.nextInt(n);
+                int v = rand.nextInt(n);
+                if (rand.nextInt(10) == 0) {
+                    expect(graph.deleteNode(keys[u]) == reference.deleteNode(u), "deleteNode(" + keys[u] + ") disagrees with the reference");
+                    expect(graph.getKeys().slotOf(keys[u]) == -1, "the key of the deleted node " + keys[u] + " is still in the dictionary");
+                    deleted[u] = true;
+                } else if (deleted[u] || deleted[v] || u == v) {
+                    expect(!graph.addEdge(keys[u], keys[v]), "addEdge(" + keys[u] + ", " + keys[v] + ") added an edge to a missing node, or a loop");
+                } else if (edges.add(edgeKey(u, v))) {
+                    reference.addEdge(u, v);
+                    expect(graph.addEdge(keys[u], keys[v]), "addEdge(" + keys[u] + ", " + keys[v] + ") failed");
+                }
+            }
+            for (int j = 0; j < n; j++) {
+                expect(graph.getNeighborhoodWeight(keys[j]) == reference.getNeighborhoodWeight(j), "the neighborhood weight of " + keys[j] + " is "
+                        + graph.getNeighborhoodWeight(keys[j]) + " instead of " + reference.getNeighborhoodWeight(j));
+            }
+            Graph.Node max = reference.maxNeighborhoodWeight();
+            String maxKey = graph.maxNeighborhoodWeight();
+            expect(max == null ? maxKey == null : graph.getNeighborhoodWeight(maxKey) == max.getVicinityWeight(), "the maximum of the keyed graph is " + maxKey);
+            expect(graph.getNumNodes() == reference.getNumNodes() && graph.getNumEdges() == reference.getNumEdges(), "the amounts of the keyed graph are wrong");
+        }
+        System.out.println("dictionary test ended");
+    }
+
+    /**
+     * @return a random key of up to 40 characters of the alphabet, where the last two characters of the alphabet are a surrogate pair that is never split
+     */
+    private static String dictionaryTestKey(String alphabet, Random rand){
+        StringBuilder key = new StringBuilder();
+        int length = rand.nextInt(41);
+        for (int i = 0; i < length; i++) {
+            int c = rand.nextInt(alphabet.length() - 1);
+            key.append(c == alphabet.length() - 2 ? alphabet.substring(c) : alphabet.substring(c, c + 1));
+        }
+        return key.toString();
+    }
+
+
+    /**
+     * checks the expiring edges of a graph against a reference: a map of the edges to their expiration times (Long.MAX_VALUE for a permanent edge), for every
+     * heap kind, with eager and with lazy deletion. the graph goes through random expiring and permanent edges (some already due), deleted nodes, compactions
+     * and calls to expireEdges (some with a time that went back). every call to expireEdges must remove exactly the edges that are due by then, and after
+     * every operation the graph must agree with the reference on every neighborhood weight - so on both ends of every expired edge - on the maximal one, and
+     * on the amount of edges.
+     */
+    private static void expiryTest(){
+        Random rand = new Random(1);
+        for (Graph.heapKind kind : Graph.heapKind.values()) {
+            for (int run = 0; run < 10; run++) {
+                int n = 5 + rand.nextInt(60);
+                int[] weights = new int[n + 1];
+                Graph.Node[] nodes = new Graph.Node[n];
+                for (int j = 1; j <= n; j++) {
+                    weights[j] = rand.nextInt(20);
+                    nodes[j-1] = new Graph.Node(j, weights[j]);
+                }
+                Graph graph = new Graph(nodes, kind);
+                graph.setLazyDeletion(run % 2 == 1);
+                HashMap<Long, Long> expirations = new HashMap<>();
+                boolean[] deleted = new boolean[n + 1];
+                long now = 0;
+                for (int k = 0; k < 1000; k++) {
+                    int op = rand.nextInt(100);
+                    if (op < 60) {
+                        int u = rand.nextInt(n) + 1;
+                        int v = rand.nextInt(n) + 1;
+                        if (u == v || deleted[u] || deleted[v] || expirations.containsKey(edgeKey(u, v))) {
+                            continue;
+                        }
+                        if (rand.nextInt(4) == 0) {
+                            expect(graph.addEdge(u, v), "addEdge(" + u + ", " + v + ") failed");
+                            expirations.put(edgeKey(u, v), Long.MAX_VALUE);
+                        } else {
+                            long expiresAt = now + rand.nextInt(100) - (rand.nextInt(10) == 0 ? 50 : 0); // some of the edges are due already
+                            expect(graph.addEdge(u, v, expiresAt), "addEdge(" + u + ", " + v + ", " + expiresAt + ") failed");
+                            expirations.put(edgeKey(u, v), Math.max(expiresAt, 0));
+                        }
+                    } else if (op < 63) {
+                        int u = rand.nextInt(n) + 1;
+                        expect(graph.deleteNode(u) != deleted[u], "deleteNode(" + u + ") disagrees with the reference");
+                        deleted[u] = true;
+                        expirations.keySet().removeIf(key -> key >>> 32 == u || (int) (long) key == u);
+                    } else if (op < 80) {
+                        long time = rand.nextInt(5) == 0 ? now - rand.nextInt(5) : now + rand.nextInt(40); // the clock may go back, which expires nothing new
+                        now = Math.max(now, time);
+                        int due = 0;
+                        for (Iterator<Long> it = expirations.values().iterator(); it.hasNext();) {
+                            if (it.next() <= now) {
+                                it.remove();
+                                due++;
+                            }
+                        }
+                        int expired = graph.expireEdges(time);
+                        expect(expired == due, "expireEdges(" + time + ") removed " + expired + " edges instead of " + due);
+                    } else if (op < 85) {
+                        graph.compact(rand.nextInt(5));
+                    }
+
+                    int[] vicinity = weights.clone();
+                    for (long key : expirations.keySet()) {
+                        int u = (int) (key >>> 32);
+                        int v = (int) key;
+                        vicinity[u] += weights[v];
+                        vicinity[v] += weights[u];
+                    }
+                    int max = -1;
+                    for (int j = 1; j <= n; j++) {
+                        int expected = deleted[j] ? -1 : vicinity[j];
+                        expect(graph.getNeighborhoodWeight(j) == expected, "the neighborhood weight of node " + j + " is " + graph.getNeighborhoodWeight(j)
+                                + " instead of " + expected);
+                        max = Math.max(max, expected);
+                    }
+                    Graph.Node maxNode = graph.maxNeighborhoodWeight();
+                    expect((maxNode == null ? -1 : maxNode.getVicinityWeight()) == max, "the maximal neighborhood weight isn't " + max);
+                    expect(graph.getNumEdges() == expirations.size(), "the graph has " + graph.getNumEdges() + " edges instead of " + expirations.size());
+                }
+                List<String> failures = graph.verify();
+                expect(failures.isEmpty(), "the graph is broken after expiring edges: " + failures);
+            }
+        }
+        System.out.println("expiry test ended");
+    }
+
+
+    /**
+     * checks the running estimate of the memory budget against memoryStats, for every heap kind, with eager and with lazy deletion. the graph goes through
+     * random permanent and expiring edges, deleted nodes, calls to expireEdges and compactions under a budget that fits only a part of the edges. without
+     * indices, everything that the graph allocates and frees is followed by the estimate, so after every operation it must be exactly what memoryStats
+     * measures. an accepted edge must leave the graph within its budget, a rejected one must leave the graph as it was, and edges must be accepted again
+     * after a rejection once deleted nodes and expired edges free their memory.
+     */
+    private static void memoryBudgetTest(){
+        Random rand = new Random(1);
+        for (Graph.heapKind kind : Graph.heapKind.values()) {
+            for (int run = 0; run < 10; run++) {
+                int n = 20 + rand.nextInt(60);
+                Graph.Node[] nodes = new Graph.Node[n];
+                for (int j = 1; j <= n; j++) {
+                    nodes[j-1] = new Graph.Node(j, rand.nextInt(20));
+                }
+                Graph graph = new Graph(nodes, kind);
+                graph.setLazyDeletion(run % 2 == 1);
+                long budget = graph.memoryStats().totalBytes() * 5 / 4;
+                graph.setMemoryBudget(budget);
+                long now = 0;
+                boolean rejected = false;
+                boolean acceptedAfterRejection = false;
+                for (int k = 0; k < 2000; k++) {
+                    int op = rand.nextInt(100);
+                    if (op < 70) {
+                        int u = rand.nextInt(n) + 1;
+                        int v = rand.nextInt(n) + 1;
+                        int edges = graph.getNumEdges();
+                        int rejectedEdges = graph.memoryStats().rejectedEdges;
+                        boolean added = rand.nextBoolean() ? graph.addEdge(u, v) : graph.addEdge(u, v, now + rand.nextInt(100));
+                        Graph.memoryStats stats = graph.memoryStats();
+                        if (stats.rejectedEdges > rejectedEdges) {
+                            expect(!added && graph.getNumEdges() == edges, "a rejected edge (" + u + ", " + v + ") changed the graph");
+                            rejected = true;
+                        } else if (added) {
+                            expect(stats.totalBytes() <= budget, "the edge (" + u + ", " + v + ") took the graph over its budget: " + stats);
+                            acceptedAfterRejection |= rejected;
+                        }
+                    } else if (op < 72) {
+                        graph.deleteNode(rand.nextInt(n) + 1);
+                    } else if (op < 90) {
+                        now += rand.nextInt(20);
+                        graph.expireEdges(now);
+                    } else {
+                        graph.compact(rand.nextInt(5));
+                    }
+                    Graph.memoryStats stats = graph.memoryStats();
+                    expect(stats.estimatedBytes == stats.totalBytes(), "the estimate of the budget drifted from memoryStats after operation " + k + ": " + stats);
+                }
+                expect(rejected && acceptedAfterRejection, "the budget of run " + run + " of " + kind + " was never reached, or never freed");
+                List<String> failures = graph.verify();
+                expect(failures.isEmpty(), "the graph is broken under a memory budget: " + failures);
+            }
+        }
+        System.out.println("memory budget test ended");
+    }
+
+
     private static void firstTest(){
         Graph.Node[] nodes = new Graph.Node[10];
         nodes[0] = new Graph.Node(1, 3);
@@ -0,0 +1,255 @@
+import java.util.SplittableRandom;
+
+/**
+ * a seedable generator of synthetic workloads for a Graph: a stream of addEdge, deleteNode, getNeighborhoodWeight and maxNeighborhoodWeight operations
+ * over the nodes 1..n, written straight into primitive arrays one chunk at a time - so a run of 10^7 - 10^8 operations never holds more than a chunk of them.
+ * <p>
+ * the endpoints of the added edges follow one of the models of graphModel. no edge is generated twice: the generated edges are kept in a Bloom filter, and an
+ * edge that the filter might have seen is replaced by another one. so a small fraction of the edges of the model is never generated, in exchange for a filter
+ * of ~10 bits per edge instead of an exact set of them. the endpoints of every operation are nodes that weren't deleted yet (the living nodes are kept in an
+ * array, from which a deleted node is removed by swapping it with the last one).
+ * </p>
+ * <p>
+ * the ops are the op codes of Graph.traceRecorder, so a chunk can be applied the same way a trace is replayed (see apply).
+ * </p>
+ */
+public class workloadGenerator {
+
+    /**
+     * the models of the endpoints of the added edges.
+     */
+    public enum graphModel {
+        // both endpoints are uniform among the living nodes
+        ERDOS_RENYI,
+        // R-MAT: the adjacency matrix is split into quadrants recursively, with the probabilities 0.57, 0.19, 0.19, 0.05. the degrees follow a power law
+        RMAT,
+        // half of the edges have an endpoint among sqrt(n) hubs, and the rest are uniform
+        HUB_HEAVY
+    }
+
+    private final int n;
+    private final graphModel model;
+    private final int addPercent;
+    private final int deletePercent;
+    private final int getPercent;
+    private final int[] weights;
+    private final SplittableRandom rand;
+
+    // the living nodes are alive[0..aliveCount-1], and position[i] is the index of the node i+1 in alive (or -1 once it is deleted)
+    private final int[] alive;
+    private final int[] position;
+    private int aliveCount;
+
+    // the Bloom filter of the generated edges, with its amount of bits being a power of two
+    private final long[] filter;
+    private final long filterMask;
+    private static final int FILTER_HASHES = 7;
+    // the amount of candidates that nextEdge draws before giving up on finding a new edge (once the living nodes are almost a clique)
+    private static final int MAX_ATTEMPTS = 1000;
+    // the amount of levels of the R-MAT recursion: the log of the smallest power of two that is at least n
+    private final int rmatLevels;
+    // the quadrant rows that the R-MAT recursion picked for the first endpoint of the current edge, one bit per level
+    private long rmatRows;
+    private final int hubs;
+
+    /**
+     * @param n - the amount of nodes, whose ids are 1..n
+     * @param model - the model of the endpoints of the added edges
+     * @param addPercent - the percentage of addEdge among the operations
+     * @param deletePercent - the percentage of deleteNode among the operations
+     * @param getPercent - the percentage of getNeighborhoodWeight among the operations. the rest are maxNeighborhoodWeight
+     * @param expectedEdges - the amount of edges the workload is expected to add, to size the Bloom filter by
+     * @param seed - the seed of the workload. the same arguments give the same workload
+     */
+    public workloadGenerator(int n, graphModel model, int addPercent, int deletePercent, int getPercent, long expectedEdges, long seed) {
+        if (addPercent + deletePercent + getPercent > 100) {
+            throw new IllegalArgumentException("the percentages of the operations add up to more than 100");
+        }
+        this.n = n;
+        this.model = model;
+        this.addPercent = addPercent;
+        this.deletePercent = deletePercent;
+        this.getPercent = getPercent;
+        this.rand = new SplittableRandom(seed);
+        weights = new int[n];
+        alive = new int[n];
+        position = new int[n];
+        for (int i = 0; i < n; i++) {
+            weights[i] = rand.nextInt(100) + 1;
+            alive[i] = i;
+            position[i] = i;
+        }
+        aliveCount = n;
+        long bits = Long.highestOneBit(Math.max(64, expectedEdges * 10 - 1)) << 1;
+        filter = new long[(int) Math.min(bits >>> 6, 1 << 30)];
+        filterMask = (long) filter.length * 64 - 1;
+        rmatLevels = 32 - Integer.numberOfLeadingZeros(Math.max(1, n - 1));
+        hubs = Math.max(1, (int) Math.sqrt(n));
+    }
+
+    /**
+     * @return the nodes of the workload (fresh Node objects, so every call can create a graph of its own)
+     */
+    public Graph.Node[] nodes() {
+        Graph.Node[] nodes = new Graph.Node[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new Graph.Node(i + 1, weights[i]);
+        }
+        return nodes;
+    }
+
+    /**
+     * @return the amount of nodes that weren't deleted by the operations generated so far
+     */
+    public int aliveNodes() {
+        return aliveCount;
+    }
+
+    /**
+     * fills the given arrays with the next operations of the workload: the op code of the i-th operation (see Graph.traceRecorder) goes to ops[i], and its
+     * ids to ids1[i] and ids2[i] (0 when the op has less ids). once all of the nodes were deleted, only maxNeighborhoodWeight is generated.
+     * @return the amount of operations generated, which is ops.length
+     */
+    public int next(byte[] ops, int[] ids1, int[] ids2) {
+        for (int i = 0; i < ops.length; i++) {
+            int kind = rand.nextInt(100);
+            ids1[i] = 0;
+            ids2[i] = 0;
+            if (aliveCount < 2 && kind < addPercent + deletePercent + getPercent && (aliveCount == 0 || kind < addPercent)) {
+                kind = 100; // nothing to pick the ids of the op from
+            }
+            long edge = kind < addPercent ? nextEdge() : -1;
+            if (edge >= 0) {
+                ops[i] = Graph.traceRecorder.ADD_EDGE;
+                ids1[i] = (int) (edge >>> 32) + 1;
+                ids2[i] = (int) edge + 1;
+            } else if (kind < addPercent) { // no new edge was found among the living nodes
+                ops[i] = Graph.traceRecorder.MAX_NEIGHBORHOOD_WEIGHT;
+            } else if (kind < addPercent + deletePercent) {
+                int node = alive[rand.nextInt(aliveCount)];
+                delete(node);
+                ops[i] = Graph.traceRecorder.DELETE_NODE;
+                ids1[i] = node + 1;
+            } else if (kind < addPercent + deletePercent + getPercent) {
+                ops[i] = Graph.traceRecorder.GET_NEIGHBORHOOD_WEIGHT;
+                ids1[i] = alive[rand.nextInt(aliveCount)] + 1;
+            } else {
+                ops[i] = Graph.traceRecorder.MAX_NEIGHBORHOOD_WEIGHT;
+            }
+        }
+        return ops.length;
+    }
+
+    /**
+     * applies the first 'count' generated operations to the given graph.
+     * @return a sum of the results of the operations, so they can't be optimized away
+     */
+    public static long apply(Graph graph, byte[] ops, int[] ids1, int[] ids2, int count) {
+        long sink = 0;
+        for (int i = 0; i < count; i++) {
+            switch (ops[i]) {
+                case Graph.traceRecorder.ADD_EDGE:
+                    sink += graph.addEdge(ids1[i], ids2[i]) ? 1 : 0;
+                    break;
+                case Graph.traceRecorder.DELETE_NODE:
+                    sink += graph.deleteNode(ids1[i]) ? 1 : 0;
+                    break;
+                case Graph.traceRecorder.GET_NEIGHBORHOOD_WEIGHT:
+                    sink += graph.getNeighborhoodWeight(ids1[i]);
+                    break;
+                default:
+                    Graph.Node max = graph.maxNeighborhoodWeight();
+                    sink += max == null ? 0 : max.getId();
+            }
+        }
+        return sink;
+    }
+
+    private void delete(int node) {
+        int pos = position[node];
+        int last = alive[--aliveCount];
+        alive[pos] = last;
+        position[last] = pos;
+        position[node] = -1;
+    }
+
+    /**
+     * @return a new edge between two distinct living nodes (by their indices), as first << 32 | second, or -1 if none was found in MAX_ATTEMPTS attempts
+     */
+    private long nextEdge() {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            int u;
+            int v;
+            switch (model) {
+                case RMAT:
+                    u = rmatNode(true);
+                    v = rmatNode(false);
+                    break;
+                case HUB_HEAVY:
+                    u = rand.nextBoolean() ? rand.nextInt(hubs) : alive[rand.nextInt(aliveCount)];
+                    v = alive[rand.nextInt(aliveCount)];
+                    break;
+                default:
+                    u = alive[rand.nextInt(aliveCount)];
+                    v = alive[rand.nextInt(aliveCount)];
+            }
+            if (u == v || u >= n || v >= n || position[u] < 0 || position[v] < 0) {
+                continue;
+            }
+            long key = (long) Math.min(u, v) << 32 | Math.max(u, v);
+            if (addToFilter(key)) {
+                return (long) u << 32 | v;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * the R-MAT recursion, for a single endpoint: every level picks a quadrant, which sets one bit of both endpoints. the rows of the quadrants are picked with
+     * the probability a + b = 0.76, and given the row, the column is picked with the conditional probability of the quadrant. to pick both endpoints of an edge
+     * with the same quadrants, the random bits of the rows are drawn by the first call and replayed by the second one.
+     */
+    private int rmatNode(boolean row) {
+        int node = 0;
+        if (row) {
+            rmatRows = 0;
+            for (int level = 0; level < rmatLevels; level++) {
+                boolean bottom = rand.nextDouble() >= 0.76; // c + d = 0.24
+                if (bottom) {
+                    rmatRows |= 1L << level;
+                    node |= 1 << level;
+                }
+            }
+            return node;
+        }
+        for (int level = 0; level < rmatLevels; level++) {
+            boolean bottom = (rmatRows >>> level & 1) != 0;
+            // right | top = b / (a + b) = 0.25, right | bottom = d / (c + d) = 0.21
+            if (rand.nextDouble() < (bottom ? 0.05 / 0.24 : 0.19 / 0.76)) {
+                node |= 1 << level;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * adds the given key to the Bloom filter.
+     * @return 'true' if the key wasn't in the filter before (for sure), 'false' if it might have been
+     */
+    private boolean addToFilter(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        long h1 = hash ^ (hash >>> 29);
+        long h2 = (Long.rotateLeft(hash, 31) * 0xBF58476D1CE4E5B9L) | 1;
+        boolean present = true;
+        for (int i = 0; i < FILTER_HASHES; i++) {
+            long bit = (h1 + i * h2) & filterMask;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((filter[word] & mask) == 0) {
+                present = false;
+                filter[word] |= mask;
+            }
+        }
+        return !present;
+    }
+}
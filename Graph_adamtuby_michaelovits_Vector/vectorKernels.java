@@ -0,0 +1,118 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * the scans of Graph.bulkKernels on the Vector API, in the widest vectors of the machine (IntVector.SPECIES_PREFERRED - 8 ints with AVX2, 16 with AVX-512,
+ * 4 with NEON), with the remainder of every range done by a scalar loop. Graph.bulkKernels loads this class by its name, and falls back to its own loops
+ * when it can't.
+ * the Vector API is an incubator module, so this class sits in a source directory of its own: Graph.java (of either directory) compiles with a plain javac
+ * without it, and this class compiles and runs only with the module added. from the root of the repository:
+ * <pre>
+ *   javac -d out Graph_adamtuby_michaelovits_Tester/*.java
+ *   javac --add-modules jdk.incubator.vector -cp out -d out Graph_adamtuby_michaelovits_Vector/vectorKernels.java
+ *   java --add-modules jdk.incubator.vector -cp out graphTester bulk
+ * </pre>
+ * without the last javac (or without --add-modules on the java command line), bulkKernels runs its own loops.
+ */
+public final class vectorKernels implements Graph.bulkKernels.kernelSet{
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    // the vectors of the same size with long lanes, each holding half of an int vector
+    private static final VectorSpecies<Long> LONGS = SPECIES.withLanes(long.class);
+
+    public vectorKernels() {
+    }
+
+    /**
+     * the negative values are raised to 0 by a lanewise max, and every vector is widened into two vectors of longs that are summed lane by lane, so the sum
+     * can't overflow.
+     * <p>
+     * Time Complexity: O(to - from)
+     * </p>
+     */
+    @Override
+    public long sumNonNegative(int[] values, int from, int to) {
+        LongVector low = LongVector.zero(LONGS);
+        LongVector high = LongVector.zero(LONGS);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            IntVector vector = IntVector.fromArray(SPECIES, values, i).max(0);
+            low = low.add(vector.convertShape(VectorOperators.I2L, LONGS, 0));
+            high = high.add(vector.convertShape(VectorOperators.I2L, LONGS, 1));
+        }
+        long sum = low.add(high).reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            sum += Math.max(values[i], 0);
+        }
+        return sum;
+    }
+
+    /**
+     * every lane keeps the maximum of its column, updated only where the mask marks a living node.
+     * <p>
+     * Time Complexity: O(to - from)
+     * </p>
+     */
+    @Override
+    public int maxMasked(int[] values, int[] mask, int from, int to) {
+        IntVector max = IntVector.broadcast(SPECIES, Integer.MIN_VALUE);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            VectorMask<Integer> living = IntVector.fromArray(SPECIES, mask, i).compare(VectorOperators.GE, 0);
+            max = max.lanewise(VectorOperators.MAX, IntVector.fromArray(SPECIES, values, i), living);
+        }
+        int result = max.reduceLanes(VectorOperators.MAX);
+        for (; i < to; i++) {
+            result = Math.max(result, mask[i] >= 0 ? values[i] : Integer.MIN_VALUE);
+        }
+        return result;
+    }
+
+    /**
+     * compares a whole vector at a time, and stops at the first vector that has a match.
+     * <p>
+     * Time Complexity: O(to - from)
+     * </p>
+     */
+    @Override
+    public int indexOfMasked(int[] values, int[] mask, int value, int from, int to) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            VectorMask<Integer> found = IntVector.fromArray(SPECIES, values, i).compare(VectorOperators.EQ, value)
+                    .and(IntVector.fromArray(SPECIES, mask, i).compare(VectorOperators.GE, 0));
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (values[i] == value && mask[i] >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * every lane counts the matches of its column, and the lanes are summed once at the end.
+     * <p>
+     * Time Complexity: O(to - from)
+     * </p>
+     */
+    @Override
+    public int countAtLeast(int[] values, int[] mask, int threshold, int from, int to) {
+        IntVector counts = IntVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            VectorMask<Integer> matches = IntVector.fromArray(SPECIES, values, i).compare(VectorOperators.GE, threshold)
+                    .and(IntVector.fromArray(SPECIES, mask, i).compare(VectorOperators.GE, 0));
+            counts = counts.add(1, matches);
+        }
+        int count = counts.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            count += values[i] >= threshold & mask[i] >= 0 ? 1 : 0;
+        }
+        return count;
+    }
+}